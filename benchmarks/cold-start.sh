@@ -0,0 +1,42 @@
+#!/usr/bin/env bash
+# 比较JVM与native-image从进程启动到取得第一个ID的耗时
+#   mvn package               -> target/benchmarks.jar
+#   mvn -Pnative package      -> target/cold-start-probe（需要GraalVM）
+# 用法：./cold-start.sh [启动次数]，输出每种方式进程墙上耗时的中位数与最大值
+set -euo pipefail
+
+cd "$(dirname "$0")"
+RUNS=${1:-20}
+PROBE=com.github.johnqxu.crystalflake.benchmark.ColdStartProbe
+export WORKER_ID=${WORKER_ID:-1}
+export DATA_CENTER_ID=${DATA_CENTER_ID:-1}
+
+measure() {
+  local name=$1
+  shift
+  local samples=()
+  "$@" > /dev/null
+  for ((i = 0; i < RUNS; i++)); do
+    local start end
+    start=$(date +%s%N)
+    "$@" > /dev/null
+    end=$(date +%s%N)
+    samples+=($(((end - start) / 1000000)))
+  done
+  local sorted
+  sorted=($(printf '%s\n' "${samples[@]}" | sort -n))
+  printf '%-8s runs=%d median=%dms max=%dms sample: %s\n' "$name" "$RUNS" \
+    "${sorted[$((RUNS / 2))]}" "${sorted[$((RUNS - 1))]}" "$("$@")"
+}
+
+if [[ -f target/benchmarks.jar ]]; then
+  measure jvm java -cp target/benchmarks.jar "$PROBE"
+else
+  echo "target/benchmarks.jar不存在，先执行mvn package" >&2
+fi
+
+if [[ -x target/cold-start-probe ]]; then
+  measure native target/cold-start-probe
+else
+  echo "target/cold-start-probe不存在，使用GraalVM执行mvn -Pnative package后可比较native-image" >&2
+fi
@@ -0,0 +1,72 @@
+package com.github.johnqxu.crystalflake.benchmark;
+
+import com.github.johnqxu.crystalflake.FlakeGenerator;
+import com.github.johnqxu.crystalflake.TimeSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时钟回拨路径的开销。模拟时钟每8次调用前进1ms，恰好用满默认bit位分配下每周期的256个序号；
+ * 每512ms回拨backMillis毫秒，回拨后的时钟追上原周期并超过8个周期后，时钟回拨次数复位，因此不会超出最大次数。
+ * backMillis为0时作为对照组
+ *
+ * @author 徐青
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClockBackBenchmark {
+
+    @Param({"0", "64"})
+    private long backMillis;
+
+    private FlakeGenerator flakeGenerator;
+
+    @Setup
+    public void setup() {
+        flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1)
+                .timeSource(new SawtoothTimeSource(System.currentTimeMillis(), backMillis)).build();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return flakeGenerator.nextId();
+    }
+
+    /**
+     * 仅由单个基准线程访问的模拟时钟
+     */
+    static final class SawtoothTimeSource implements TimeSource {
+
+        private static final long PERIOD_MILLIS = 512L;
+
+        private final long base;
+        private final long backMillis;
+        private long calls;
+
+        SawtoothTimeSource(long base, long backMillis) {
+            this.base = base;
+            this.backMillis = backMillis;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            long elapsed = calls++ >>> 3;
+            return elapsed % PERIOD_MILLIS >= PERIOD_MILLIS / 2 ? base + elapsed - backMillis : base + elapsed;
+        }
+    }
+}
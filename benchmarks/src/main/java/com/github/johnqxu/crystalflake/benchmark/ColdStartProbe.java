@@ -0,0 +1,35 @@
+package com.github.johnqxu.crystalflake.benchmark;
+
+import com.github.johnqxu.crystalflake.FlakeGenerators;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * 冷启动探针：进程启动后通过{@link FlakeGenerators}创建生成器，取得第一个ID后立即退出
+ * <p>
+ * 输出从进程创建到取得第一个ID的时长（按操作系统记录的进程启动时间计算，精度受时钟节拍限制），
+ * 以及进程内创建生成器并取得第一个ID的时长。cold-start.sh多次启动本类的JVM版本与native-image版本，
+ * 以进程的墙上耗时比较两者的冷启动
+ *
+ * @author 徐青
+ */
+public final class ColdStartProbe {
+
+    private ColdStartProbe() {
+    }
+
+    public static void main(String[] args) {
+        long begin = System.nanoTime();
+        long id;
+        try (FlakeGenerators generators = FlakeGenerators.fromEnv()) {
+            id = generators.nextId();
+        }
+        long inProcessMicros = (System.nanoTime() - begin) / 1000;
+        long sinceProcessStartMillis = ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
+        System.out.printf("firstId=%d processStartToFirstIdMillis=%d factoryToFirstIdMicros=%d%n",
+                id, sinceProcessStartMillis, inProcessMicros);
+    }
+}
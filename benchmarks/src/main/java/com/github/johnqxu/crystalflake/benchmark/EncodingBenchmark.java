@@ -0,0 +1,86 @@
+package com.github.johnqxu.crystalflake.benchmark;
+
+import com.github.johnqxu.crystalflake.FlakeGenerator;
+import com.github.johnqxu.crystalflake.IdEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID定长编码与Long.toString的对比，配合-prof gc观察每次操作的内存分配，写入调用方数组的编码应为0字节
+ *
+ * @author 徐青
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+    private static final int BATCH = 256;
+
+    @Param({"BASE32", "BASE62"})
+    private IdEncoding encoding;
+
+    private long[] ids;
+    private byte[] bytes;
+    private long[] decoded;
+    private int next;
+
+    @Setup
+    public void setup() {
+        ids = new FlakeGenerator(1, 1).nextIds(BATCH);
+        bytes = new byte[BATCH * encoding.width()];
+        encoding.encode(ids, 0, BATCH, bytes, 0);
+        decoded = new long[BATCH];
+    }
+
+    @Benchmark
+    public byte[] encodeToBytes() {
+        int i = next++ & (BATCH - 1);
+        encoding.encode(ids[i], bytes, i * encoding.width());
+        return bytes;
+    }
+
+    @Benchmark
+    public long decodeFromBytes() {
+        int i = next++ & (BATCH - 1);
+        return encoding.decode(bytes, i * encoding.width());
+    }
+
+    /**
+     * 对照组：先转为十进制字符串再取字节
+     */
+    @Benchmark
+    public byte[] longToStringBytes() {
+        return Long.toString(ids[next++ & (BATCH - 1)]).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] encodeBulk() {
+        encoding.encode(ids, 0, BATCH, bytes, 0);
+        return bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long[] decodeBulk() {
+        encoding.decode(bytes, 0, decoded, 0, BATCH);
+        return decoded;
+    }
+}
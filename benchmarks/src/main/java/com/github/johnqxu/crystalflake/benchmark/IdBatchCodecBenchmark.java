@@ -0,0 +1,119 @@
+package com.github.johnqxu.crystalflake.benchmark;
+
+import com.github.johnqxu.crystalflake.BitLayout;
+import com.github.johnqxu.crystalflake.FlakeGenerator;
+import com.github.johnqxu.crystalflake.IdBatchCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID批次编码的压缩率与吞吐量，RAW为每个ID写入8字节的基线
+ * <p>
+ * 辅助计数器rawBytes按每个ID 8字节累计，即以原始long数组计的字节吞吐量（字节/秒），
+ * encodedBytes为实际写入或读取的编码字节数；每个ID的编码字节数在准备阶段输出
+ *
+ * @author 徐青
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdBatchCodecBenchmark {
+
+    private static final int BATCH = 4096;
+
+    @Param({"RAW", "DELTA", "BY_WORKER"})
+    private String format;
+
+    /**
+     * 批次中交错出现的机器节点数
+     */
+    @Param({"1", "4"})
+    private int workers;
+
+    private final long[] ids = new long[BATCH];
+    private final long[] scratch = new long[BATCH];
+    private final long[] decoded = new long[BATCH];
+    private final ByteBuffer target = ByteBuffer.allocateDirect(IdBatchCodec.maxEncodedLengthByWorker(BATCH)).order(ByteOrder.nativeOrder());
+    private ByteBuffer encoded;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long rawBytes;
+        public long encodedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rawBytes = 0;
+            encodedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        FlakeGenerator[] generators = new FlakeGenerator[workers];
+        for (int w = 0; w < workers; w++) {
+            // 借用模式下整批ID不需要等待下一周期
+            generators[w] = FlakeGenerator.builder().workerId(w + 1).dataCenterId(1).maxLeadSegments(BATCH).build();
+        }
+        for (int i = 0; i < BATCH; i++) {
+            ids[i] = generators[i % workers].nextId();
+        }
+        encoded = ByteBuffer.allocateDirect(target.capacity()).order(ByteOrder.nativeOrder());
+        int length = encode(encoded);
+        encoded.flip();
+        System.out.printf("%n%s, %d workers: %.2f bytes/id%n", format, workers, (double) length / BATCH);
+    }
+
+    private int encode(ByteBuffer dst) {
+        switch (format) {
+            case "DELTA":
+                return IdBatchCodec.encode(ids, 0, BATCH, dst);
+            case "BY_WORKER":
+                return IdBatchCodec.encodeByWorker(BitLayout.DEFAULT, ids, 0, BATCH, scratch, dst);
+            default:
+                dst.asLongBuffer().put(ids);
+                dst.position(dst.position() + BATCH * Long.BYTES);
+                return BATCH * Long.BYTES;
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer encode(Bytes bytes) {
+        target.clear();
+        bytes.encodedBytes += encode(target);
+        bytes.rawBytes += BATCH * Long.BYTES;
+        return target;
+    }
+
+    @Benchmark
+    public long[] decode(Bytes bytes) {
+        encoded.rewind();
+        if ("RAW".equals(format)) {
+            encoded.asLongBuffer().get(decoded);
+        } else {
+            IdBatchCodec.decode(encoded, decoded, 0);
+        }
+        bytes.encodedBytes += encoded.limit();
+        bytes.rawBytes += BATCH * Long.BYTES;
+        return decoded;
+    }
+}
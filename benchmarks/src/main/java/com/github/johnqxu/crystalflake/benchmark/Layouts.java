@@ -0,0 +1,19 @@
+package com.github.johnqxu.crystalflake.benchmark;
+
+import com.github.johnqxu.crystalflake.BitLayout;
+
+/**
+ * 基准测试使用的bit位分配
+ *
+ * @author 徐青
+ */
+final class Layouts {
+
+    /**
+     * 1ms一个周期、每周期65536个序号，生成速度远高于单个生成器的CAS吞吐，用于测量不触发序号耗尽等待的热路径
+     */
+    static final BitLayout WIDE = BitLayout.of(40, 16, 2, 2, 3, 0);
+
+    private Layouts() {
+    }
+}
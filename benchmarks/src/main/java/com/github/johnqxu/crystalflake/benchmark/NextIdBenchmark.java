@@ -0,0 +1,65 @@
+package com.github.johnqxu.crystalflake.benchmark;
+
+import com.github.johnqxu.crystalflake.FlakeGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不触发序号耗尽等待时nextId()的开销，分别测量单线程与多线程竞争同一个生成器
+ *
+ * @author 徐青
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NextIdBenchmark {
+
+    private static final int BATCH = 64;
+
+    private FlakeGenerator flakeGenerator;
+
+    @Setup
+    public void setup() {
+        flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).bitLayout(Layouts.WIDE).build();
+    }
+
+    @State(Scope.Thread)
+    public static class Buffer {
+        final long[] ids = new long[BATCH];
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long nextId() {
+        return flakeGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long nextIdContended() {
+        return flakeGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    @OperationsPerInvocation(BATCH)
+    public long[] fillContended(Buffer buffer) {
+        flakeGenerator.fill(buffer.ids, 0, BATCH);
+        return buffer.ids;
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.johnqxu.crystalflake.benchmark;
+
+import com.github.johnqxu.crystalflake.FlakeGenerator;
+import com.github.johnqxu.crystalflake.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 默认bit位分配下每32ms周期只有256个序号，持续调用nextId()时绝大多数耗时花在等待下一周期上。
+ * 使用SampleTime模式观察不同等待策略下的延迟分布，p99以上的分位数即为序号耗尽等待的代价
+ *
+ * @author 徐青
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaturationBenchmark {
+
+    @Param({"busySpin", "spinThenYield", "parking"})
+    private String waitStrategy;
+
+    private FlakeGenerator flakeGenerator;
+
+    @Setup
+    public void setup() {
+        flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).waitStrategy(waitStrategyOf(waitStrategy)).build();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long nextId() {
+        return flakeGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long nextIdContended() {
+        return flakeGenerator.nextId();
+    }
+
+    private static WaitStrategy waitStrategyOf(String name) {
+        switch (name) {
+            case "spinThenYield":
+                return WaitStrategy.spinThenYield(100);
+            case "parking":
+                return WaitStrategy.parking();
+            default:
+                return WaitStrategy.busySpin();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.github.johnqxu.crystalflake.server;
+
+import com.github.johnqxu.crystalflake.FlakeGeneratorException;
+import com.github.johnqxu.crystalflake.IdGenerator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * {@link FlakeIdServer}的客户端
+ * <p>
+ * 后台线程通过一个连接持续向服务端请求ID批次，预取的批次放入有界队列，队列满时暂停请求。
+ * 调用方从当前批次中逐个取出ID，当前批次用完时从队列中取下一批，正常情况下不需要等待网络往返。
+ * <p>
+ * 同一客户端取得的ID全局唯一，通常递增，服务端时钟在忍耐范围内回拨时可能小于之前取得的ID。服务端的生成器暂时无法生成ID时，预取线程退避后重新请求；
+ * 连接断开、请求非法或操作码未知时客户端不再可用，队列中剩余的批次取完后抛出异常
+ *
+ * @author 徐青
+ */
+@Slf4j
+public class FlakeIdClient implements IdGenerator, AutoCloseable {
+
+    /**
+     * 默认每批请求的ID数量
+     */
+    public final static int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * 默认预取的批次数
+     */
+    public final static int DEFAULT_PREFETCH_BATCHES = 2;
+
+    private final static long[] EMPTY = new long[0];
+
+    /**
+     * 等待预取批次时检查客户端状态的间隔
+     */
+    private final static long POLL_MILLIS = 10L;
+
+    /**
+     * 服务端生成器出错后重新请求的初始退避时长
+     */
+    private final static long MIN_BACKOFF_MILLIS = 10L;
+
+    /**
+     * 服务端生成器出错后重新请求的最大退避时长
+     */
+    private final static long MAX_BACKOFF_MILLIS = 1000L;
+
+    private final static LongConsumer NO_OP = nanos -> {
+    };
+
+    private final SocketChannel channel;
+    private final int batchSize;
+    private final BlockingQueue<long[]> batches;
+    private final LongConsumer roundTripListener;
+    private final Thread prefetchThread;
+
+    /**
+     * 保护当前批次与读取位置
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private long[] current = EMPTY;
+    private int position;
+
+    private volatile String failure;
+    private volatile boolean closed;
+
+    public FlakeIdClient(InetSocketAddress address) throws IOException {
+        this(address, DEFAULT_BATCH_SIZE, DEFAULT_PREFETCH_BATCHES);
+    }
+
+    /**
+     * 连接服务端并启动预取线程
+     *
+     * @param address         服务端地址
+     * @param batchSize       每批请求的ID数量，不能超过服务端的单批上限
+     * @param prefetchBatches 预取的批次数
+     * @throws IOException 连接失败
+     */
+    public FlakeIdClient(InetSocketAddress address, int batchSize, int prefetchBatches) throws IOException {
+        this(address, batchSize, prefetchBatches, NO_OP);
+    }
+
+    /**
+     * 连接服务端并启动预取线程
+     *
+     * @param address           服务端地址
+     * @param batchSize         每批请求的ID数量，不能超过服务端的单批上限
+     * @param prefetchBatches   预取的批次数
+     * @param roundTripListener 在预取线程中接收每批请求的往返时长，单位纳秒，用于统计网络延迟
+     * @throws IOException 连接失败
+     */
+    public FlakeIdClient(InetSocketAddress address, int batchSize, int prefetchBatches, LongConsumer roundTripListener) throws IOException {
+        if (batchSize <= 0 || batchSize > FlakeIdServer.MAX_BATCH_LIMIT) {
+            throw new FlakeGeneratorException(String.format("每批ID数量[%d]超出范围[%d,%d]", batchSize, 1, FlakeIdServer.MAX_BATCH_LIMIT));
+        }
+        if (prefetchBatches <= 0) {
+            throw new FlakeGeneratorException(String.format("预取批次数[%d]必须大于0", prefetchBatches));
+        }
+        this.batchSize = batchSize;
+        this.batches = new ArrayBlockingQueue<>(prefetchBatches);
+        this.roundTripListener = Objects.requireNonNull(roundTripListener, "roundTripListener");
+        this.channel = SocketChannel.open(address);
+        this.channel.socket().setTcpNoDelay(true);
+        this.prefetchThread = new Thread(this::prefetch, "crystal-flake-client");
+        this.prefetchThread.setDaemon(true);
+        this.prefetchThread.start();
+    }
+
+    /**
+     * 取出一个预取的ID
+     *
+     * @return 全局ID
+     */
+    @Override
+    public long nextId() {
+        lock.lock();
+        try {
+            if (position == current.length) {
+                current = takeBatch();
+                position = 0;
+            }
+            return current[position++];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止预取并关闭连接
+     */
+    @Override
+    public void close() {
+        closed = true;
+        prefetchThread.interrupt();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("关闭连接失败：{}", e.getMessage());
+        }
+    }
+
+    private long[] takeBatch() {
+        try {
+            while (true) {
+                long[] batch = batches.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    return batch;
+                }
+                if (failure != null) {
+                    throw new FlakeGeneratorException("ID服务不可用：" + failure);
+                }
+                if (closed) {
+                    throw new FlakeGeneratorException("ID客户端已关闭");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FlakeGeneratorException("等待ID批次时被中断");
+        }
+    }
+
+    /**
+     * 预取线程主循环，每次只有一个请求在途
+     */
+    private void prefetch() {
+        ByteBuffer request = ByteBuffer.allocate(IdProtocol.REQUEST_BYTES);
+        ByteBuffer header = ByteBuffer.allocate(IdProtocol.RESPONSE_HEADER_BYTES);
+        ByteBuffer body = ByteBuffer.allocate(batchSize * Long.BYTES);
+        long backoffMillis = MIN_BACKOFF_MILLIS;
+        try {
+            while (!closed) {
+                long sentAt = System.nanoTime();
+                request.clear();
+                request.put(IdProtocol.OP_NEXT_IDS).putInt(batchSize).flip();
+                while (request.hasRemaining()) {
+                    channel.write(request);
+                }
+                header.clear();
+                readFully(header);
+                int count = header.getInt(0);
+                if (count == IdProtocol.ERROR_GENERATOR) {
+                    // 生成器暂时不可用，例如时钟回拨超出最大忍耐值，退避后重新请求
+                    log.warn("服务端生成ID失败，{}ms后重新请求", backoffMillis);
+                    Thread.sleep(backoffMillis);
+                    backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+                    continue;
+                }
+                if (count < 0) {
+                    failure = "服务端返回错误码" + count;
+                    return;
+                }
+                body.clear().limit(count * Long.BYTES);
+                readFully(body);
+                roundTripListener.accept(System.nanoTime() - sentAt);
+                backoffMillis = MIN_BACKOFF_MILLIS;
+                long[] batch = new long[count];
+                body.flip();
+                body.asLongBuffer().get(batch);
+                batches.put(batch);
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.error("预取ID失败", e);
+                failure = e.toString();
+            }
+        } catch (InterruptedException e) {
+            // 关闭客户端
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("服务端关闭了连接");
+            }
+        }
+    }
+}
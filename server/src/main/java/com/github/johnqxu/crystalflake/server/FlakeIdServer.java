@@ -0,0 +1,331 @@
+package com.github.johnqxu.crystalflake.server;
+
+import com.github.johnqxu.crystalflake.BitLayout;
+import com.github.johnqxu.crystalflake.FlakeGenerator;
+import com.github.johnqxu.crystalflake.FlakeGeneratorException;
+import com.github.johnqxu.crystalflake.FlakeGenerators;
+import com.github.johnqxu.crystalflake.WorkerIdAssigner;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 独立部署的ID服务
+ * <p>
+ * 单个I/O线程通过NIO选择器处理全部连接，按{@link IdProtocol}逐个响应请求。
+ * 服务端只持有一个{@link FlakeGenerator}，无法各自持有唯一workerId的非JVM服务或短生命周期进程通过它获取ID。
+ * <p>
+ * 生成ID时不等待地取出当前周期的剩余序号，剩余序号不足请求数量时直接返回已取得的部分；
+ * 一个都取不到时暂停该连接，I/O线程以距离下一周期的时长作为选择超时，期间照常接受连接、发送积压数据，到达下一周期后继续处理暂停的请求。
+ * 连接的待发送数据积压时暂停读取该连接的请求，直到积压数据发送完毕
+ *
+ * @author 徐青
+ */
+@Slf4j
+public class FlakeIdServer implements AutoCloseable {
+
+    /**
+     * 单批ID数量上限的最大值
+     */
+    public final static int MAX_BATCH_LIMIT = 1 << 16;
+
+    private final FlakeGenerator flakeGenerator;
+    private final int maxBatch;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread ioThread;
+
+    /**
+     * 生成ID的暂存数组，只在I/O线程中使用
+     */
+    private final long[] scratch;
+
+    /**
+     * 因序号耗尽而暂停的连接，只在I/O线程中使用
+     */
+    private final List<SelectionKey> parkedKeys = new ArrayList<>();
+    private volatile boolean closed;
+
+    public FlakeIdServer(FlakeGenerator flakeGenerator, InetSocketAddress address) throws IOException {
+        this(flakeGenerator, address, IdProtocol.DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * 绑定端口并启动I/O线程
+     *
+     * @param flakeGenerator ID生成器
+     * @param address        监听地址，端口为0时由系统分配
+     * @param maxBatch       单批ID数量上限
+     * @throws IOException 绑定端口失败
+     */
+    public FlakeIdServer(FlakeGenerator flakeGenerator, InetSocketAddress address, int maxBatch) throws IOException {
+        if (maxBatch <= 0 || maxBatch > MAX_BATCH_LIMIT) {
+            throw new FlakeGeneratorException(String.format("单批ID数量上限[%d]超出范围[%d,%d]", maxBatch, 1, MAX_BATCH_LIMIT));
+        }
+        this.flakeGenerator = Objects.requireNonNull(flakeGenerator, "flakeGenerator");
+        this.maxBatch = maxBatch;
+        this.scratch = new long[maxBatch];
+        this.selector = Selector.open();
+        try {
+            this.serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            selector.close();
+            throw e;
+        }
+        this.ioThread = new Thread(this::serve, "crystal-flake-server");
+        this.ioThread.start();
+        log.info("ID服务已启动，监听地址：{}，workerId：{}，dataCenterId：{}", getLocalAddress(), flakeGenerator.getWorkerId(), flakeGenerator.getDataCenterId());
+    }
+
+    /**
+     * 从环境变量读取机器节点ID并启动服务，监听端口为第一个参数，默认7610。
+     * 服务端只持有一个生成器，WORKER_ID不能配置为区间；关闭时告知分配器已发出ID的时间上界
+     *
+     * @param args 命令行参数
+     * @throws IOException 绑定端口失败
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7610;
+        FlakeGenerators generators = FlakeGenerators.start(WorkerIdAssigner.env(), BitLayout.DEFAULT);
+        FlakeIdServer server;
+        try {
+            if (generators.getAssignment().isRange()) {
+                throw new FlakeGeneratorException(String.format("ID服务只使用一个workerId，不支持workerId区间[%d,%d]",
+                        generators.getAssignment().getWorkerIdFrom(), generators.getAssignment().getWorkerIdTo()));
+            }
+            server = new FlakeIdServer(generators.getFlakeGenerators().get(0), new InetSocketAddress(port));
+        } catch (IOException | RuntimeException e) {
+            generators.close();
+            throw e;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            generators.close();
+        }, "crystal-flake-server-shutdown"));
+    }
+
+    /**
+     * @return 实际监听的地址
+     */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            throw new FlakeGeneratorException("读取监听地址失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 停止I/O线程并关闭全部连接
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * I/O线程主循环
+     */
+    private void serve() {
+        try {
+            while (!closed) {
+                if (parkedKeys.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.select(Math.max(1L, flakeGenerator.millisUntilNextSegment()));
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        service(key);
+                    }
+                }
+                resumeParked();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.error("ID服务异常退出", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.warn("关闭选择器失败", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(maxBatch));
+    }
+
+    /**
+     * 到达下一周期后继续处理暂停的连接，序号再次耗尽的连接重新暂停
+     */
+    private void resumeParked() {
+        if (parkedKeys.isEmpty() || flakeGenerator.millisUntilNextSegment() > 0) {
+            return;
+        }
+        List<SelectionKey> resumed = new ArrayList<>(parkedKeys);
+        parkedKeys.clear();
+        for (SelectionKey key : resumed) {
+            if (key.isValid()) {
+                ((Connection) key.attachment()).parked = false;
+                service(key);
+            }
+        }
+    }
+
+    /**
+     * 读取请求、生成响应并尽量发送，发送不完时只关注可写事件，暂停读取新的请求；
+     * 序号耗尽时发送完已生成的响应后暂停该连接，不关注任何事件
+     */
+    private void service(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable() && channel.read(connection.in) < 0) {
+                closeQuietly(key);
+                return;
+            }
+            while (true) {
+                connection.in.flip();
+                handleRequests(connection);
+                connection.in.compact();
+                connection.out.flip();
+                channel.write(connection.out);
+                boolean flushed = !connection.out.hasRemaining();
+                connection.out.compact();
+                if (!flushed) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (connection.closing) {
+                    closeQuietly(key);
+                    return;
+                }
+                if (connection.parked) {
+                    key.interestOps(0);
+                    parkedKeys.add(key);
+                    return;
+                }
+                // 输出缓冲区曾被占满时，输入缓冲区中可能还有完整的请求
+                if (connection.in.position() < IdProtocol.REQUEST_BYTES) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("连接{}异常关闭：{}", channel, e.getMessage());
+            closeQuietly(key);
+        }
+    }
+
+    /**
+     * 处理输入缓冲区中的完整请求，直到输出缓冲区放不下一个最大响应
+     */
+    private void handleRequests(Connection connection) {
+        ByteBuffer in = connection.in;
+        ByteBuffer out = connection.out;
+        int maxResponseBytes = IdProtocol.maxResponseBytes(maxBatch);
+        while (!connection.closing && !connection.parked && in.remaining() >= IdProtocol.REQUEST_BYTES && out.remaining() >= maxResponseBytes) {
+            byte op = in.get();
+            int count = in.getInt();
+            if (op != IdProtocol.OP_NEXT_IDS) {
+                // 请求边界已无法确定，响应后关闭连接
+                out.putInt(IdProtocol.ERROR_UNKNOWN_OP);
+                connection.closing = true;
+                return;
+            }
+            if (count <= 0 || count > maxBatch) {
+                out.putInt(IdProtocol.ERROR_BAD_REQUEST);
+                continue;
+            }
+            int generated;
+            try {
+                generated = flakeGenerator.tryFill(scratch, 0, count);
+            } catch (FlakeGeneratorException e) {
+                log.error("生成ID失败", e);
+                out.putInt(IdProtocol.ERROR_GENERATOR);
+                continue;
+            }
+            if (generated == 0) {
+                // 当前周期序号耗尽，保留请求，到达下一周期后重新处理
+                in.position(in.position() - IdProtocol.REQUEST_BYTES);
+                connection.parked = true;
+                return;
+            }
+            out.putInt(generated);
+            for (int i = 0; i < generated; i++) {
+                out.putLong(scratch[i]);
+            }
+        }
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            log.debug("关闭连接失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 一个客户端连接的缓冲区，两个缓冲区在I/O线程之外保持写模式
+     */
+    private static final class Connection {
+
+        private final ByteBuffer in = ByteBuffer.allocate(IdProtocol.REQUEST_BYTES * 256);
+
+        /**
+         * 容纳两个最大响应，部分发送后仍能放下下一个响应
+         */
+        private final ByteBuffer out;
+
+        private boolean closing;
+
+        /**
+         * 序号耗尽，等待下一周期
+         */
+        private boolean parked;
+
+        Connection(int maxBatch) {
+            this.out = ByteBuffer.allocate(IdProtocol.maxResponseBytes(maxBatch) * 2);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.johnqxu.crystalflake.server;
+
+/**
+ * ID服务的二进制协议，所有整数均为大端序
+ * <p>
+ * 请求固定5字节：1字节操作码{@link #OP_NEXT_IDS}，4字节期望的ID数量，取值[1, 服务端单批上限]。
+ * 客户端可以在一次写入中连续发送多个请求，服务端按请求顺序逐个响应。
+ * <p>
+ * 响应：4字节数量n，n大于0时紧跟n个8字节ID，按生成顺序排列，n可能小于请求数量；n小于0时为错误码，没有后续字节
+ *
+ * @author 徐青
+ */
+public final class IdProtocol {
+
+    /**
+     * 批量获取ID的操作码
+     */
+    public final static byte OP_NEXT_IDS = 1;
+
+    /**
+     * 请求长度
+     */
+    public final static int REQUEST_BYTES = 5;
+
+    /**
+     * 响应头长度
+     */
+    public final static int RESPONSE_HEADER_BYTES = 4;
+
+    /**
+     * 错误码：请求的ID数量超出范围
+     */
+    public final static int ERROR_BAD_REQUEST = -1;
+
+    /**
+     * 错误码：生成器无法生成ID，例如时钟回拨超出最大忍耐值
+     */
+    public final static int ERROR_GENERATOR = -2;
+
+    /**
+     * 错误码：未知的操作码，服务端响应后关闭连接
+     */
+    public final static int ERROR_UNKNOWN_OP = -3;
+
+    /**
+     * 默认的单批ID数量上限
+     */
+    public final static int DEFAULT_MAX_BATCH = 4096;
+
+    private IdProtocol() {
+    }
+
+    /**
+     * @param maxBatch 单批ID数量上限
+     * @return 单个响应的最大长度
+     */
+    static int maxResponseBytes(int maxBatch) {
+        return RESPONSE_HEADER_BYTES + maxBatch * Long.BYTES;
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.johnqxu.crystalflake.server;
+
+import com.github.johnqxu.crystalflake.BitLayout;
+import com.github.johnqxu.crystalflake.FlakeGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 回环地址压测，输出每秒ID数、单次取ID的p99延迟与每批请求往返的p99延迟
+ */
+@Slf4j
+public class FlakeIdServerLoadTest {
+
+    /**
+     * 1ms一个周期、每周期4096个序号，生成器本身不成为瓶颈
+     */
+    private static final BitLayout LAYOUT = BitLayout.of(41, 12, 2, 4, 4, 0);
+
+    private static final int CLIENTS = 4;
+
+    private static final long DURATION_MILLIS = 2000L;
+
+    /**
+     * 延迟直方图按100ns分桶，覆盖10ms，最后一个桶收集超出范围的延迟
+     */
+    private static final long BUCKET_NANOS = 100L;
+
+    private static final int LATENCY_BUCKETS = 100_001;
+
+    /**
+     * 每个客户端保留用于唯一性校验的ID数量
+     */
+    private static final int SAMPLED_IDS = 200_000;
+
+    @Test
+    @DisplayName("多个客户端经回环地址压测，ID全局唯一并输出吞吐量、取ID与批次往返的p99延迟")
+    public void shouldServeIdsUnderLoad() throws Exception {
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).bitLayout(LAYOUT).build();
+        try (FlakeIdServer server = new FlakeIdServer(flakeGenerator, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            long[][] histograms = new long[CLIENTS][LATENCY_BUCKETS];
+            // 往返时长在预取线程中记录
+            AtomicLongArray roundTrips = new AtomicLongArray(LATENCY_BUCKETS);
+            long[][] ids = new long[CLIENTS][SAMPLED_IDS];
+            long[] counts = new long[CLIENTS];
+            CountDownLatch done = new CountDownLatch(CLIENTS);
+            for (int c = 0; c < CLIENTS; c++) {
+                int client = c;
+                Thread thread = new Thread(() -> {
+                    try (FlakeIdClient flakeIdClient = new FlakeIdClient(server.getLocalAddress(), FlakeIdClient.DEFAULT_BATCH_SIZE,
+                            FlakeIdClient.DEFAULT_PREFETCH_BATCHES, nanos -> roundTrips.incrementAndGet(bucketOf(nanos)))) {
+                        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DURATION_MILLIS);
+                        long count = 0L;
+                        long now = System.nanoTime();
+                        while (now < end) {
+                            long id = flakeIdClient.nextId();
+                            long after = System.nanoTime();
+                            histograms[client][bucketOf(after - now)]++;
+                            if (count < SAMPLED_IDS) {
+                                ids[client][(int) count] = id;
+                            }
+                            count++;
+                            now = after;
+                        }
+                        counts[client] = count;
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }, "load-client-" + c);
+                thread.start();
+            }
+            Assert.assertTrue(done.await(DURATION_MILLIS * 10, TimeUnit.MILLISECONDS));
+
+            long total = Arrays.stream(counts).sum();
+            long[] merged = new long[LATENCY_BUCKETS];
+            for (long[] histogram : histograms) {
+                for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                    merged[i] += histogram[i];
+                }
+            }
+            long p99Nanos = percentile(merged, total, 0.99) * BUCKET_NANOS;
+            long p999Nanos = percentile(merged, total, 0.999) * BUCKET_NANOS;
+            long[] roundTripHistogram = new long[LATENCY_BUCKETS];
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                roundTripHistogram[i] = roundTrips.get(i);
+            }
+            long batches = Arrays.stream(roundTripHistogram).sum();
+            long roundTripP99Nanos = percentile(roundTripHistogram, batches, 0.99) * BUCKET_NANOS;
+            log.info("clients={} ids={} ids/s={} nextId p99<={}ns p99.9<={}ns batches={} round-trip p99<={}ns", CLIENTS, total,
+                    total * 1000L / DURATION_MILLIS, p99Nanos + BUCKET_NANOS, p999Nanos + BUCKET_NANOS, batches, roundTripP99Nanos + BUCKET_NANOS);
+
+            Assert.assertTrue(total > 0);
+            Assert.assertTrue(batches > 0);
+            long[] sampled = new long[(int) Arrays.stream(counts).map(n -> Math.min(n, SAMPLED_IDS)).sum()];
+            int off = 0;
+            for (int c = 0; c < CLIENTS; c++) {
+                int n = (int) Math.min(counts[c], SAMPLED_IDS);
+                System.arraycopy(ids[c], 0, sampled, off, n);
+                off += n;
+            }
+            Arrays.sort(sampled);
+            for (int i = 1; i < sampled.length; i++) {
+                Assert.assertNotEquals(sampled[i - 1], sampled[i]);
+            }
+        }
+    }
+
+    private static int bucketOf(long nanos) {
+        return (int) Math.min(nanos / BUCKET_NANOS, LATENCY_BUCKETS - 1);
+    }
+
+    private static long percentile(long[] histogram, long total, double quantile) {
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0L;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return i;
+            }
+        }
+        return histogram.length - 1;
+    }
+}
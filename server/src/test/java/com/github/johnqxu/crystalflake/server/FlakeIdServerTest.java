@@ -0,0 +1,194 @@
+package com.github.johnqxu.crystalflake.server;
+
+import com.github.johnqxu.crystalflake.FlakeGenerator;
+import com.github.johnqxu.crystalflake.FlakeGeneratorException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FlakeIdServerTest {
+
+    private FlakeIdServer server;
+
+    @Before
+    public void beforeTest() throws IOException {
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).build();
+        server = new FlakeIdServer(flakeGenerator, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+    }
+
+    @After
+    public void afterTest() {
+        server.close();
+    }
+
+    private static void write(SocketChannel channel, byte op, int... counts) throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(IdProtocol.REQUEST_BYTES * counts.length);
+        for (int count : counts) {
+            request.put(op).putInt(count);
+        }
+        request.flip();
+        while (request.hasRemaining()) {
+            channel.write(request);
+        }
+    }
+
+    private static ByteBuffer read(SocketChannel channel, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining()) {
+            Assert.assertTrue(channel.read(buffer) >= 0);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    @DisplayName("一次写入多个请求，服务端按顺序返回递增的ID批次")
+    public void shouldAnswerPipelinedRequestsInOrder() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(server.getLocalAddress())) {
+            write(channel, IdProtocol.OP_NEXT_IDS, 10, 20);
+            long previous = -1L;
+            int total = 0;
+            for (int requested : new int[]{10, 20}) {
+                int count = read(channel, IdProtocol.RESPONSE_HEADER_BYTES).getInt();
+                Assert.assertTrue(count > 0 && count <= requested);
+                ByteBuffer ids = read(channel, count * Long.BYTES);
+                for (int i = 0; i < count; i++) {
+                    long id = ids.getLong();
+                    Assert.assertTrue(id > previous);
+                    previous = id;
+                }
+                total += count;
+            }
+            Assert.assertTrue(total > 0);
+        }
+    }
+
+    @Test
+    @DisplayName("请求数量超出范围时返回错误码，未知操作码时返回错误码并关闭连接")
+    public void shouldAnswerErrorCodeWhenRequestIllegal() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(server.getLocalAddress())) {
+            write(channel, IdProtocol.OP_NEXT_IDS, 0, 65, 1);
+            Assert.assertEquals(IdProtocol.ERROR_BAD_REQUEST, read(channel, IdProtocol.RESPONSE_HEADER_BYTES).getInt());
+            Assert.assertEquals(IdProtocol.ERROR_BAD_REQUEST, read(channel, IdProtocol.RESPONSE_HEADER_BYTES).getInt());
+            Assert.assertEquals(1, read(channel, IdProtocol.RESPONSE_HEADER_BYTES).getInt());
+            read(channel, Long.BYTES);
+
+            write(channel, (byte) 9, 1);
+            Assert.assertEquals(IdProtocol.ERROR_UNKNOWN_OP, read(channel, IdProtocol.RESPONSE_HEADER_BYTES).getInt());
+            Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        }
+    }
+
+    @Test
+    @DisplayName("客户端预取的ID严格递增，服务端关闭后取完剩余批次抛出异常")
+    public void shouldPrefetchIdsWithClient() throws IOException {
+        InetSocketAddress address = server.getLocalAddress();
+        try (FlakeIdClient client = new FlakeIdClient(address, 32, 2)) {
+            long previous = -1L;
+            for (int i = 0; i < 1000; i++) {
+                long id = client.nextId();
+                Assert.assertTrue(id > previous);
+                previous = id;
+            }
+            server.close();
+            Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> {
+                while (true) {
+                    client.nextId();
+                }
+            });
+            Assert.assertTrue(exception.getMessage().contains("ID服务不可用"));
+        }
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class,
+                () -> new FlakeIdClient(address, 0, 1));
+        Assert.assertTrue(exception.getMessage().contains("每批ID数量"));
+    }
+
+    @Test
+    @DisplayName("序号耗尽时暂停该连接，I/O线程照常处理其他连接，到达下一周期后继续响应")
+    public void shouldParkConnectionUntilNextSegment() throws Exception {
+        // 时钟停止前进，当前周期的序号用完后无法再生成ID
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(3).dataCenterId(1).timeSource(now::get).build();
+        int perSegment = 1 << flakeGenerator.getBitLayout().getSeqBits();
+        try (FlakeIdServer parking = new FlakeIdServer(flakeGenerator, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+             SocketChannel exhausted = SocketChannel.open(parking.getLocalAddress());
+             SocketChannel other = SocketChannel.open(parking.getLocalAddress())) {
+            int[] counts = new int[perSegment / 64 + 1];
+            Arrays.fill(counts, 64);
+            write(exhausted, IdProtocol.OP_NEXT_IDS, counts);
+            int received = 0;
+            long previous = -1L;
+            while (received < perSegment) {
+                int count = read(exhausted, IdProtocol.RESPONSE_HEADER_BYTES).getInt();
+                Assert.assertTrue(count > 0);
+                ByteBuffer ids = read(exhausted, count * Long.BYTES);
+                for (int i = 0; i < count; i++) {
+                    long id = ids.getLong();
+                    Assert.assertTrue(id > previous);
+                    previous = id;
+                }
+                received += count;
+            }
+
+            // 最后一个请求暂停期间，其他连接的请求依然得到响应
+            write(other, IdProtocol.OP_NEXT_IDS, 0);
+            Assert.assertEquals(IdProtocol.ERROR_BAD_REQUEST, read(other, IdProtocol.RESPONSE_HEADER_BYTES).getInt());
+            Assert.assertTrue(flakeGenerator.millisUntilNextSegment() > 0);
+
+            now.addAndGet(flakeGenerator.getBitLayout().getSegmentMillis());
+            Assert.assertEquals(64, read(exhausted, IdProtocol.RESPONSE_HEADER_BYTES).getInt());
+            Assert.assertTrue(read(exhausted, Long.BYTES).getLong() > previous);
+        }
+    }
+
+    @Test
+    @DisplayName("服务端生成器暂时出错时，客户端退避后重新请求并记录每批的往返时长")
+    public void shouldRetryWhenGeneratorFails() throws Exception {
+        AtomicBoolean broken = new AtomicBoolean(true);
+        AtomicInteger brokenReads = new AtomicInteger();
+        // 早于纪元的时间戳使生成器抛出异常
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(2).dataCenterId(1)
+                .timeSource(() -> {
+                    if (broken.get()) {
+                        brokenReads.incrementAndGet();
+                        return 0L;
+                    }
+                    return System.currentTimeMillis();
+                })
+                .build();
+        List<Long> roundTrips = new CopyOnWriteArrayList<>();
+        try (FlakeIdServer failing = new FlakeIdServer(flakeGenerator, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             FlakeIdClient client = new FlakeIdClient(failing.getLocalAddress(), 16, 1, roundTrips::add)) {
+            long deadline = System.currentTimeMillis() + 10_000L;
+            while (brokenReads.get() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(brokenReads.get() >= 3);
+            Assert.assertTrue(roundTrips.isEmpty());
+            broken.set(false);
+
+            long previous = -1L;
+            for (int i = 0; i < 100; i++) {
+                long id = client.nextId();
+                Assert.assertTrue(id > previous);
+                previous = id;
+            }
+            Assert.assertTrue(roundTrips.size() >= 100 / 16);
+            Assert.assertTrue(roundTrips.stream().allMatch(nanos -> nanos > 0));
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 不阻塞调用线程的异步ID生成器
+ * <p>
+ * 包装{@link FlakeGenerator}，当前周期还有剩余序号时在调用线程中直接完成；序号耗尽时不等待下一周期，
+ * 而是由调度线程在下一周期开始时继续生成，适用于不允许阻塞的响应式调用方。
+ * <p>
+ * 序号耗尽后到达的请求按到达顺序排队完成；{@link #publisher(int)}按下游请求量逐批发出ID，
+ * 只在下游请求后发出，一批ID在当前周期凑不满时在下一周期补齐后再发出
+ *
+ * @author 徐青
+ */
+public class AsyncFlakeGenerator implements AutoCloseable {
+
+    private final FlakeGenerator flakeGenerator;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 调度线程是否由本生成器创建，关闭时一并关闭
+     */
+    private final boolean ownsScheduler;
+
+    /**
+     * 序号耗尽后等待下一周期的请求
+     */
+    private final Queue<CompletableFuture<Long>> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 是否已安排处理等待中的请求，同一时刻只有一个处理任务
+     */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private final Set<BatchSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * 使用单个守护线程调度序号耗尽后的生成任务
+     *
+     * @param flakeGenerator 被包装的ID生成器
+     */
+    public AsyncFlakeGenerator(FlakeGenerator flakeGenerator) {
+        this(flakeGenerator, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crystal-flake-async");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * @param flakeGenerator 被包装的ID生成器
+     * @param scheduler      调度序号耗尽后生成任务的线程池，由调用方负责关闭
+     */
+    public AsyncFlakeGenerator(FlakeGenerator flakeGenerator, ScheduledExecutorService scheduler) {
+        this(flakeGenerator, scheduler, false);
+    }
+
+    private AsyncFlakeGenerator(FlakeGenerator flakeGenerator, ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        this.flakeGenerator = Objects.requireNonNull(flakeGenerator, "flakeGenerator");
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * 异步生成全局ID，当前周期还有剩余序号时返回的Future已经完成
+     *
+     * @return 全局ID
+     */
+    public CompletableFuture<Long> nextIdAsync() {
+        if (closed) {
+            return CompletableFuture.failedFuture(closedException());
+        }
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        // 已有请求排队时不插队，保证先到先得
+        if (pending.isEmpty()) {
+            try {
+                long id = flakeGenerator.tryNextId(0, TimeUnit.MILLISECONDS);
+                if (id >= 0) {
+                    future.complete(id);
+                    return future;
+                }
+            } catch (FlakeGeneratorException e) {
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+        pending.add(future);
+        if (closed) {
+            failPending();
+        } else {
+            scheduleDrain();
+        }
+        return future;
+    }
+
+    /**
+     * 按下游请求量逐批发出ID的发布者，每个订阅者独立生成，下游每请求一次发出一批
+     *
+     * @param batchSize 每批ID数量
+     * @return 发布者，发出的数组归下游所有
+     */
+    public Flow.Publisher<long[]> publisher(int batchSize) {
+        if (batchSize <= 0) {
+            throw new FlakeGeneratorException(String.format("每批ID数量[%d]必须大于0", batchSize));
+        }
+        return subscriber -> {
+            Objects.requireNonNull(subscriber, "subscriber");
+            BatchSubscription subscription = new BatchSubscription(subscriber, batchSize);
+            subscriptions.add(subscription);
+            subscriber.onSubscribe(subscription);
+            if (closed) {
+                subscription.fail(closedException());
+            }
+        };
+    }
+
+    /**
+     * @return 被包装的ID生成器
+     */
+    public FlakeGenerator getFlakeGenerator() {
+        return flakeGenerator;
+    }
+
+    /**
+     * 以异常结束等待中的请求与全部订阅，并关闭自行创建的调度线程
+     */
+    @Override
+    public void close() {
+        closed = true;
+        failPending();
+        for (BatchSubscription subscription : subscriptions) {
+            subscription.fail(closedException());
+        }
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            scheduleAtNextSegment(this::drainPending);
+        }
+    }
+
+    /**
+     * 在调度线程上按到达顺序完成等待中的请求，序号再次耗尽时安排到下一周期继续
+     */
+    private void drainPending() {
+        CompletableFuture<Long> future;
+        while ((future = pending.peek()) != null) {
+            if (closed) {
+                failPending();
+                return;
+            }
+            if (future.isDone()) {
+                // 调用方已取消
+                pending.poll();
+                continue;
+            }
+            long id;
+            try {
+                id = flakeGenerator.tryNextId(0, TimeUnit.MILLISECONDS);
+            } catch (FlakeGeneratorException e) {
+                pending.poll();
+                future.completeExceptionally(e);
+                continue;
+            }
+            if (id < 0) {
+                scheduleAtNextSegment(this::drainPending);
+                return;
+            }
+            pending.poll();
+            future.complete(id);
+        }
+        drainScheduled.set(false);
+        // 释放标记前新到达的请求可能没能安排处理任务
+        if (!pending.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private void failPending() {
+        CompletableFuture<Long> future;
+        while ((future = pending.poll()) != null) {
+            future.completeExceptionally(closedException());
+        }
+    }
+
+    private void scheduleAtNextSegment(Runnable task) {
+        try {
+            scheduler.schedule(task, flakeGenerator.millisUntilNextSegment(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            closed = true;
+            failPending();
+        }
+    }
+
+    private static FlakeGeneratorException closedException() {
+        return new FlakeGeneratorException("异步ID生成器已关闭");
+    }
+
+    /**
+     * 一个订阅者的订阅，所有对订阅者的回调都在调度线程上串行执行
+     */
+    private final class BatchSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super long[]> subscriber;
+        private final int batchSize;
+
+        /**
+         * 下游尚未满足的请求量，{@link Long#MAX_VALUE}表示不限
+         */
+        private final AtomicLong requested = new AtomicLong();
+
+        /**
+         * 待处理的信号数，不为0时已有处理任务在执行或等待下一周期
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+
+        /**
+         * 尚未凑满的一批ID，只在调度线程上访问
+         */
+        private long[] batch;
+        private int filled;
+
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+
+        BatchSubscription(Flow.Subscriber<? super long[]> subscriber, int batchSize) {
+            this.subscriber = subscriber;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException(String.format("请求数量[%d]必须大于0", n)));
+                return;
+            }
+            requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        void fail(Throwable error) {
+            this.error = error;
+            signal();
+        }
+
+        private void signal() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    scheduler.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    terminate(closedException());
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = wip.get();
+            while (true) {
+                if (cancelled) {
+                    return;
+                }
+                if (closed && error == null) {
+                    error = closedException();
+                }
+                if (error != null) {
+                    terminate(error);
+                    return;
+                }
+                long r = requested.get();
+                long emitted = 0L;
+                while (emitted != r && !cancelled) {
+                    if (batch == null) {
+                        batch = new long[batchSize];
+                        filled = 0;
+                    }
+                    try {
+                        filled += flakeGenerator.tryFill(batch, filled, batchSize - filled);
+                    } catch (FlakeGeneratorException e) {
+                        terminate(e);
+                        return;
+                    }
+                    if (filled < batchSize) {
+                        // 当前周期序号耗尽，保持wip不为0，等待期间的请求只累加到请求量中
+                        produced(emitted);
+                        try {
+                            scheduler.schedule(this::drain, flakeGenerator.millisUntilNextSegment(), TimeUnit.MILLISECONDS);
+                        } catch (RejectedExecutionException e) {
+                            terminate(closedException());
+                        }
+                        return;
+                    }
+                    long[] ids = batch;
+                    batch = null;
+                    subscriber.onNext(ids);
+                    emitted++;
+                }
+                produced(emitted);
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void produced(long emitted) {
+            if (emitted != 0L && requested.get() != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+        }
+
+        private void terminate(Throwable error) {
+            if (!cancelled) {
+                cancelled = true;
+                subscriptions.remove(this);
+                subscriber.onError(error);
+            }
+        }
+    }
+}
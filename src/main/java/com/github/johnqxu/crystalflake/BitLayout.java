@@ -0,0 +1,140 @@
+package com.github.johnqxu.crystalflake;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * ID各组成部分的bit位分配，不可变
+ * <p>
+ * 除保留的最高位外，生产周期、序号、时钟回拨标识、机器节点与数据中心五部分共计63位。
+ * 各部分的移位量与掩码在创建时预先计算，生成器将其保存在final字段中
+ *
+ * <pre>
+ * 0-|--time segment--|-seq-|-clock back-|-worker id-|-data center id-|
+ * </pre>
+ *
+ * @author 徐青
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class BitLayout {
+
+    /**
+     * 除保留位外的总位数
+     */
+    public final static int TOTAL_BITS = 63;
+
+    /**
+     * 默认的bit位分配：36位生产周期、8位序号、2位时钟回拨标识、13位机器节点、4位数据中心，32ms一个周期
+     */
+    public final static BitLayout DEFAULT = of((int) FlakeGenerator.TIME_SEGMENT_BITS, (int) FlakeGenerator.SEQ_BITS,
+            (int) FlakeGenerator.CLOCK_BACK_BITS, (int) FlakeGenerator.WORKER_ID_BITS, (int) FlakeGenerator.DATA_CENTER_BITS,
+            FlakeGenerator.TIME_SEGMENT_SHIFT_BITS);
+
+    /**
+     * 生产周期位数
+     */
+    private final int timeSegmentBits;
+
+    /**
+     * 序号位数
+     */
+    private final int seqBits;
+
+    /**
+     * 时钟回拨标识位数
+     */
+    private final int clockBackBits;
+
+    /**
+     * 机器节点位数
+     */
+    private final int workerIdBits;
+
+    /**
+     * 数据中心位数
+     */
+    private final int dataCenterBits;
+
+    /**
+     * 时间戳精度位数，一个生产周期为2^timeSegmentShiftBits毫秒
+     */
+    private final int timeSegmentShiftBits;
+
+    private final long maxTimeSegment;
+    private final long maxSeq;
+    private final long maxClockBackTimes;
+    private final long maxWorkerId;
+    private final long maxDataCenterId;
+    private final long segmentMillis;
+    private final int workerShift;
+    private final int clockBackShift;
+    private final int seqShift;
+    private final int timeSegmentShift;
+
+    private BitLayout(int timeSegmentBits, int seqBits, int clockBackBits, int workerIdBits, int dataCenterBits, int timeSegmentShiftBits) {
+        checkRange("timeSegmentBits", timeSegmentBits, 1, TOTAL_BITS);
+        checkRange("seqBits", seqBits, 1, TOTAL_BITS);
+        checkRange("clockBackBits", clockBackBits, 0, TOTAL_BITS);
+        checkRange("workerIdBits", workerIdBits, 0, TOTAL_BITS);
+        checkRange("dataCenterBits", dataCenterBits, 0, TOTAL_BITS);
+        checkRange("timeSegmentShiftBits", timeSegmentShiftBits, 0, 20);
+        int total = timeSegmentBits + seqBits + clockBackBits + workerIdBits + dataCenterBits;
+        if (total != TOTAL_BITS) {
+            throw new FlakeGeneratorException(String.format("各部分位数之和[%d]必须等于%d", total, TOTAL_BITS));
+        }
+        this.timeSegmentBits = timeSegmentBits;
+        this.seqBits = seqBits;
+        this.clockBackBits = clockBackBits;
+        this.workerIdBits = workerIdBits;
+        this.dataCenterBits = dataCenterBits;
+        this.timeSegmentShiftBits = timeSegmentShiftBits;
+        this.maxTimeSegment = ~(-1L << timeSegmentBits);
+        this.maxSeq = ~(-1L << seqBits);
+        this.maxClockBackTimes = ~(-1L << clockBackBits);
+        this.maxWorkerId = ~(-1L << workerIdBits);
+        this.maxDataCenterId = ~(-1L << dataCenterBits);
+        this.segmentMillis = 1L << timeSegmentShiftBits;
+        this.workerShift = dataCenterBits;
+        this.clockBackShift = workerShift + workerIdBits;
+        this.seqShift = clockBackShift + clockBackBits;
+        this.timeSegmentShift = seqShift + seqBits;
+    }
+
+    /**
+     * 创建32ms一个生产周期的bit位分配
+     *
+     * @param timeSegmentBits 生产周期位数
+     * @param seqBits         序号位数
+     * @param clockBackBits   时钟回拨标识位数
+     * @param workerIdBits    机器节点位数
+     * @param dataCenterBits  数据中心位数
+     * @return bit位分配
+     */
+    public static BitLayout of(int timeSegmentBits, int seqBits, int clockBackBits, int workerIdBits, int dataCenterBits) {
+        return of(timeSegmentBits, seqBits, clockBackBits, workerIdBits, dataCenterBits, FlakeGenerator.TIME_SEGMENT_SHIFT_BITS);
+    }
+
+    /**
+     * 创建bit位分配
+     *
+     * @param timeSegmentBits      生产周期位数
+     * @param seqBits              序号位数
+     * @param clockBackBits        时钟回拨标识位数
+     * @param workerIdBits         机器节点位数
+     * @param dataCenterBits       数据中心位数
+     * @param timeSegmentShiftBits 时间戳精度位数，一个生产周期为2^timeSegmentShiftBits毫秒
+     * @return bit位分配
+     */
+    public static BitLayout of(int timeSegmentBits, int seqBits, int clockBackBits, int workerIdBits, int dataCenterBits, int timeSegmentShiftBits) {
+        return new BitLayout(timeSegmentBits, seqBits, clockBackBits, workerIdBits, dataCenterBits, timeSegmentShiftBits);
+    }
+
+    private static void checkRange(String name, int value, int min, int max) {
+        if (value < min || value > max) {
+            throw new FlakeGeneratorException(String.format("当前的%s[%d]超出范围[%d,%d]", name, value, min, max));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 忙等待策略
+ *
+ * @author 徐青
+ */
+final class BusySpinWaitStrategy implements WaitStrategy {
+
+    static final BusySpinWaitStrategy INSTANCE = new BusySpinWaitStrategy();
+
+    private BusySpinWaitStrategy() {
+    }
+
+    @Override
+    public long await(long targetMillis, long deadlineMillis, LongSupplier clock) {
+        long timestamp = clock.getAsLong();
+        while (timestamp < targetMillis && timestamp < deadlineMillis) {
+            Thread.onSpinWait();
+            timestamp = clock.getAsLong();
+        }
+        return timestamp;
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.johnqxu.crystalflake;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 预生成ID的缓存生成器
+ * <p>
+ * 包装{@link FlakeGenerator}，由后台线程将ID批量预生成到无锁环形缓冲区中，调用方以O(1)代价取出ID，不需要读取时钟，
+ * 也不会因为当前周期序号耗尽而等待。缓冲区中的ID数量低于补充阈值时，后台线程将缓冲区补满。
+ * <p>
+ * 缓冲区为单生产者多消费者结构：消费者先读取槽位再CAS推进读指针，生产者只在读指针越过槽位后才会覆盖该槽位。
+ * 缓冲区中的ID全局唯一，但早于按{@link EmptyPolicy#INLINE}策略直接生成的ID，因此两者混合时不保证单调递增
+ *
+ * @author 徐青
+ */
+@Slf4j
+public class CachedFlakeGenerator implements IdGenerator, AutoCloseable {
+
+    /**
+     * 缓冲区为空时的处理策略
+     */
+    public enum EmptyPolicy {
+        /**
+         * 等待后台线程补充缓冲区
+         */
+        BLOCK,
+        /**
+         * 抛出{@link FlakeGeneratorException}
+         */
+        THROW,
+        /**
+         * 在调用线程中直接由{@link FlakeGenerator}生成
+         */
+        INLINE
+    }
+
+    /**
+     * 默认缓冲区容量
+     */
+    public final static int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * 缓冲区为空时，阻塞等待的单次挂起时长
+     */
+    private final static long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * 后台线程空闲时的最长挂起时长，为一个序号生成周期
+     */
+    private final static long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L << FlakeGenerator.TIME_SEGMENT_SHIFT_BITS);
+
+    private final FlakeGenerator flakeGenerator;
+    private final long[] buffer;
+    private final int mask;
+    private final int refillThreshold;
+    private final EmptyPolicy emptyPolicy;
+
+    /**
+     * 每次补充的最大ID数量，不超过一个周期的序号数，保证补充的ID尽快对消费者可见
+     */
+    private final int maxRefillChunk;
+
+    /**
+     * 读指针，消费者通过CAS推进
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * 写指针，只由后台线程推进
+     */
+    private volatile long tail;
+
+    /**
+     * 后台线程是否处于挂起状态
+     */
+    private final AtomicBoolean refillParked = new AtomicBoolean();
+    private final Thread refillThread;
+    private volatile boolean closed;
+
+    public CachedFlakeGenerator(FlakeGenerator flakeGenerator) {
+        this(flakeGenerator, DEFAULT_CAPACITY, DEFAULT_CAPACITY / 2, EmptyPolicy.BLOCK);
+    }
+
+    /**
+     * @param flakeGenerator  被包装的ID生成器
+     * @param capacity        缓冲区容量，向上取整为2的幂
+     * @param refillThreshold 补充阈值，缓冲区中的ID数量低于该值时开始补充
+     * @param emptyPolicy     缓冲区为空时的处理策略
+     */
+    public CachedFlakeGenerator(FlakeGenerator flakeGenerator, int capacity, int refillThreshold, EmptyPolicy emptyPolicy) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new FlakeGeneratorException(String.format("缓冲区容量[%d]超出范围[%d,%d]", capacity, 1, 1 << 30));
+        }
+        int size = 1 << (32 - Integer.numberOfLeadingZeros(capacity - 1));
+        if (refillThreshold <= 0 || refillThreshold > size) {
+            throw new FlakeGeneratorException(String.format("补充阈值[%d]超出范围[%d,%d]", refillThreshold, 1, size));
+        }
+        this.flakeGenerator = flakeGenerator;
+        this.buffer = new long[size];
+        this.mask = size - 1;
+        this.refillThreshold = refillThreshold;
+        this.emptyPolicy = emptyPolicy;
+        this.maxRefillChunk = (int) Math.min(flakeGenerator.getBitLayout().getMaxSeq() + 1, size);
+        this.refillThread = new Thread(this::refill, "crystal-flake-refill");
+        this.refillThread.setDaemon(true);
+        this.refillThread.start();
+    }
+
+    /**
+     * 从缓冲区取出一个预生成的ID
+     *
+     * @return 全局ID
+     */
+    @Override
+    public long nextId() {
+        while (true) {
+            long h = head.get();
+            if (h < tail) {
+                long id = buffer[(int) h & mask];
+                if (head.compareAndSet(h, h + 1)) {
+                    if (tail - h - 1 < refillThreshold) {
+                        signalRefill();
+                    }
+                    return id;
+                }
+                continue;
+            }
+            if (closed) {
+                throw new FlakeGeneratorException("ID缓冲区已关闭");
+            }
+            signalRefill();
+            switch (emptyPolicy) {
+                case THROW:
+                    throw new FlakeGeneratorException("ID缓冲区为空");
+                case INLINE:
+                    return flakeGenerator.nextId();
+                default:
+                    LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * @return 缓冲区中可用ID的占比，取值[0,1]
+     */
+    public double fillRatio() {
+        return (double) size() / buffer.length;
+    }
+
+    /**
+     * @return 缓冲区中可用的ID数量
+     */
+    public int size() {
+        return (int) Math.max(0L, tail - head.get());
+    }
+
+    /**
+     * @return 缓冲区容量
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * 停止后台补充线程，缓冲区中剩余的ID依然可以取出
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(refillThread);
+    }
+
+    private void signalRefill() {
+        if (refillParked.get() && refillParked.compareAndSet(true, false)) {
+            LockSupport.unpark(refillThread);
+        }
+    }
+
+    /**
+     * 后台补充线程主循环
+     */
+    private void refill() {
+        while (!closed) {
+            if (size() >= refillThreshold) {
+                awaitRefillSignal();
+                continue;
+            }
+            try {
+                fillUp();
+            } catch (FlakeGeneratorException e) {
+                log.error("预生成ID失败", e);
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * 将缓冲区补满，每补充一段即推进写指针，使其对消费者可见
+     */
+    private void fillUp() {
+        while (!closed) {
+            long t = tail;
+            int free = buffer.length - (int) (t - head.get());
+            if (free == 0) {
+                return;
+            }
+            int index = (int) t & mask;
+            int len = Math.min(Math.min(free, buffer.length - index), maxRefillChunk);
+            flakeGenerator.fill(buffer, index, len);
+            tail = t + len;
+        }
+    }
+
+    private void awaitRefillSignal() {
+        refillParked.set(true);
+        if (size() < refillThreshold || closed) {
+            refillParked.set(false);
+            return;
+        }
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        refillParked.set(false);
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 缓存时钟
+ * <p>
+ * 后台守护线程按固定间隔读取被包装的时钟并写入volatile字段，生成ID的线程只读取该字段。
+ * 刷新间隔应明显小于生成器的一个序号生成周期（{@link BitLayout#getSegmentMillis()}），否则生成器会在周期切换后继续使用旧周期。
+ * 创建时按指定的bit位分配校验刷新间隔，生成器使用该时钟时再按自身的bit位分配校验
+ *
+ * @author 徐青
+ */
+public final class CachedTimeSource implements TimeSource, AutoCloseable {
+
+    private final TimeSource delegate;
+    private final long tickNanos;
+    private final Thread ticker;
+    private volatile long currentTimeMillis;
+    private volatile boolean closed;
+
+    /**
+     * 按默认的bit位分配校验刷新间隔
+     *
+     * @param delegate 被包装的时钟
+     * @param tick     刷新间隔
+     * @param unit     间隔单位
+     */
+    public CachedTimeSource(TimeSource delegate, long tick, TimeUnit unit) {
+        this(delegate, tick, unit, BitLayout.DEFAULT);
+    }
+
+    /**
+     * @param delegate  被包装的时钟
+     * @param tick      刷新间隔
+     * @param unit      间隔单位
+     * @param bitLayout 使用该时钟的生成器的bit位分配，刷新间隔必须小于其生产周期
+     */
+    public CachedTimeSource(TimeSource delegate, long tick, TimeUnit unit, BitLayout bitLayout) {
+        long tickNanos = unit.toNanos(tick);
+        checkTick(tickNanos, bitLayout);
+        this.delegate = delegate;
+        this.tickNanos = tickNanos;
+        this.currentTimeMillis = delegate.currentTimeMillis();
+        this.ticker = new Thread(this::tick, "crystal-flake-ticker");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    /**
+     * 停止后台刷新线程，之后读取到的时间不再变化
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+    }
+
+    /**
+     * 校验刷新间隔小于生成器的生产周期
+     *
+     * @param bitLayout 生成器的bit位分配
+     */
+    void checkTick(BitLayout bitLayout) {
+        checkTick(tickNanos, bitLayout);
+    }
+
+    private static void checkTick(long tickNanos, BitLayout bitLayout) {
+        long maxTickNanos = TimeUnit.MILLISECONDS.toNanos(bitLayout.getSegmentMillis());
+        if (tickNanos <= 0 || tickNanos >= maxTickNanos) {
+            throw new FlakeGeneratorException(String.format("时钟刷新间隔[%dns]超出范围(%d,%d)", tickNanos, 0, maxTickNanos));
+        }
+    }
+
+    private void tick() {
+        while (!closed) {
+            LockSupport.parkNanos(this, tickNanos);
+            currentTimeMillis = delegate.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.johnqxu.crystalflake;
+
+/**
+ * 从环境变量读取机器节点ID，WORKER_ID可以是单个ID，也可以是"8-15"形式的闭区间
+ *
+ * @author 徐青
+ */
+public class EnvWorkerIdAssigner implements WorkerIdAssigner {
+
+    public final static String ENV_WORKER_KEY = "WORKER_ID";
+    public final static String ENV_DATA_CENTER_KEY = "DATA_CENTER_ID";
+
+    /**
+     * workerId区间的分隔符，例如WORKER_ID=8-15
+     */
+    public final static char WORKER_RANGE_SEPARATOR = '-';
+
+    @Override
+    public WorkerIdAssignment assign(BitLayout bitLayout) {
+        String worker = System.getenv(ENV_WORKER_KEY);
+        try {
+            long dataCenterId = dataCenterIdFromEnv();
+            int separator = worker == null ? -1 : worker.indexOf(WORKER_RANGE_SEPARATOR, 1);
+            if (separator < 0) {
+                return WorkerIdAssignment.of(Long.parseLong(worker), dataCenterId);
+            }
+            return WorkerIdAssignment.of(Long.parseLong(worker.substring(0, separator).trim()),
+                    Long.parseLong(worker.substring(separator + 1).trim()), dataCenterId);
+        } catch (NumberFormatException nfe) {
+            throw new FlakeGeneratorException(String.format("环境变量%s[%s]或%s[%s]不是合法的数字", ENV_WORKER_KEY, worker,
+                    ENV_DATA_CENTER_KEY, System.getenv(ENV_DATA_CENTER_KEY)));
+        }
+    }
+
+    /**
+     * @return 环境变量DATA_CENTER_ID的值
+     */
+    static long dataCenterIdFromEnv() {
+        return Long.parseLong(System.getenv(ENV_DATA_CENTER_KEY));
+    }
+}
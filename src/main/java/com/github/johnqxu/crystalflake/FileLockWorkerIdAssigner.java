@@ -0,0 +1,315 @@
+package com.github.johnqxu.crystalflake;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于文件区域锁的本机workerId租约，同一台主机上的多个进程共享一个槽位文件，不依赖外部协调服务
+ * <p>
+ * 槽位文件中第i个8字节的槽位对应workerId i，进程对该槽位加排他锁即租用该workerId。
+ * 锁随进程存活，正常关闭时由{@link #release()}释放，进程崩溃后由操作系统释放，其他进程即可重新租用。
+ * 同一JVM内的多个分配器同样互斥：文件锁属于整个进程，关闭同一文件的任意通道都会释放进程在该文件上持有的全部锁，
+ * 因此同一JVM内按槽位文件的真实路径共享一个文件通道，最后一个分配器归还后才关闭
+ * <p>
+ * 槽位中保存时间戳标记，重新租用该workerId前等待墙上时钟越过标记，避免与上一个持有者在同一周期或借用的周期内生成重复的ID。
+ * 持有期间后台线程每隔半个租约将标记续约为当前时间加上租约时长，覆盖进程崩溃的情况；
+ * 通过{@link #release(long)}归还时写入实际发出的ID所在周期的结束时间，正常重启几乎不需要等待。
+ * 生成器启用借用模式时，租约时长应大于可借用的周期时长
+ *
+ * @author 徐青
+ */
+@Slf4j
+public class FileLockWorkerIdAssigner implements WorkerIdAssigner {
+
+    /**
+     * 指定槽位文件路径的环境变量
+     */
+    public final static String ENV_SLOT_FILE_KEY = "WORKER_SLOT_FILE";
+
+    /**
+     * 默认槽位文件名，位于java.io.tmpdir下
+     */
+    public final static String DEFAULT_SLOT_FILE = "crystal-flake-worker.slots";
+
+    /**
+     * 默认租约时长
+     */
+    public final static long DEFAULT_LEASE_MILLIS = 2000L;
+
+    /**
+     * 每个槽位的字节数，保存一个时间戳标记
+     */
+    private final static int SLOT_BYTES = Long.BYTES;
+
+    /**
+     * 等待槽位标记时每次休眠的最大时长
+     */
+    private final static long SLEEP_MILLIS = 10L;
+
+    /**
+     * 按槽位文件的真实路径共享的文件通道
+     */
+    private final static Map<Path, SharedChannel> CHANNELS = new HashMap<>();
+
+    private final Path slotFile;
+    private final long dataCenterId;
+    private final long leaseMillis;
+    private Path channelKey;
+    private FileChannel channel;
+    private FileLock lock;
+    private ScheduledExecutorService renewer;
+
+    /**
+     * 槽位文件取环境变量WORKER_SLOT_FILE，未设置时使用java.io.tmpdir下的默认文件；dataCenterId取环境变量DATA_CENTER_ID
+     */
+    public FileLockWorkerIdAssigner() {
+        this(defaultSlotFile(), dataCenterIdFromEnv());
+    }
+
+    public FileLockWorkerIdAssigner(Path slotFile, long dataCenterId) {
+        this(slotFile, dataCenterId, DEFAULT_LEASE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param slotFile     槽位文件
+     * @param dataCenterId 数据中心ID
+     * @param lease        槽位标记的租约时长，进程崩溃后重新租用该workerId最多等待该时长
+     * @param unit         时长单位
+     */
+    public FileLockWorkerIdAssigner(Path slotFile, long dataCenterId, long lease, TimeUnit unit) {
+        long leaseMillis = unit.toMillis(lease);
+        if (leaseMillis <= 0) {
+            throw new FlakeGeneratorException(String.format("租约时长[%d]必须大于0毫秒", leaseMillis));
+        }
+        this.slotFile = slotFile;
+        this.dataCenterId = dataCenterId;
+        this.leaseMillis = leaseMillis;
+    }
+
+    @Override
+    public synchronized WorkerIdAssignment assign(BitLayout bitLayout) {
+        if (lock != null) {
+            return WorkerIdAssignment.of(workerIdOf(lock), dataCenterId);
+        }
+        try {
+            openChannel();
+            for (long workerId = 0; workerId <= bitLayout.getMaxWorkerId(); workerId++) {
+                FileLock slotLock = tryLock(workerId);
+                if (slotLock != null) {
+                    lock = slotLock;
+                    awaitMark(workerId);
+                    writeMark(System.currentTimeMillis() + leaseMillis);
+                    startRenewer();
+                    log.info("从槽位文件[{}]租用workerId[{}]", slotFile, workerId);
+                    return WorkerIdAssignment.of(workerId, dataCenterId);
+                }
+            }
+        } catch (IOException e) {
+            releaseLock();
+            throw new FlakeGeneratorException(String.format("读取槽位文件[%s]失败：%s", slotFile, e.getMessage()));
+        } catch (RuntimeException e) {
+            releaseLock();
+            throw e;
+        }
+        closeChannel();
+        throw new FlakeGeneratorException(String.format("槽位文件[%s]中的workerId已全部被占用", slotFile));
+    }
+
+    /**
+     * 归还workerId，槽位中保留最近一次续约的标记，下一个持有者最多等待一个租约
+     */
+    @Override
+    public synchronized void release() {
+        stopRenewer();
+        releaseLock();
+    }
+
+    /**
+     * 归还workerId，槽位标记收回到实际发出的ID所在周期的结束时间
+     *
+     * @param issuedUntilMillis 已发出的ID所在周期的结束时间
+     */
+    @Override
+    public synchronized void release(long issuedUntilMillis) {
+        stopRenewer();
+        if (lock != null) {
+            try {
+                writeMark(issuedUntilMillis);
+            } catch (IOException e) {
+                log.warn("写入workerId[{}]的槽位标记失败", workerIdOf(lock), e);
+            }
+        }
+        releaseLock();
+    }
+
+    /**
+     * 等待墙上时钟越过槽位标记，上一个持有者发出的ID都在标记之前
+     */
+    private void awaitMark(long workerId) throws IOException {
+        long mark = readMark();
+        long now = System.currentTimeMillis();
+        if (now < mark) {
+            log.info("workerId[{}]的槽位标记[{}]晚于当前时间[{}]，等待{}ms", workerId, mark, now, mark - now);
+        }
+        try {
+            while (now < mark) {
+                Thread.sleep(Math.min(mark - now, SLEEP_MILLIS));
+                now = System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FlakeGeneratorException(String.format("等待workerId[%d]的槽位标记时被中断", workerId));
+        }
+    }
+
+    private long readMark() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_BYTES);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, lock.position() + buffer.position()) < 0) {
+                // 新建的槽位文件或者从未写入标记的槽位
+                return 0L;
+            }
+        }
+        return buffer.getLong(0);
+    }
+
+    private void writeMark(long mark) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_BYTES).putLong(0, mark);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, lock.position() + buffer.position());
+        }
+    }
+
+    private void startRenewer() {
+        renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crystal-flake-worker-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1L, leaseMillis / 2);
+        renewer.scheduleAtFixedRate(this::renew, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void renew() {
+        if (lock == null) {
+            return;
+        }
+        try {
+            writeMark(System.currentTimeMillis() + leaseMillis);
+        } catch (IOException e) {
+            log.warn("续约workerId[{}]的槽位标记失败", workerIdOf(lock), e);
+        }
+    }
+
+    private void stopRenewer() {
+        if (renewer != null) {
+            renewer.shutdownNow();
+            renewer = null;
+        }
+    }
+
+    private void releaseLock() {
+        if (lock != null) {
+            try {
+                lock.release();
+            } catch (IOException e) {
+                log.warn("释放workerId[{}]失败", workerIdOf(lock), e);
+            }
+            lock = null;
+        }
+        closeChannel();
+    }
+
+    private static long workerIdOf(FileLock lock) {
+        return lock.position() / SLOT_BYTES;
+    }
+
+    private FileLock tryLock(long workerId) throws IOException {
+        try {
+            return channel.tryLock(workerId * SLOT_BYTES, SLOT_BYTES, false);
+        } catch (OverlappingFileLockException e) {
+            // 同一JVM内已被其他分配器持有
+            return null;
+        }
+    }
+
+    private void openChannel() throws IOException {
+        synchronized (CHANNELS) {
+            try {
+                // 创建失败时不会打开文件，不影响进程已持有的锁
+                Files.createFile(slotFile);
+            } catch (FileAlreadyExistsException e) {
+                // 其他分配器或进程已创建
+            }
+            Path key = slotFile.toRealPath();
+            SharedChannel shared = CHANNELS.get(key);
+            if (shared == null) {
+                shared = new SharedChannel(FileChannel.open(key, StandardOpenOption.READ, StandardOpenOption.WRITE));
+                CHANNELS.put(key, shared);
+            }
+            shared.references++;
+            channelKey = key;
+            channel = shared.channel;
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        synchronized (CHANNELS) {
+            SharedChannel shared = CHANNELS.get(channelKey);
+            if (--shared.references == 0) {
+                CHANNELS.remove(channelKey);
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.warn("关闭槽位文件[{}]失败", slotFile, e);
+                }
+            }
+            channelKey = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * 同一JVM内共享的文件通道与引用计数
+     */
+    private static final class SharedChannel {
+        private final FileChannel channel;
+        private int references;
+
+        private SharedChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private static Path defaultSlotFile() {
+        String slotFile = System.getenv(ENV_SLOT_FILE_KEY);
+        return slotFile == null ? Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_SLOT_FILE) : Paths.get(slotFile);
+    }
+
+    private static long dataCenterIdFromEnv() {
+        try {
+            return EnvWorkerIdAssigner.dataCenterIdFromEnv();
+        } catch (NumberFormatException nfe) {
+            throw new FlakeGeneratorException(String.format("环境变量%s[%s]不是合法的数字",
+                    EnvWorkerIdAssigner.ENV_DATA_CENTER_KEY, System.getenv(EnvWorkerIdAssigner.ENV_DATA_CENTER_KEY)));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.johnqxu.crystalflake;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import jdk.jfr.Timestamp;
+
+/**
+ * 生成器的JFR自定义事件，默认全部关闭
+ * <p>
+ * 事件只在时钟回拨、序号耗尽等慢路径上创建，关闭时{@link Event#shouldCommit()}直接返回false，
+ * 事件对象不会逃逸，JIT可以消除其分配。可以在自定义的.jfc配置中按事件名开启，或者通过
+ * {@code recording.enable("com.github.johnqxu.crystalflake.ClockBack")}开启
+ *
+ * @author 徐青
+ */
+final class FlakeEvents {
+
+    private final static String CATEGORY = "Crystal Flake";
+
+    private FlakeEvents() {
+    }
+
+    static void clockBack(long workerId, long dataCenterId, long depthSegments, long stepMillis, long clockBackTimes) {
+        ClockBackEvent event = new ClockBackEvent();
+        if (event.shouldCommit()) {
+            event.workerId = workerId;
+            event.dataCenterId = dataCenterId;
+            event.depthSegments = depthSegments;
+            event.stepMillis = stepMillis;
+            event.clockBackTimes = clockBackTimes;
+            event.commit();
+        }
+    }
+
+    static void clockBackRejected(long workerId, long dataCenterId, long depthSegments, long stepMillis, String reason) {
+        ClockBackRejectedEvent event = new ClockBackRejectedEvent();
+        if (event.shouldCommit()) {
+            event.workerId = workerId;
+            event.dataCenterId = dataCenterId;
+            event.depthSegments = depthSegments;
+            event.stepMillis = stepMillis;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    static void clockBackReset(long workerId, long dataCenterId, long clockBackTimes) {
+        ClockBackResetEvent event = new ClockBackResetEvent();
+        if (event.shouldCommit()) {
+            event.workerId = workerId;
+            event.dataCenterId = dataCenterId;
+            event.clockBackTimes = clockBackTimes;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return 已开始计时的序号耗尽事件，事件关闭时返回null
+     */
+    static SequenceExhaustedEvent beginSequenceExhausted() {
+        SequenceExhaustedEvent event = new SequenceExhaustedEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endSequenceExhausted(SequenceExhaustedEvent event, long workerId, long dataCenterId, long targetMillis, boolean timedOut) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.workerId = workerId;
+            event.dataCenterId = dataCenterId;
+            event.targetMillis = targetMillis;
+            event.timedOut = timedOut;
+            event.commit();
+        }
+    }
+
+    @Name("com.github.johnqxu.crystalflake.ClockBack")
+    @Label("Clock Back Detected")
+    @Description("检测到时钟回拨，生成器在回拨标识加1后继续生成ID")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ClockBackEvent extends Event {
+        @Label("Worker Id")
+        long workerId;
+        @Label("Data Center Id")
+        long dataCenterId;
+        @Label("Depth Segments")
+        @Description("回拨的生产周期数")
+        long depthSegments;
+        @Label("Step")
+        @Description("上一生产周期起点与当前时钟之差，即回拨时长的下限")
+        @Timespan(Timespan.MILLISECONDS)
+        long stepMillis;
+        @Label("Clock Back Times")
+        @Description("回拨后的连续回拨次数")
+        long clockBackTimes;
+    }
+
+    @Name("com.github.johnqxu.crystalflake.ClockBackRejected")
+    @Label("Clock Back Tolerance Exceeded")
+    @Description("时钟回拨超出最大忍耐值或最大次数，生成器拒绝生成ID")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ClockBackRejectedEvent extends Event {
+        @Label("Worker Id")
+        long workerId;
+        @Label("Data Center Id")
+        long dataCenterId;
+        @Label("Depth Segments")
+        long depthSegments;
+        @Label("Step")
+        @Timespan(Timespan.MILLISECONDS)
+        long stepMillis;
+        @Label("Reason")
+        String reason;
+    }
+
+    @Name("com.github.johnqxu.crystalflake.ClockBackReset")
+    @Label("Clock Back Counter Reset")
+    @Description("时钟越过回拨周期的恢复阈值，回拨标识复位为0")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ClockBackResetEvent extends Event {
+        @Label("Worker Id")
+        long workerId;
+        @Label("Data Center Id")
+        long dataCenterId;
+        @Label("Clock Back Times")
+        @Description("复位前的连续回拨次数")
+        long clockBackTimes;
+    }
+
+    @Name("com.github.johnqxu.crystalflake.SequenceExhausted")
+    @Label("Sequence Exhausted")
+    @Description("当前周期序号耗尽，等待下一生产周期，事件时长即等待时长")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class SequenceExhaustedEvent extends Event {
+        @Label("Worker Id")
+        long workerId;
+        @Label("Data Center Id")
+        long dataCenterId;
+        @Label("Target")
+        @Description("等待到达的时间戳")
+        @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+        long targetMillis;
+        @Label("Timed Out")
+        boolean timedOut;
+    }
+}
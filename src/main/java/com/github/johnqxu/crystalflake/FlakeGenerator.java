@@ -4,6 +4,12 @@ package com.github.johnqxu.crystalflake;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
 
 /**
  * 参考snowflake与sonyflake，按照32ms周期生成全局唯一ID
@@ -19,11 +25,15 @@ import java.util.Date;
  * 第18~19为时间回拨标识位，发生时钟回拨时加1，最多支持连续三次时钟回拨
  * 第5~17为机器节点，一个dc支持8192台机器，共计131072个计算节点
  * 第1~4为datacenter标识，共计支持16个虚拟dc
+ * <p>
+ * 各部分的位数可以通过{@link BitLayout}调整，类中的静态常量对应默认的bit位分配{@link BitLayout#DEFAULT}
+ * <p>
+ * ID生成过程无锁，生成器状态打包在一个long状态字中，多线程通过CAS竞争更新
  *
  * @author 徐青
  */
 @Slf4j
-public class FlakeGenerator {
+public class FlakeGenerator implements IdGenerator {
 
     /**
      * 开始时间为2005年1月1日0时0分0秒
@@ -112,95 +122,799 @@ public class FlakeGenerator {
      */
     public final static long TIME_SEGMENT_SHIFT = SEQ_SHIFT + SEQ_BITS;
 
+    /**
+     * 不限时等待
+     */
+    private final static long NO_TIMEOUT = Long.MAX_VALUE;
+
+    /**
+     * 等待检查点租约时每次休眠的最大时长
+     */
+    private final static long CHECKPOINT_SLEEP_MILLIS = 10L;
+
     private final long workerId;
     private final long dataCenterId;
-    private long seq = 0L;
-    private long clockBack = 0L;
-    private long lastTimeSegment = -1L;
-    private long clockBackSegment = 0L;
-    private long nextMilliSecond;
+
+    /**
+     * ID的bit位分配，以下移位量与掩码均由其预先计算
+     */
+    private final BitLayout bitLayout;
+    private final long maxTimeSegment;
+    private final long maxSeq;
+    private final long maxClockBackTimes;
+    private final int timeSegmentShiftBits;
+    private final int timeSegmentShift;
+    private final int seqShift;
+    private final int clockBackShift;
+
+    /**
+     * ID中机器节点与数据中心部分，生成器生命周期内不变
+     */
+    private final long nodeBits;
+
+    /**
+     * 状态字中时钟回拨标识左移位数
+     */
+    private final int stateClockBackShift;
+
+    /**
+     * 状态字中时钟回拨周期偏移量左移位数
+     */
+    private final int stateClockBackOffsetShift;
+
+    /**
+     * 状态字中时钟回拨周期偏移量掩码
+     */
+    private final long stateClockBackOffsetMask;
+
+    /**
+     * 状态字中生产周期左移位数
+     */
+    private final int stateTimeSegmentShift;
+
+    /**
+     * 序号耗尽时逻辑周期允许领先墙上时钟的最大周期数，0表示不启用
+     */
+    private final long maxLeadSegments;
+
+    /**
+     * 等待下一序号生成周期的策略
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * 生成器使用的时钟
+     */
+    private final LongSupplier clock;
+
+    /**
+     * 生成器读取时间的时钟，降级期间为逻辑时钟，等待下一周期时同样以它为准
+     */
+    private final LongSupplier effectiveClock = this::waitMillis;
+
+    /**
+     * 时钟回拨超出忍耐范围时是否进入降级模式，而不是抛出异常
+     */
+    private final boolean degradeOnClockBack;
+
+    /**
+     * 当前的降级区间，未降级时为null
+     */
+    private final AtomicReference<DegradedEpisode> degradedEpisode = new AtomicReference<>();
+
+    /**
+     * 运行指标，未启用时为null
+     */
+    private final FlakeMetrics metrics;
+
+    /**
+     * 生产周期检查点，未启用时为null
+     */
+    private final SegmentCheckpoint checkpoint;
+
+    /**
+     * 生成器状态字，lastTimeSegment、seq、clockBack与clockBackSegment打包在同一个long中，通过CAS原子更新：
+     *
+     * <pre>
+     * |--lastTimeSegment + 1--|-clockBackSegment偏移量-|-clockBack-|--seq--|
+     *          37 bits                  5 bits              2 bits     8 bits
+     * </pre>
+     * <p>
+     * 以上为默认bit位分配下的状态字，各部分位数随{@link BitLayout}变化。
+     * clockBackSegment以相对lastTimeSegment的偏移量保存，超出恢复阈值的回拨周期与未发生回拨等价，统一保存为0
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 虚拟线程等待下一周期前先排队获取该锁，同一时刻只有持有者等待时钟，其余虚拟线程在队列中挂起，
+     * 持有者取得ID后逐个唤醒后继，避免所有等待者在周期边界同时醒来竞争
+     */
+    private final ReentrantLock waitGate = new ReentrantLock();
 
     public FlakeGenerator(long workerId, long dataCenterId) {
-        if (workerId > MAX_WORKER_ID || workerId < 0) {
-            throw new FlakeGeneratorException(String.format("当前的workerId[%d]超出范围[%d,%d]", workerId, 0, MAX_WORKER_ID));
+        this(builder().workerId(workerId).dataCenterId(dataCenterId));
+    }
+
+    private FlakeGenerator(Builder builder) {
+        BitLayout layout = Objects.requireNonNull(builder.bitLayout, "bitLayout");
+        if (builder.workerId > layout.getMaxWorkerId() || builder.workerId < 0) {
+            throw new FlakeGeneratorException(String.format("当前的workerId[%d]超出范围[%d,%d]", builder.workerId, 0, layout.getMaxWorkerId()));
+        }
+        if (builder.dataCenterId > layout.getMaxDataCenterId() || builder.dataCenterId < 0) {
+            throw new FlakeGeneratorException(String.format("当前的dataCenterId[%d]超出范围[%d,%d]", builder.dataCenterId, 0, layout.getMaxDataCenterId()));
+        }
+        if (builder.maxLeadSegments > layout.getMaxTimeSegment() || builder.maxLeadSegments < 0) {
+            throw new FlakeGeneratorException(String.format("当前的maxLeadSegments[%d]超出范围[%d,%d]", builder.maxLeadSegments, 0, layout.getMaxTimeSegment()));
         }
-        if (dataCenterId > MAX_DATA_CENTER_ID || dataCenterId < 0) {
-            throw new FlakeGeneratorException(String.format("当前的dataCenterId[%d]超出范围[%d,%d]", dataCenterId, 0, MAX_DATA_CENTER_ID));
+        this.workerId = builder.workerId;
+        this.dataCenterId = builder.dataCenterId;
+        this.bitLayout = layout;
+        this.maxTimeSegment = layout.getMaxTimeSegment();
+        this.maxSeq = layout.getMaxSeq();
+        this.maxClockBackTimes = layout.getMaxClockBackTimes();
+        this.timeSegmentShiftBits = layout.getTimeSegmentShiftBits();
+        this.timeSegmentShift = layout.getTimeSegmentShift();
+        this.seqShift = layout.getSeqShift();
+        this.clockBackShift = layout.getClockBackShift();
+        this.nodeBits = builder.workerId << layout.getWorkerShift() | builder.dataCenterId;
+
+        // 连续回拨期间clockBackSegment与lastTimeSegment之差的取值范围为[-MAX_CLOCK_BACK_SEGMENTS, (MAX_CLOCK_BACK_SEGMENTS - 1) * maxClockBackTimes]
+        long maxClockBackOffset = MAX_CLOCK_BACK_SEGMENTS + 1 + (MAX_CLOCK_BACK_SEGMENTS - 1) * maxClockBackTimes;
+        int clockBackOffsetBits = 64 - Long.numberOfLeadingZeros(maxClockBackOffset);
+        this.stateClockBackShift = layout.getSeqBits();
+        this.stateClockBackOffsetShift = stateClockBackShift + layout.getClockBackBits();
+        this.stateClockBackOffsetMask = ~(-1L << clockBackOffsetBits);
+        this.stateTimeSegmentShift = stateClockBackOffsetShift + clockBackOffsetBits;
+        if (stateTimeSegmentShift + layout.getTimeSegmentBits() + 1 > Long.SIZE) {
+            throw new FlakeGeneratorException(String.format("当前的bit位分配无法打包进生成器状态字，workerIdBits与dataCenterBits之和不能小于%d", clockBackOffsetBits));
+        }
+        this.maxLeadSegments = builder.maxLeadSegments;
+        this.waitStrategy = Objects.requireNonNull(builder.waitStrategy, "waitStrategy");
+        this.clock = Objects.requireNonNull(builder.timeSource, "timeSource")::currentTimeMillis;
+        if (builder.timeSource instanceof CachedTimeSource) {
+            ((CachedTimeSource) builder.timeSource).checkTick(layout);
+        }
+        this.degradeOnClockBack = builder.degradeOnClockBack;
+        this.metrics = builder.metricsEnabled ? new FlakeMetrics(builder.workerId, builder.dataCenterId) : null;
+        this.checkpoint = builder.checkpoint;
+        if (checkpoint != null) {
+            awaitCheckpoint(Objects.requireNonNull(builder.startupPolicy, "startupPolicy"));
+            checkpoint.attach(this::issuedUntilMillis);
+        }
+    }
+
+    /**
+     * 墙上时钟未越过上一次运行持久化的租约时，按启动策略拒绝创建生成器或者等待
+     * <p>
+     * 崩溃后的租约可能领先数秒，休眠等待而不使用生成ID的等待策略，避免忙等待占用CPU
+     */
+    private void awaitCheckpoint(SegmentCheckpoint.StartupPolicy startupPolicy) {
+        long leaseMillis = checkpoint.getPersistedLeaseMillis();
+        long now = clock.getAsLong();
+        if (now >= leaseMillis) {
+            return;
         }
-        this.workerId = workerId;
-        this.dataCenterId = dataCenterId;
+        if (startupPolicy == SegmentCheckpoint.StartupPolicy.REFUSE) {
+            throw new FlakeGeneratorException(String.format("当前时间[%d]早于检查点租约[%d]，拒绝生成ID", now, leaseMillis));
+        }
+        log.warn("当前时间[{}]早于检查点租约[{}]，等待{}ms", now, leaseMillis, leaseMillis - now);
+        try {
+            while (now < leaseMillis) {
+                // 分段休眠，墙上时钟被校准时及时发现
+                Thread.sleep(Math.min(leaseMillis - now, CHECKPOINT_SLEEP_MILLIS));
+                now = clock.getAsLong();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FlakeGeneratorException("等待墙上时钟越过检查点租约时被中断");
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
     }
 
     /**
-     * 生成全局ID
+     * 生成全局ID，无锁实现，多线程通过CAS竞争同一个状态字
      *
      * @return 全局ID
      */
-    public synchronized long nextId() {
-        long now = System.currentTimeMillis();
-        long currentTimeSegment = (now - EPOCH) >> TIME_SEGMENT_SHIFT_BITS;
+    @Override
+    public long nextId() {
+        return checkTimeout(acquire(1, NO_TIMEOUT));
+    }
 
-        if (currentTimeSegment < 0) {
-            throw new FlakeGeneratorException("当前系统时间不能早于" + new Date(EPOCH));
+    /**
+     * 生成全局ID，当前周期序号耗尽且在指定时长内等不到下一周期时立即返回，适用于对延迟敏感、宁可快速失败的调用方
+     *
+     * @param timeout 最长等待时长，0表示不等待，序号耗尽时直接返回，只计入{@link FlakeMetrics#getNonBlockingRejections()}
+     * @param unit    时长单位
+     * @return 全局ID，超时返回-1
+     */
+    public long tryNextId(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new FlakeGeneratorException(String.format("等待时长[%d]不能小于0", timeout));
         }
-        if (currentTimeSegment > MAX_TIME_SEGMENT) {
-            throw new FlakeGeneratorException("序号生成周期超出最大值");
+        return acquire(1, unit.toMillis(timeout));
+    }
+
+    /**
+     * 批量生成全局ID
+     *
+     * @param n 生成的ID数量
+     * @return 按生成顺序排列的全局ID
+     */
+    public long[] nextIds(int n) {
+        if (n < 0) {
+            throw new FlakeGeneratorException(String.format("批量生成的ID数量[%d]不能小于0", n));
         }
+        long[] ids = new long[n];
+        fill(ids, 0, n);
+        return ids;
+    }
 
-        if (currentTimeSegment < this.lastTimeSegment) {
-            if (this.lastTimeSegment - currentTimeSegment >= MAX_CLOCK_BACK_SEGMENTS) {
-                throw new FlakeGeneratorException("时钟回拨超出最大忍耐值");
+    /**
+     * 批量生成全局ID并写入调用方提供的数组，不产生额外的内存分配。
+     * 每次CAS预留当前周期内一段连续的序号，超出当前周期剩余序号的部分在后续周期中继续生成
+     *
+     * @param dst 目标数组
+     * @param off 写入的起始位置
+     * @param len 生成的ID数量
+     */
+    public void fill(long[] dst, int off, int len) {
+        Objects.checkFromIndexSize(off, len, dst.length);
+        int end = off + len;
+        while (off < end) {
+            off += expand(checkTimeout(acquire(end - off, NO_TIMEOUT)), dst, off, end - off);
+        }
+    }
+
+    /**
+     * 批量生成全局ID并写入调用方提供的数组，当前周期序号耗尽时立即返回，不等待下一周期，
+     * 不计入序号耗尽等待与等待超时
+     *
+     * @param dst 目标数组
+     * @param off 写入的起始位置
+     * @param len 期望生成的ID数量
+     * @return 实际生成的ID数量
+     */
+    public int tryFill(long[] dst, int off, int len) {
+        Objects.checkFromIndexSize(off, len, dst.length);
+        int start = off;
+        int end = off + len;
+        while (off < end) {
+            long id = acquire(end - off, 0L);
+            if (id < 0) {
+                break;
             }
-            if (currentTimeSegment > clockBackSegment) {
-                clockBackSegment = lastTimeSegment;
+            off += expand(id, dst, off, end - off);
+        }
+        return off - start;
+    }
+
+    /**
+     * 将预留的一段连续序号展开为全局ID
+     *
+     * @param id        预留的第一个序号对应的全局ID
+     * @param remaining 期望写入的ID数量
+     * @return 实际写入的ID数量
+     */
+    private int expand(long id, long[] dst, int off, int remaining) {
+        int granted = (int) Math.min(remaining, maxSeq + 1 - ((id >>> seqShift) & maxSeq));
+        for (int i = 0; i < granted; i++) {
+            dst[off + i] = id + ((long) i << seqShift);
+        }
+        return granted;
+    }
+
+    /**
+     * 当前周期序号耗尽时，距离可以继续生成ID的毫秒数，最长为一个生产周期，供不能阻塞的调用方安排重试，
+     * 例如{@link #tryFill(long[], int, int)}取不到ID后以该时长作为事件循环的超时
+     *
+     * @return 毫秒数，序号未耗尽时为0
+     */
+    public long millisUntilNextSegment() {
+        long lastTimeSegment = lastTimeSegmentOf(state.get());
+        long delay = segmentStartMillis(lastTimeSegment - maxLeadSegments + 1) - waitMillis();
+        return Math.max(0L, Math.min(delay, 1L << timeSegmentShiftBits));
+    }
+
+    /**
+     * 在同一个生产周期内预留至多n个连续序号，实际预留数量为n与当前周期剩余序号数的较小值
+     *
+     * @param n             期望预留的序号数量
+     * @param timeoutMillis 等待下一周期的最长时长，{@link #NO_TIMEOUT}表示不限时
+     * @return 预留的第一个序号对应的全局ID，等待超时返回-1
+     */
+    private long acquire(int n, long timeoutMillis) {
+        return acquire(n, timeoutMillis, false);
+    }
+
+    /**
+     * @param gated 是否已持有{@link #waitGate}
+     */
+    private long acquire(int n, long timeoutMillis, boolean gated) {
+        long deadlineMillis = Long.MAX_VALUE;
+        boolean waited = false;
+        while (true) {
+            // 必须先读取状态再读取时钟，保证CAS成功时状态中的周期不晚于本次读取的时钟
+            long current = this.state.get();
+            long now = currentMillis();
+            long wallTimeSegment = currentTimeSegment(now);
+            long currentTimeSegment = wallTimeSegment;
+            long lastTimeSegment = lastTimeSegmentOf(current);
+            long seq = current & maxSeq;
+            long clockBack = (current >>> stateClockBackShift) & maxClockBackTimes;
+            long clockBackSegment = clockBackSegmentOf(current, lastTimeSegment);
+            long clockBackDepth = 0L;
+            boolean clockBackReset = false;
+
+            // 逻辑周期领先墙上时钟且未超出领先上限时，继续使用逻辑周期
+            if (currentTimeSegment < lastTimeSegment && lastTimeSegment - currentTimeSegment <= maxLeadSegments) {
+                currentTimeSegment = lastTimeSegment;
             }
+            if (currentTimeSegment < lastTimeSegment) {
+                clockBackDepth = lastTimeSegment - currentTimeSegment;
+                if (clockBackDepth >= MAX_CLOCK_BACK_SEGMENTS) {
+                    if (enterDegraded(lastTimeSegment, now)) {
+                        continue;
+                    }
+                    throw clockBackRejected(clockBackDepth, now, lastTimeSegment, "时钟回拨超出最大忍耐值");
+                }
+                if (currentTimeSegment > clockBackSegment) {
+                    clockBackSegment = lastTimeSegment;
+                }
 
-            // 时钟回拨保护
-            this.clockBack = (this.clockBack + 1) & MAX_CLOCK_BACK_TIMES;
-            // 超出最大时钟回拨保护次数
-            if (this.clockBack == 0L) {
-                throw new FlakeGeneratorException("时钟回拨超出最大次数");
+                // 时钟回拨保护
+                clockBack = (clockBack + 1) & maxClockBackTimes;
+                // 超出最大时钟回拨保护次数
+                if (clockBack == 0L) {
+                    if (enterDegraded(lastTimeSegment, now)) {
+                        continue;
+                    }
+                    throw clockBackRejected(clockBackDepth, now, lastTimeSegment, "时钟回拨超出最大次数");
+                }
+            } else {
+                // 时钟未回拨
+                if (currentTimeSegment > clockBackSegment + MAX_CLOCK_BACK_SEGMENTS) {
+                    clockBackReset = clockBack != 0L;
+                    clockBackSegment = 0L;
+                    clockBack = 0L;
+                }
+            }
+            if (currentTimeSegment == lastTimeSegment) {
+                seq = seq + 1L;
+                if (seq > maxSeq) {
+                    if (lastTimeSegment + 1 - leadBaseSegment(wallTimeSegment) > maxLeadSegments || lastTimeSegment == maxTimeSegment) {
+                        //当前序号生成周期内，序号溢出，等待逻辑周期回到领先上限内后重新竞争
+                        if (timeoutMillis == 0L && !gated) {
+                            // 不等待的探测，不计入序号耗尽等待与等待超时
+                            if (metrics != null) {
+                                metrics.recordNonBlockingRejection();
+                            }
+                            return -1L;
+                        }
+                        if (!gated && VirtualThreads.isVirtual()) {
+                            return acquireGated(n, timeoutMillis, now);
+                        }
+                        if (!waited) {
+                            waited = true;
+                            deadlineMillis = deadlineOf(now, timeoutMillis);
+                            if (metrics != null && !gated) {
+                                metrics.recordSequenceExhausted();
+                            }
+                        }
+                        if (nextTimeSegment(lastTimeSegment - maxLeadSegments, deadlineMillis) < 0) {
+                            if (metrics != null) {
+                                metrics.recordWaitTimeout();
+                            }
+                            return -1L;
+                        }
+                        continue;
+                    }
+                    // 向未来借用下一周期，无需等待
+                    currentTimeSegment = lastTimeSegment + 1;
+                    seq = 0L;
+                }
+            } else {
+                // 开始下一生产周期，序号复位
+                seq = 0L;
             }
+            long lastSeq = Math.min(seq + n - 1, maxSeq);
+            if (checkpoint != null) {
+                long issuedUntilMillis = segmentStartMillis(currentTimeSegment + 1);
+                if (issuedUntilMillis > checkpoint.renewAfterMillis) {
+                    checkpoint.renew(issuedUntilMillis);
+                }
+            }
+            if (this.state.compareAndSet(current, packState(currentTimeSegment, lastSeq, clockBack, clockBackSegment))) {
+                if (metrics != null) {
+                    metrics.recordIssued(lastSeq - seq + 1, currentTimeSegment > lastTimeSegment);
+                    if (clockBackDepth > 0L) {
+                        metrics.recordClockBack(clockBackDepth);
+                    }
+                }
+                if (clockBackDepth > 0L) {
+                    FlakeEvents.clockBack(workerId, dataCenterId, clockBackDepth, segmentStartMillis(lastTimeSegment) - now, clockBack);
+                } else if (clockBackReset) {
+                    FlakeEvents.clockBackReset(workerId, dataCenterId, (current >>> stateClockBackShift) & maxClockBackTimes);
+                }
+                return currentTimeSegment << timeSegmentShift | seq << seqShift | clockBack << clockBackShift | nodeBits;
+            }
+        }
+    }
+
+    /**
+     * 虚拟线程在{@link #waitGate}上排队后重新竞争序号，排队期间挂起，不占用载体线程。
+     * 使用{@link ReentrantLock}而不是synchronized，等待时不会固定载体线程
+     *
+     * @param now 发现序号耗尽时读取的时间戳
+     */
+    private long acquireGated(int n, long timeoutMillis, long now) {
+        if (metrics != null) {
+            metrics.recordSequenceExhausted();
+        }
+        long deadlineMillis = deadlineOf(now, timeoutMillis);
+        if (deadlineMillis == Long.MAX_VALUE) {
+            waitGate.lock();
         } else {
-            // 时钟未回拨
-            if (currentTimeSegment > clockBackSegment + MAX_CLOCK_BACK_SEGMENTS) {
-                clockBackSegment = 0L;
-                this.clockBack = 0L;
+            try {
+                if (!waitGate.tryLock(Math.max(0L, deadlineMillis - now), TimeUnit.MILLISECONDS)) {
+                    if (metrics != null) {
+                        metrics.recordWaitTimeout();
+                    }
+                    return -1L;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1L;
             }
         }
-        if (currentTimeSegment == lastTimeSegment) {
-            this.seq = (this.seq + 1L) & MAX_SEQ;
-            if (this.seq == 0L) {
-                //当前序号生成周期内，序号溢出
-                currentTimeSegment = nextTimeSegment();
+        try {
+            long remaining = deadlineMillis == Long.MAX_VALUE ? NO_TIMEOUT : Math.max(0L, deadlineMillis - currentMillis());
+            return acquire(n, remaining, true);
+        } finally {
+            waitGate.unlock();
+        }
+    }
+
+    /**
+     * 读取生成器当前时间：未降级时为墙上时钟；降级期间逻辑时钟固定在已发出ID的最大周期起点，
+     * 取墙上时钟与逻辑时钟的较大值，墙上时钟追上逻辑时钟时退出降级
+     *
+     * @return 时间戳，单位毫秒
+     */
+    private long currentMillis() {
+        long now = clock.getAsLong();
+        if (!degradeOnClockBack) {
+            return now;
+        }
+        DegradedEpisode episode = degradedEpisode.get();
+        if (episode == null) {
+            return now;
+        }
+        long logicalMillis = segmentStartMillis(lastTimeSegmentOf(state.get()));
+        if (now < logicalMillis) {
+            return logicalMillis;
+        }
+        if (degradedEpisode.compareAndSet(episode, null)) {
+            long degradedNanos = System.nanoTime() - episode.startNanos;
+            if (metrics != null) {
+                metrics.recordDegradedExit(degradedNanos);
             }
+            log.warn("墙上时钟[{}]追上逻辑时钟，退出降级模式，降级持续{}ms", now, TimeUnit.NANOSECONDS.toMillis(degradedNanos));
+        }
+        return now;
+    }
+
+    /**
+     * 等待下一周期时使用的时钟：降级期间取墙上时钟与单调时钟上限的较大值，逻辑周期固定不动时等待依然可以结束
+     *
+     * @return 时间戳，单位毫秒
+     */
+    private long waitMillis() {
+        long now = currentMillis();
+        DegradedEpisode episode = degradedEpisode.get();
+        return episode == null ? now : Math.max(now, episode.monotonicMillis());
+    }
+
+    /**
+     * 序号耗尽时计算逻辑周期领先量的基准：降级期间逻辑周期只能借用到单调时钟上限所在的周期，前进速度不超过真实时间
+     *
+     * @param wallTimeSegment 当前时间所在的周期
+     * @return 基准周期
+     */
+    private long leadBaseSegment(long wallTimeSegment) {
+        DegradedEpisode episode = degradedEpisode.get();
+        return episode == null ? wallTimeSegment : Math.max(wallTimeSegment, currentTimeSegment(episode.monotonicMillis()));
+    }
+
+    /**
+     * 时钟回拨超出忍耐范围时进入降级模式，逻辑周期固定在已发出ID的最大周期，只在序号耗尽时前进
+     *
+     * @param lastTimeSegment 已发出ID的最大周期
+     * @param now             回拨后的墙上时钟
+     * @return 未启用降级模式时返回false，由调用方拒绝生成ID
+     */
+    private boolean enterDegraded(long lastTimeSegment, long now) {
+        if (!degradeOnClockBack) {
+            return false;
+        }
+        DegradedEpisode episode = new DegradedEpisode(segmentStartMillis(lastTimeSegment), System.nanoTime());
+        if (degradedEpisode.compareAndSet(null, episode)) {
+            if (metrics != null) {
+                metrics.recordDegradedEnter(episode.startNanos);
+            }
+            log.warn("时钟回拨{}ms超出忍耐范围，进入降级模式，逻辑时钟固定在{}，序号耗尽时前进", episode.baseMillis - now, episode.baseMillis);
+        }
+        return true;
+    }
+
+    /**
+     * @return 是否处于时钟回拨降级模式
+     */
+    public boolean isDegraded() {
+        return degradedEpisode.get() != null;
+    }
+
+    private static long deadlineOf(long now, long timeoutMillis) {
+        return timeoutMillis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeoutMillis;
+    }
+
+    /**
+     * 计算时间戳所在的生产周期，并校验周期范围
+     *
+     * @param now 当前时间戳
+     * @return 生产周期
+     */
+    private long currentTimeSegment(long now) {
+        long currentTimeSegment = (now - EPOCH) >> timeSegmentShiftBits;
+        if (currentTimeSegment < 0) {
+            throw new FlakeGeneratorException("当前系统时间不能早于" + new Date(EPOCH));
+        }
+        if (currentTimeSegment > maxTimeSegment) {
+            throw new FlakeGeneratorException("序号生成周期超出最大值");
+        }
+        return currentTimeSegment;
+    }
+
+    /**
+     * @return 已发出的ID所在周期的结束时间，尚未发出ID时为{@link #EPOCH}
+     */
+    long issuedUntilMillis() {
+        return segmentStartMillis(lastTimeSegmentOf(state.get()) + 1);
+    }
+
+    private long lastTimeSegmentOf(long state) {
+        return (state >>> stateTimeSegmentShift) - 1L;
+    }
+
+    private long clockBackSegmentOf(long state, long lastTimeSegment) {
+        long offset = (state >>> stateClockBackOffsetShift) & stateClockBackOffsetMask;
+        return offset == 0L ? 0L : lastTimeSegment + offset - MAX_CLOCK_BACK_SEGMENTS - 1L;
+    }
+
+    private long packState(long lastTimeSegment, long seq, long clockBack, long clockBackSegment) {
+        long offset = 0L;
+        if (clockBackSegment != 0L && lastTimeSegment - clockBackSegment <= MAX_CLOCK_BACK_SEGMENTS) {
+            offset = clockBackSegment - lastTimeSegment + MAX_CLOCK_BACK_SEGMENTS + 1L;
+        }
+        return (lastTimeSegment + 1L) << stateTimeSegmentShift | offset << stateClockBackOffsetShift | clockBack << stateClockBackShift | seq;
+    }
+
+    /**
+     * 如果一个seq生成周期内，sequence溢出，则需要按照等待策略等待下一seq生成周期，并返回下一周期时间戳segment
+     *
+     * @param lastTimeSegment 需要等待结束的周期
+     * @param deadlineMillis  放弃等待的时间戳
+     * @return 下一周期时间戳segment，超过deadlineMillis放弃等待时返回-1
+     */
+    private long nextTimeSegment(long lastTimeSegment, long deadlineMillis) {
+        long nextMilliSecond = segmentStartMillis(lastTimeSegment + 1);
+        FlakeEvents.SequenceExhaustedEvent event = FlakeEvents.beginSequenceExhausted();
+        long timestamp;
+        if (metrics == null) {
+            timestamp = waitStrategy.await(nextMilliSecond, deadlineMillis, effectiveClock);
         } else {
-            // 开始下一生产周期
-            // 序号复位
-            this.seq = 0L;
-            // 计算下周期开始的时间戳，用于在序号生产周期序号溢出后等待下一周期判断
-            setNextMilliSecond(now);
+            long start = System.nanoTime();
+            timestamp = waitStrategy.await(nextMilliSecond, deadlineMillis, effectiveClock);
+            metrics.recordWait(System.nanoTime() - start);
+        }
+        if (event != null) {
+            FlakeEvents.endSequenceExhausted(event, workerId, dataCenterId, nextMilliSecond, timestamp < nextMilliSecond);
         }
-        this.lastTimeSegment = currentTimeSegment;
-        return currentTimeSegment << TIME_SEGMENT_SHIFT | seq << SEQ_SHIFT | clockBack << CLOCK_BACK_SHIFT | workerId << WORKER_SHIFT | dataCenterId;
+        if (timestamp < nextMilliSecond) {
+            return -1L;
+        }
+        return (timestamp - EPOCH) >> timeSegmentShiftBits;
+    }
+
+    /**
+     * @return 机器节点ID
+     */
+    public long getWorkerId() {
+        return workerId;
     }
 
-    // 设置下一周期的起始毫秒数
-    private void setNextMilliSecond(long now) {
-        this.nextMilliSecond = ((now >> TIME_SEGMENT_SHIFT_BITS) + 1) << TIME_SEGMENT_SHIFT_BITS;
+    /**
+     * @return 数据中心ID
+     */
+    public long getDataCenterId() {
+        return dataCenterId;
     }
 
     /**
-     * 如果一个seq生成周期内，sequence溢出，则需要等待下一seq生成周期，并返回下一周期时间戳segment
+     * @return ID的bit位分配
+     */
+    public BitLayout getBitLayout() {
+        return bitLayout;
+    }
+
+    /**
+     * 运行指标可以通过{@link FlakeMetrics#getObjectName()}注册到JMX
+     *
+     * @return 运行指标，构建时关闭指标记录则返回null
+     */
+    public FlakeMetrics getMetrics() {
+        return metrics;
+    }
+
+    private long segmentStartMillis(long timeSegment) {
+        return (timeSegment << timeSegmentShiftBits) + EPOCH;
+    }
+
+    /**
+     * 记录被拒绝的时钟回拨
      *
-     * @return 下一周期时间戳segment
+     * @return 需要抛出的异常
      */
-    private long nextTimeSegment() {
-        long timestamp = 0L;
-        while (timestamp < this.nextMilliSecond) {
-            timestamp = System.currentTimeMillis();
+    private FlakeGeneratorException clockBackRejected(long depthSegments, long now, long lastTimeSegment, String message) {
+        if (metrics != null) {
+            metrics.recordClockBackRejected();
+        }
+        FlakeEvents.clockBackRejected(workerId, dataCenterId, depthSegments, segmentStartMillis(lastTimeSegment) - now, message);
+        return new FlakeGeneratorException(message);
+    }
+
+    /**
+     * 降级区间。逻辑周期固定在已发出ID的最大周期，序号耗尽时才前进到下一周期，前进不超过单调时钟上限：
+     * 以进入降级时已发出ID的最大周期起点为基准，按{@link System#nanoTime()}经过的时长前进，与墙上时钟的跳变无关。
+     * 生成速度低于周期容量时，墙上时钟按真实时间流逝追上逻辑周期
+     */
+    private static final class DegradedEpisode {
+        private final long baseMillis;
+        private final long startNanos;
+
+        private DegradedEpisode(long baseMillis, long startNanos) {
+            this.baseMillis = baseMillis;
+            this.startNanos = startNanos;
+        }
+
+        private long monotonicMillis() {
+            return baseMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+    }
+
+    private static long checkTimeout(long id) {
+        if (id < 0) {
+            throw new FlakeGeneratorException("等待下一序号生成周期超时");
+        }
+        return id;
+    }
+
+    /**
+     * {@link FlakeGenerator}构建器
+     */
+    public static class Builder {
+        private long workerId = -1L;
+        private long dataCenterId = -1L;
+        private long maxLeadSegments = 0L;
+        private WaitStrategy waitStrategy = WaitStrategy.virtualThreadAware();
+        private TimeSource timeSource = TimeSource.system();
+        private BitLayout bitLayout = BitLayout.DEFAULT;
+        private boolean metricsEnabled = true;
+        private boolean degradeOnClockBack = false;
+        private SegmentCheckpoint checkpoint;
+        private SegmentCheckpoint.StartupPolicy startupPolicy;
+
+        private Builder() {
+        }
+
+        /**
+         * @param workerId 机器节点ID
+         * @return 构建器
+         */
+        public Builder workerId(long workerId) {
+            this.workerId = workerId;
+            return this;
+        }
+
+        /**
+         * @param dataCenterId 数据中心ID
+         * @return 构建器
+         */
+        public Builder dataCenterId(long dataCenterId) {
+            this.dataCenterId = dataCenterId;
+            return this;
+        }
+
+        /**
+         * 启用"向未来借用"模式：当前周期序号耗尽时，逻辑周期直接前进到下一周期而不等待墙上时钟，
+         * 逻辑周期最多领先墙上时钟maxLeadSegments个周期，达到上限后才等待。
+         * 领先上限内的时钟回退同样由逻辑周期吸收，生成的ID保持唯一且单调递增，ID中的时间最多超前实际时间maxLeadSegments个周期
+         *
+         * @param maxLeadSegments 逻辑周期领先墙上时钟的最大周期数，默认0，表示不启用
+         * @return 构建器
+         */
+        public Builder maxLeadSegments(long maxLeadSegments) {
+            this.maxLeadSegments = maxLeadSegments;
+            return this;
+        }
+
+        /**
+         * 启用时钟回拨降级模式：回拨超出最大忍耐值或最大次数时不再抛出异常，而是将逻辑周期固定在已发出ID的最大周期继续生成ID，
+         * 序号耗尽时逻辑周期才前进，前进速度不超过单调时钟，生成的ID保持唯一且单调递增；墙上时钟追上逻辑周期后自动退出降级。
+         * 降级期间ID中的时间领先墙上时钟，领先量不超过回拨时长，降级次数与时长记录在运行指标中
+         *
+         * @param degradeOnClockBack 是否启用，默认不启用
+         * @return 构建器
+         */
+        public Builder degradeOnClockBack(boolean degradeOnClockBack) {
+            this.degradeOnClockBack = degradeOnClockBack;
+            return this;
+        }
+
+        /**
+         * @param waitStrategy 当前周期序号耗尽时等待下一周期的策略，默认平台线程忙等待、虚拟线程挂起等待
+         * @return 构建器
+         */
+        public Builder waitStrategy(WaitStrategy waitStrategy) {
+            this.waitStrategy = waitStrategy;
+            return this;
+        }
+
+        /**
+         * @param timeSource 生成器使用的时钟，默认系统时钟
+         * @return 构建器
+         */
+        public Builder timeSource(TimeSource timeSource) {
+            this.timeSource = timeSource;
+            return this;
+        }
+
+        /**
+         * @param bitLayout ID的bit位分配，默认{@link BitLayout#DEFAULT}
+         * @return 构建器
+         */
+        public Builder bitLayout(BitLayout bitLayout) {
+            this.bitLayout = bitLayout;
+            return this;
+        }
+
+        /**
+         * @param metricsEnabled 是否记录运行指标，默认记录
+         * @return 构建器
+         */
+        public Builder metricsEnabled(boolean metricsEnabled) {
+            this.metricsEnabled = metricsEnabled;
+            return this;
+        }
+
+        /**
+         * 启用生产周期检查点，生成器不负责关闭检查点，应在停止生成ID之后关闭
+         *
+         * @param checkpoint    检查点
+         * @param startupPolicy 墙上时钟早于上一次运行持久化的租约时的处理策略
+         * @return 构建器
+         */
+        public Builder checkpoint(SegmentCheckpoint checkpoint, SegmentCheckpoint.StartupPolicy startupPolicy) {
+            this.checkpoint = checkpoint;
+            this.startupPolicy = startupPolicy;
+            return this;
+        }
+
+        public FlakeGenerator build() {
+            return new FlakeGenerator(this);
         }
-        setNextMilliSecond(timestamp);
-        return (timestamp - EPOCH) >> TIME_SEGMENT_SHIFT_BITS;
     }
 }
@@ -0,0 +1,127 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * 不依赖Spring的生成器工厂
+ * <p>
+ * 按{@link WorkerIdAssigner}分配的机器节点ID直接创建生成器：分配到单个workerId时创建{@link FlakeGenerator}，
+ * 分配到workerId区间时创建{@link StripedFlakeGenerator}。整个过程不使用反射、动态代理与类路径扫描，
+ * 适合GraalVM native-image与对冷启动敏感的短生命周期进程。关闭时归还分配的机器节点ID，应在停止生成ID之后关闭
+ *
+ * @author 徐青
+ */
+public final class FlakeGenerators implements IdGenerator, AutoCloseable {
+
+    private final WorkerIdAssigner workerIdAssigner;
+    private final WorkerIdAssignment assignment;
+    private final IdGenerator idGenerator;
+    private final List<FlakeGenerator> flakeGenerators;
+
+    private FlakeGenerators(WorkerIdAssigner workerIdAssigner, WorkerIdAssignment assignment,
+                            IdGenerator idGenerator, List<FlakeGenerator> flakeGenerators) {
+        this.workerIdAssigner = workerIdAssigner;
+        this.assignment = assignment;
+        this.idGenerator = idGenerator;
+        this.flakeGenerators = Collections.unmodifiableList(flakeGenerators);
+    }
+
+    /**
+     * 从环境变量WORKER_ID、DATA_CENTER_ID读取机器节点ID，使用默认的bit位分配
+     *
+     * @return 已启动的生成器
+     */
+    public static FlakeGenerators fromEnv() {
+        return start(WorkerIdAssigner.env(), BitLayout.DEFAULT);
+    }
+
+    /**
+     * @param workerIdAssigner 机器节点ID分配器
+     * @param bitLayout        bit位分配
+     * @return 已启动的生成器
+     */
+    public static FlakeGenerators start(WorkerIdAssigner workerIdAssigner, BitLayout bitLayout) {
+        return start(workerIdAssigner, bitLayout, UnaryOperator.identity());
+    }
+
+    /**
+     * @param workerIdAssigner 机器节点ID分配器
+     * @param bitLayout        bit位分配
+     * @param config           在workerId、dataCenterId与bit位分配之外配置每个生成器，例如时钟、等待策略与借用模式
+     * @return 已启动的生成器
+     */
+    public static FlakeGenerators start(WorkerIdAssigner workerIdAssigner, BitLayout bitLayout, UnaryOperator<FlakeGenerator.Builder> config) {
+        WorkerIdAssignment assignment = workerIdAssigner.assign(bitLayout);
+        List<FlakeGenerator> flakeGenerators = new ArrayList<>();
+        IdGenerator idGenerator;
+        try {
+            if (assignment.isRange()) {
+                idGenerator = new StripedFlakeGenerator(assignment.getWorkerIdFrom(), assignment.getWorkerIdTo(),
+                        workerId -> newFlakeGenerator(flakeGenerators, config, bitLayout, workerId, assignment.getDataCenterId()));
+            } else {
+                idGenerator = newFlakeGenerator(flakeGenerators, config, bitLayout, assignment.getWorkerIdFrom(), assignment.getDataCenterId());
+            }
+        } catch (RuntimeException e) {
+            workerIdAssigner.release();
+            throw e;
+        }
+        return new FlakeGenerators(workerIdAssigner, assignment, idGenerator, flakeGenerators);
+    }
+
+    private static FlakeGenerator newFlakeGenerator(List<FlakeGenerator> flakeGenerators, UnaryOperator<FlakeGenerator.Builder> config,
+                                                    BitLayout bitLayout, long workerId, long dataCenterId) {
+        FlakeGenerator flakeGenerator = config.apply(FlakeGenerator.builder()
+                        .workerId(workerId)
+                        .dataCenterId(dataCenterId)
+                        .bitLayout(bitLayout))
+                .build();
+        flakeGenerators.add(flakeGenerator);
+        return flakeGenerator;
+    }
+
+    /**
+     * 生成全局ID
+     *
+     * @return 全局ID
+     */
+    @Override
+    public long nextId() {
+        return idGenerator.nextId();
+    }
+
+    /**
+     * @return 分配到单个workerId时为{@link FlakeGenerator}，分配到workerId区间时为{@link StripedFlakeGenerator}
+     */
+    public IdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    /**
+     * @return 创建的全部{@link FlakeGenerator}，用于注册运行指标
+     */
+    public List<FlakeGenerator> getFlakeGenerators() {
+        return flakeGenerators;
+    }
+
+    /**
+     * @return 机器节点ID分配结果
+     */
+    public WorkerIdAssignment getAssignment() {
+        return assignment;
+    }
+
+    /**
+     * 归还分配的机器节点ID，同时告知已发出的ID的时间上界，重复调用没有副作用
+     */
+    @Override
+    public void close() {
+        long issuedUntilMillis = FlakeGenerator.EPOCH;
+        for (FlakeGenerator flakeGenerator : flakeGenerators) {
+            issuedUntilMillis = Math.max(issuedUntilMillis, flakeGenerator.issuedUntilMillis());
+        }
+        workerIdAssigner.release(issuedUntilMillis);
+    }
+}
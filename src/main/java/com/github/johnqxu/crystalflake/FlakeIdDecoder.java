@@ -0,0 +1,192 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.Objects;
+
+/**
+ * ID解析工具，所有方法均为静态方法，解析过程不产生内存分配
+ * <p>
+ * 不带{@link BitLayout}参数的方法按{@link BitLayout#DEFAULT}解析，其他bit位分配的ID应传入生成器的
+ * {@link FlakeGenerator#getBitLayout()}。批量方法将ID数组解析为并列的基本类型数组，适合离线分析大量ID
+ *
+ * @author 徐青
+ */
+public final class FlakeIdDecoder {
+
+    private FlakeIdDecoder() {
+    }
+
+    /**
+     * @param id 全局ID
+     * @return 生产周期
+     */
+    public static long timeSegment(long id) {
+        return timeSegment(BitLayout.DEFAULT, id);
+    }
+
+    /**
+     * @param id 全局ID
+     * @return 生产周期的起始时间戳，单位毫秒
+     */
+    public static long timestampMillis(long id) {
+        return timestampMillis(BitLayout.DEFAULT, id);
+    }
+
+    /**
+     * @param id 全局ID
+     * @return 序号
+     */
+    public static long sequence(long id) {
+        return sequence(BitLayout.DEFAULT, id);
+    }
+
+    /**
+     * @param id 全局ID
+     * @return 时钟回拨标识
+     */
+    public static long clockBack(long id) {
+        return clockBack(BitLayout.DEFAULT, id);
+    }
+
+    /**
+     * @param id 全局ID
+     * @return 机器节点ID
+     */
+    public static long workerId(long id) {
+        return workerId(BitLayout.DEFAULT, id);
+    }
+
+    /**
+     * @param id 全局ID
+     * @return 数据中心ID
+     */
+    public static long dataCenterId(long id) {
+        return dataCenterId(BitLayout.DEFAULT, id);
+    }
+
+    public static long timeSegment(BitLayout layout, long id) {
+        return id >>> layout.getTimeSegmentShift();
+    }
+
+    public static long timestampMillis(BitLayout layout, long id) {
+        return ((id >>> layout.getTimeSegmentShift()) << layout.getTimeSegmentShiftBits()) + FlakeGenerator.EPOCH;
+    }
+
+    public static long sequence(BitLayout layout, long id) {
+        return (id >>> layout.getSeqShift()) & layout.getMaxSeq();
+    }
+
+    public static long clockBack(BitLayout layout, long id) {
+        return (id >>> layout.getClockBackShift()) & layout.getMaxClockBackTimes();
+    }
+
+    public static long workerId(BitLayout layout, long id) {
+        return (id >>> layout.getWorkerShift()) & layout.getMaxWorkerId();
+    }
+
+    public static long dataCenterId(BitLayout layout, long id) {
+        return id & layout.getMaxDataCenterId();
+    }
+
+    /**
+     * 批量解析生产周期的起始时间戳
+     *
+     * @param layout bit位分配
+     * @param ids    ID数组
+     * @param off    ID数组的起始位置
+     * @param len    解析的ID数量
+     * @param dst    目标数组
+     * @param dstOff 目标数组的起始位置
+     */
+    public static void timestampMillis(BitLayout layout, long[] ids, int off, int len, long[] dst, int dstOff) {
+        checkBounds(ids, off, len, dst.length, dstOff);
+        int shift = layout.getTimeSegmentShift();
+        int shiftBits = layout.getTimeSegmentShiftBits();
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = ((ids[off + i] >>> shift) << shiftBits) + FlakeGenerator.EPOCH;
+        }
+    }
+
+    /**
+     * 批量解析序号，序号位数不能超过31
+     */
+    public static void sequences(BitLayout layout, long[] ids, int off, int len, int[] dst, int dstOff) {
+        checkBounds(ids, off, len, dst.length, dstOff);
+        extract(ids, off, len, dst, dstOff, layout.getSeqShift(), checkIntField("seqBits", layout.getSeqBits(), layout.getMaxSeq()));
+    }
+
+    /**
+     * 批量解析时钟回拨标识
+     */
+    public static void clockBacks(BitLayout layout, long[] ids, int off, int len, int[] dst, int dstOff) {
+        checkBounds(ids, off, len, dst.length, dstOff);
+        extract(ids, off, len, dst, dstOff, layout.getClockBackShift(), checkIntField("clockBackBits", layout.getClockBackBits(), layout.getMaxClockBackTimes()));
+    }
+
+    /**
+     * 批量解析机器节点ID
+     */
+    public static void workerIds(BitLayout layout, long[] ids, int off, int len, int[] dst, int dstOff) {
+        checkBounds(ids, off, len, dst.length, dstOff);
+        extract(ids, off, len, dst, dstOff, layout.getWorkerShift(), checkIntField("workerIdBits", layout.getWorkerIdBits(), layout.getMaxWorkerId()));
+    }
+
+    /**
+     * 批量解析数据中心ID
+     */
+    public static void dataCenterIds(BitLayout layout, long[] ids, int off, int len, int[] dst, int dstOff) {
+        checkBounds(ids, off, len, dst.length, dstOff);
+        extract(ids, off, len, dst, dstOff, 0, checkIntField("dataCenterBits", layout.getDataCenterBits(), layout.getMaxDataCenterId()));
+    }
+
+    /**
+     * 批量解析ID的所有组成部分到并列数组中，目标数组为null的部分不解析。
+     * 每个部分使用独立的循环，便于JIT展开与向量化
+     *
+     * @param layout          bit位分配
+     * @param ids             ID数组
+     * @param off             ID数组的起始位置
+     * @param len             解析的ID数量
+     * @param timestampMillis 生产周期起始时间戳的目标数组
+     * @param sequences       序号的目标数组
+     * @param clockBacks      时钟回拨标识的目标数组
+     * @param workerIds       机器节点ID的目标数组
+     * @param dataCenterIds   数据中心ID的目标数组
+     * @param dstOff          各目标数组的起始位置
+     */
+    public static void decode(BitLayout layout, long[] ids, int off, int len, long[] timestampMillis, int[] sequences,
+                              int[] clockBacks, int[] workerIds, int[] dataCenterIds, int dstOff) {
+        if (timestampMillis != null) {
+            timestampMillis(layout, ids, off, len, timestampMillis, dstOff);
+        }
+        if (sequences != null) {
+            sequences(layout, ids, off, len, sequences, dstOff);
+        }
+        if (clockBacks != null) {
+            clockBacks(layout, ids, off, len, clockBacks, dstOff);
+        }
+        if (workerIds != null) {
+            workerIds(layout, ids, off, len, workerIds, dstOff);
+        }
+        if (dataCenterIds != null) {
+            dataCenterIds(layout, ids, off, len, dataCenterIds, dstOff);
+        }
+    }
+
+    private static void extract(long[] ids, int off, int len, int[] dst, int dstOff, int shift, long mask) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = (int) ((ids[off + i] >>> shift) & mask);
+        }
+    }
+
+    private static void checkBounds(long[] ids, int off, int len, int dstLength, int dstOff) {
+        Objects.checkFromIndexSize(off, len, ids.length);
+        Objects.checkFromIndexSize(dstOff, len, dstLength);
+    }
+
+    private static long checkIntField(String name, int bits, long mask) {
+        if (bits > Integer.SIZE - 1) {
+            throw new FlakeGeneratorException(String.format("当前的%s[%d]超出int范围，无法批量解析到int数组", name, bits));
+        }
+        return mask;
+    }
+}
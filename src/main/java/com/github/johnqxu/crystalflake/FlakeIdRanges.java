@@ -0,0 +1,138 @@
+package com.github.johnqxu.crystalflake;
+
+/**
+ * 时间区间与ID区间的换算工具，所有方法均为静态方法，不产生内存分配
+ * <p>
+ * ID的最高部分为生产周期，同一时间区间内生成的ID落在一个连续的数值区间中，
+ * 按创建时间查询时可以改写为主键上的区间扫描：{@code WHERE id BETWEEN minId AND maxId}。
+ * 下界取区间起点所在周期中序号、时钟回拨标识均为0的ID，上界取区间终点所在周期中序号、时钟回拨标识均为最大值的ID，
+ * 指定数据中心与机器节点时，这两部分取指定值，未指定的部分下界取0、上界取最大值，因此得到的是包含全部候选ID的最小区间。
+ * <p>
+ * 时间精度为一个生产周期，区间两端所在周期中早于起点或晚于终点的ID也会落入区间；
+ * 只指定机器节点时区间中还包含其他机器节点的ID，需要在结果上按原条件再过滤。
+ * 时钟回拨期间生成的ID按回拨后的时钟记录周期；生成器配置了maxLeadSegments时，ID的周期可能领先墙上时钟，
+ * 上界的终点应相应延后maxLeadSegments个周期
+ *
+ * @author 徐青
+ */
+public final class FlakeIdRanges {
+
+    private FlakeIdRanges() {
+    }
+
+    /**
+     * @param fromMillis 区间起点，包含，单位毫秒
+     * @return 按{@link BitLayout#DEFAULT}生成的ID中，不早于起点所在周期的最小ID
+     */
+    public static long minId(long fromMillis) {
+        return minId(BitLayout.DEFAULT, fromMillis);
+    }
+
+    /**
+     * @param toMillis 区间终点，包含，单位毫秒
+     * @return 按{@link BitLayout#DEFAULT}生成的ID中，不晚于终点所在周期的最大ID
+     */
+    public static long maxId(long toMillis) {
+        return maxId(BitLayout.DEFAULT, toMillis);
+    }
+
+    public static long minId(BitLayout layout, long fromMillis) {
+        return segmentOf(layout, fromMillis) << layout.getTimeSegmentShift();
+    }
+
+    public static long maxId(BitLayout layout, long toMillis) {
+        return segmentOf(layout, toMillis) << layout.getTimeSegmentShift() | ~(-1L << layout.getTimeSegmentShift());
+    }
+
+    /**
+     * @param layout       bit位分配
+     * @param fromMillis   区间起点，包含，单位毫秒
+     * @param dataCenterId 数据中心ID
+     * @return 指定数据中心不早于起点所在周期的最小ID
+     */
+    public static long minId(BitLayout layout, long fromMillis, long dataCenterId) {
+        checkRange("dataCenterId", dataCenterId, layout.getMaxDataCenterId());
+        return minId(layout, fromMillis) | dataCenterId;
+    }
+
+    /**
+     * @param layout       bit位分配
+     * @param toMillis     区间终点，包含，单位毫秒
+     * @param dataCenterId 数据中心ID
+     * @return 指定数据中心不晚于终点所在周期的最大ID
+     */
+    public static long maxId(BitLayout layout, long toMillis, long dataCenterId) {
+        checkRange("dataCenterId", dataCenterId, layout.getMaxDataCenterId());
+        return maxId(layout, toMillis) & ~layout.getMaxDataCenterId() | dataCenterId;
+    }
+
+    /**
+     * @param layout       bit位分配
+     * @param fromMillis   区间起点，包含，单位毫秒
+     * @param dataCenterId 数据中心ID
+     * @param workerId     机器节点ID
+     * @return 指定机器节点不早于起点所在周期的最小ID
+     */
+    public static long minId(BitLayout layout, long fromMillis, long dataCenterId, long workerId) {
+        checkRange("workerId", workerId, layout.getMaxWorkerId());
+        return minId(layout, fromMillis, dataCenterId) | workerId << layout.getWorkerShift();
+    }
+
+    /**
+     * @param layout       bit位分配
+     * @param toMillis     区间终点，包含，单位毫秒
+     * @param dataCenterId 数据中心ID
+     * @param workerId     机器节点ID
+     * @return 指定机器节点不晚于终点所在周期的最大ID
+     */
+    public static long maxId(BitLayout layout, long toMillis, long dataCenterId, long workerId) {
+        checkRange("workerId", workerId, layout.getMaxWorkerId());
+        return maxId(layout, toMillis, dataCenterId) & ~(layout.getMaxWorkerId() << layout.getWorkerShift())
+                | workerId << layout.getWorkerShift();
+    }
+
+    /**
+     * @param id 全局ID
+     * @return ID所在生产周期的起始时间戳，包含，单位毫秒
+     */
+    public static long segmentStartMillis(long id) {
+        return segmentStartMillis(BitLayout.DEFAULT, id);
+    }
+
+    /**
+     * @param id 全局ID
+     * @return ID所在生产周期的结束时间戳，包含，单位毫秒
+     */
+    public static long segmentEndMillis(long id) {
+        return segmentEndMillis(BitLayout.DEFAULT, id);
+    }
+
+    public static long segmentStartMillis(BitLayout layout, long id) {
+        return FlakeIdDecoder.timestampMillis(layout, id);
+    }
+
+    public static long segmentEndMillis(BitLayout layout, long id) {
+        return FlakeIdDecoder.timestampMillis(layout, id) + layout.getSegmentMillis() - 1;
+    }
+
+    /**
+     * 计算时间戳所在的生产周期，与生成器按{@link FlakeGenerator#EPOCH}与周期精度换算的方式一致
+     */
+    private static long segmentOf(BitLayout layout, long millis) {
+        if (millis < FlakeGenerator.EPOCH) {
+            throw new FlakeGeneratorException(String.format("时间戳[%d]不能早于%d", millis, FlakeGenerator.EPOCH));
+        }
+        long segment = (millis - FlakeGenerator.EPOCH) >> layout.getTimeSegmentShiftBits();
+        if (segment > layout.getMaxTimeSegment()) {
+            throw new FlakeGeneratorException(String.format("时间戳[%d]超出生产周期上限[%d]", millis,
+                    (layout.getMaxTimeSegment() << layout.getTimeSegmentShiftBits()) + FlakeGenerator.EPOCH));
+        }
+        return segment;
+    }
+
+    private static void checkRange(String name, long value, long max) {
+        if (value < 0 || value > max) {
+            throw new FlakeGeneratorException(String.format("当前的%s[%d]超出范围[%d,%d]", name, value, 0, max));
+        }
+    }
+}
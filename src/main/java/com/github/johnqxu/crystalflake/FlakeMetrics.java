@@ -0,0 +1,232 @@
+package com.github.johnqxu.crystalflake;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 生成器运行指标
+ * <p>
+ * 计数器均为{@link LongAdder}，多线程记录时分散到不同的cell，不会在生成器状态字之外引入新的竞争点。
+ * 热路径上每次CAS成功只记录一次ID数量，序号耗尽等待、时钟回拨与降级均属于慢路径
+ *
+ * @author 徐青
+ */
+public final class FlakeMetrics implements FlakeMetricsMXBean {
+
+    /**
+     * JMX注册使用的域名
+     */
+    public final static String JMX_DOMAIN = "com.github.johnqxu.crystalflake";
+
+    private final long workerId;
+    private final long dataCenterId;
+    private final LongAdder idsIssued = new LongAdder();
+    private final LongAdder segmentRollovers = new LongAdder();
+    private final LongAdder sequenceExhaustedWaits = new LongAdder();
+    private final LongAdder waitTimeouts = new LongAdder();
+    private final LongAdder nonBlockingRejections = new LongAdder();
+    private final LongAdder clockBackRejections = new LongAdder();
+    private final LongAdder degradedEpisodes = new LongAdder();
+    private final LongAdder degradedNanos = new LongAdder();
+
+    /**
+     * 当前降级区间的开始时间，先写入开始时间再置位degraded
+     */
+    private volatile long degradedSinceNanos;
+    private volatile boolean degraded;
+
+    /**
+     * 下标i对应回拨i+1个周期
+     */
+    private final LongAdder[] clockBackEvents = new LongAdder[(int) FlakeGenerator.MAX_CLOCK_BACK_SEGMENTS - 1];
+    private final WaitHistogram waitHistogram = new WaitHistogram();
+
+    FlakeMetrics(long workerId, long dataCenterId) {
+        this.workerId = workerId;
+        this.dataCenterId = dataCenterId;
+        for (int i = 0; i < clockBackEvents.length; i++) {
+            clockBackEvents[i] = new LongAdder();
+        }
+    }
+
+    void recordIssued(long count, boolean rollover) {
+        idsIssued.add(count);
+        if (rollover) {
+            segmentRollovers.increment();
+        }
+    }
+
+    void recordSequenceExhausted() {
+        sequenceExhaustedWaits.increment();
+    }
+
+    void recordWait(long nanos) {
+        waitHistogram.record(nanos);
+    }
+
+    void recordWaitTimeout() {
+        waitTimeouts.increment();
+    }
+
+    void recordNonBlockingRejection() {
+        nonBlockingRejections.increment();
+    }
+
+    void recordClockBack(long depthSegments) {
+        clockBackEvents[(int) depthSegments - 1].increment();
+    }
+
+    void recordClockBackRejected() {
+        clockBackRejections.increment();
+    }
+
+    void recordDegradedEnter(long startNanos) {
+        degradedEpisodes.increment();
+        degradedSinceNanos = startNanos;
+        degraded = true;
+    }
+
+    void recordDegradedExit(long nanos) {
+        degradedNanos.add(nanos);
+        degraded = false;
+    }
+
+    /**
+     * @return JMX注册使用的对象名
+     */
+    public ObjectName getObjectName() {
+        try {
+            return new ObjectName(String.format("%s:type=FlakeGenerator,workerId=%d,dataCenterId=%d", JMX_DOMAIN, workerId, dataCenterId));
+        } catch (MalformedObjectNameException e) {
+            throw new FlakeGeneratorException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return 等待下一周期的时长直方图
+     */
+    public WaitHistogram getWaitHistogram() {
+        return waitHistogram;
+    }
+
+    /**
+     * @param depthSegments 回拨深度，取值范围[1, MAX_CLOCK_BACK_SEGMENTS - 1]
+     * @return 该深度的时钟回拨次数
+     */
+    public long getClockBackEvents(int depthSegments) {
+        if (depthSegments < 1 || depthSegments > clockBackEvents.length) {
+            throw new FlakeGeneratorException(String.format("回拨深度[%d]超出范围[%d,%d]", depthSegments, 1, clockBackEvents.length));
+        }
+        return clockBackEvents[depthSegments - 1].sum();
+    }
+
+    @Override
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    @Override
+    public long getDataCenterId() {
+        return dataCenterId;
+    }
+
+    @Override
+    public long getIdsIssued() {
+        return idsIssued.sum();
+    }
+
+    @Override
+    public long getSegmentRollovers() {
+        return segmentRollovers.sum();
+    }
+
+    @Override
+    public long getSequenceExhaustedWaits() {
+        return sequenceExhaustedWaits.sum();
+    }
+
+    @Override
+    public long getWaitTimeouts() {
+        return waitTimeouts.sum();
+    }
+
+    @Override
+    public long getNonBlockingRejections() {
+        return nonBlockingRejections.sum();
+    }
+
+    @Override
+    public long getClockBackEvents() {
+        long sum = 0L;
+        for (LongAdder events : clockBackEvents) {
+            sum += events.sum();
+        }
+        return sum;
+    }
+
+    @Override
+    public long[] getClockBackEventsByDepth() {
+        long[] events = new long[clockBackEvents.length];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = clockBackEvents[i].sum();
+        }
+        return events;
+    }
+
+    @Override
+    public long getClockBackRejections() {
+        return clockBackRejections.sum();
+    }
+
+    @Override
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    @Override
+    public long getDegradedEpisodes() {
+        return degradedEpisodes.sum();
+    }
+
+    @Override
+    public long getDegradedTimeMillis() {
+        long nanos = degradedNanos.sum();
+        if (degraded) {
+            nanos += System.nanoTime() - degradedSinceNanos;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public long getWaitCount() {
+        return waitHistogram.getCount();
+    }
+
+    @Override
+    public double getWaitTimeMeanMicros() {
+        long count = waitHistogram.getCount();
+        return count == 0L ? 0D : waitHistogram.getTotalNanos() / 1000D / count;
+    }
+
+    @Override
+    public double getWaitTimeP50Micros() {
+        return waitHistogram.getValueAtPercentile(50) / 1000D;
+    }
+
+    @Override
+    public double getWaitTimeP99Micros() {
+        return waitHistogram.getValueAtPercentile(99) / 1000D;
+    }
+
+    @Override
+    public double getWaitTimeP999Micros() {
+        return waitHistogram.getValueAtPercentile(99.9) / 1000D;
+    }
+
+    @Override
+    public double getWaitTimeMaxMicros() {
+        return waitHistogram.getMaxNanos() / 1000D;
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.johnqxu.crystalflake;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将生成器运行指标绑定到Micrometer，micrometer-core为可选依赖，只有使用本类时才需要引入。
+ * 各生成器的指标以workerId与dataCenterId标签区分
+ *
+ * @author 徐青
+ */
+public class FlakeMetricsBinder implements MeterBinder {
+
+    private final static String PREFIX = "crystal.flake.";
+
+    private final static double[] PERCENTILES = {50, 99, 99.9};
+
+    private final List<FlakeMetrics> metrics = new ArrayList<>();
+
+    public FlakeMetricsBinder(FlakeGenerator flakeGenerator) {
+        this(Collections.singletonList(flakeGenerator));
+    }
+
+    /**
+     * @param flakeGenerators 需要绑定指标的生成器，关闭指标记录的生成器被忽略
+     */
+    public FlakeMetricsBinder(Collection<FlakeGenerator> flakeGenerators) {
+        for (FlakeGenerator flakeGenerator : flakeGenerators) {
+            FlakeMetrics flakeMetrics = Objects.requireNonNull(flakeGenerator, "flakeGenerator").getMetrics();
+            if (flakeMetrics != null) {
+                metrics.add(flakeMetrics);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (FlakeMetrics flakeMetrics : metrics) {
+            Tags tags = Tags.of("workerId", String.valueOf(flakeMetrics.getWorkerId()),
+                    "dataCenterId", String.valueOf(flakeMetrics.getDataCenterId()));
+            FunctionCounter.builder(PREFIX + "ids.issued", flakeMetrics, FlakeMetrics::getIdsIssued)
+                    .description("已生成的ID数量").tags(tags).register(registry);
+            FunctionCounter.builder(PREFIX + "segment.rollovers", flakeMetrics, FlakeMetrics::getSegmentRollovers)
+                    .description("进入新生产周期的次数").tags(tags).register(registry);
+            FunctionCounter.builder(PREFIX + "sequence.exhausted", flakeMetrics, FlakeMetrics::getSequenceExhaustedWaits)
+                    .description("序号耗尽、等待下一周期的次数").tags(tags).register(registry);
+            FunctionCounter.builder(PREFIX + "wait.timeouts", flakeMetrics, FlakeMetrics::getWaitTimeouts)
+                    .description("等待下一周期超时的次数").tags(tags).register(registry);
+            FunctionCounter.builder(PREFIX + "nonblocking.rejected", flakeMetrics, FlakeMetrics::getNonBlockingRejections)
+                    .description("不等待的调用遇到序号耗尽直接返回的次数").tags(tags).register(registry);
+            FunctionCounter.builder(PREFIX + "clock.back.rejected", flakeMetrics, FlakeMetrics::getClockBackRejections)
+                    .description("拒绝生成ID的时钟回拨次数").tags(tags).register(registry);
+            FunctionTimer.builder(PREFIX + "degraded", flakeMetrics, FlakeMetrics::getDegradedEpisodes, FlakeMetrics::getDegradedTimeMillis, TimeUnit.MILLISECONDS)
+                    .description("时钟回拨降级的次数与累计时长").tags(tags).register(registry);
+            Gauge.builder(PREFIX + "degraded.active", flakeMetrics, m -> m.isDegraded() ? 1 : 0)
+                    .description("是否处于时钟回拨降级模式").tags(tags).register(registry);
+            for (int depth = 1; depth < FlakeGenerator.MAX_CLOCK_BACK_SEGMENTS; depth++) {
+                int d = depth;
+                FunctionCounter.builder(PREFIX + "clock.back", flakeMetrics, m -> m.getClockBackEvents(d))
+                        .description("按回拨深度统计的时钟回拨次数").tags(tags).tag("depth", String.valueOf(depth)).register(registry);
+            }
+            WaitHistogram histogram = flakeMetrics.getWaitHistogram();
+            FunctionTimer.builder(PREFIX + "wait", histogram, WaitHistogram::getCount, WaitHistogram::getTotalNanos, TimeUnit.NANOSECONDS)
+                    .description("等待下一周期的时长").tags(tags).register(registry);
+            TimeGauge.builder(PREFIX + "wait.max", histogram, TimeUnit.NANOSECONDS, WaitHistogram::getMaxNanos)
+                    .tags(tags).register(registry);
+            for (double percentile : PERCENTILES) {
+                TimeGauge.builder(PREFIX + "wait.percentile", histogram, TimeUnit.NANOSECONDS, h -> h.getValueAtPercentile(percentile))
+                        .tags(tags).tag("percentile", String.valueOf(percentile / 100)).register(registry);
+            }
+        }
+    }
+}
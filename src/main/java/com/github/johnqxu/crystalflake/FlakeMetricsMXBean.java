@@ -0,0 +1,83 @@
+package com.github.johnqxu.crystalflake;
+
+/**
+ * 生成器指标的JMX接口，时长单位均为微秒
+ *
+ * @author 徐青
+ */
+public interface FlakeMetricsMXBean {
+
+    long getWorkerId();
+
+    long getDataCenterId();
+
+    /**
+     * @return 已生成的ID数量
+     */
+    long getIdsIssued();
+
+    /**
+     * @return 进入新生产周期的次数
+     */
+    long getSegmentRollovers();
+
+    /**
+     * @return 当前周期序号耗尽、需要等待下一周期的次数
+     */
+    long getSequenceExhaustedWaits();
+
+    /**
+     * @return 等待下一周期超时的次数
+     */
+    long getWaitTimeouts();
+
+    /**
+     * @return 不等待的tryNextId/tryFill遇到序号耗尽、直接返回的次数，不计入序号耗尽等待与等待超时
+     */
+    long getNonBlockingRejections();
+
+    /**
+     * @return 已容忍的时钟回拨总次数
+     */
+    long getClockBackEvents();
+
+    /**
+     * @return 按回拨深度统计的时钟回拨次数，下标0对应回拨1个周期
+     */
+    long[] getClockBackEventsByDepth();
+
+    /**
+     * @return 超出最大忍耐值或最大次数而拒绝生成ID的时钟回拨次数
+     */
+    long getClockBackRejections();
+
+    /**
+     * @return 是否处于时钟回拨降级模式
+     */
+    boolean isDegraded();
+
+    /**
+     * @return 进入时钟回拨降级模式的次数
+     */
+    long getDegradedEpisodes();
+
+    /**
+     * @return 处于降级模式的累计时长，包含进行中的降级，单位毫秒
+     */
+    long getDegradedTimeMillis();
+
+    /**
+     * @return 等待下一周期的次数
+     */
+    long getWaitCount();
+
+    double getWaitTimeMeanMicros();
+
+    double getWaitTimeP50Micros();
+
+    double getWaitTimeP99Micros();
+
+    double getWaitTimeP999Micros();
+
+    double getWaitTimeMaxMicros();
+}
@@ -0,0 +1,525 @@
+package com.github.johnqxu.crystalflake;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * ID批次的紧凑二进制编码，适用于通过消息队列或文件传递大量ID
+ * <p>
+ * 一个批次编码为一帧，第一个字节为格式：
+ * <ul>
+ *     <li>{@link #DELTA}：数量，随后按原顺序写入每个ID与前一个ID之差的zigzag varint。
+ *     同一节点的相邻ID之差为序号的最低位，默认bit位分配下每个ID约4个字节；多个节点交错时相邻ID多数只在节点部分不同，差值更小</li>
+ *     <li>{@link #BY_WORKER}：按机器节点（workerId与dataCenterId）分组，组内按ID升序，去掉节点部分后写入相邻ID之差的varint。
+ *     同一周期内相邻ID之差只有回拨标识位的宽度，每个ID约1个字节；解码得到的ID按节点、ID排序，不保留原顺序</li>
+ * </ul>
+ * 编码直接写入调用方提供的{@link ByteBuffer}；解码通过{@link Cursor}在缓冲区上逐个读取，不复制字节也不产生中间数组
+ *
+ * @author 徐青
+ */
+public final class IdBatchCodec {
+
+    /**
+     * 按原顺序的差值编码
+     */
+    public final static byte DELTA = 0;
+
+    /**
+     * 按机器节点分组的差值编码
+     */
+    public final static byte BY_WORKER = 1;
+
+    /**
+     * 数量字段的最大字节数，流式编码时先按该长度预留，写完后回填
+     */
+    private final static int COUNT_BYTES = 5;
+
+    private final static int MAX_VARINT_BYTES = 10;
+
+    /**
+     * 按节点分区的节点数上限，超过时整体排序
+     */
+    private final static int MAX_PARTITION_NODES = 64;
+
+    private IdBatchCodec() {
+    }
+
+    /**
+     * @param count ID数量
+     * @return {@link #DELTA}格式编码结果的最大字节数
+     */
+    public static int maxEncodedLength(int count) {
+        return Math.addExact(1 + COUNT_BYTES, Math.multiplyExact(count, MAX_VARINT_BYTES));
+    }
+
+    /**
+     * @param count ID数量
+     * @return {@link #BY_WORKER}格式编码结果的最大字节数，即每个ID各属于一个节点时的长度
+     */
+    public static int maxEncodedLengthByWorker(int count) {
+        return Math.addExact(2 + COUNT_BYTES, Math.multiplyExact(count, MAX_VARINT_BYTES * 2 + COUNT_BYTES));
+    }
+
+    /**
+     * 以{@link #DELTA}格式编码，写入缓冲区的当前位置并前移位置
+     *
+     * @param ids    ID数组
+     * @param offset 起始下标
+     * @param length ID数量
+     * @param dst    目标缓冲区
+     * @return 写入的字节数
+     * @throws BufferOverflowException 剩余空间不足，此时缓冲区的位置不变
+     */
+    public static int encode(long[] ids, int offset, int length, ByteBuffer dst) {
+        Objects.checkFromIndexSize(offset, length, ids.length);
+        int start = dst.position();
+        int index = start;
+        try {
+            dst.put(index++, DELTA);
+            index = putVarint(dst, index, length);
+            long previous = 0L;
+            for (int i = offset; i < offset + length; i++) {
+                index = putVarint(dst, index, zigzag(ids[i] - previous));
+                previous = ids[i];
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new BufferOverflowException();
+        }
+        dst.position(index);
+        return index - start;
+    }
+
+    /**
+     * 以{@link #DELTA}格式编码流中的ID，按流的顺序逐个写入，不缓存ID
+     *
+     * @param ids ID流，并行流按出现顺序写入
+     * @param dst 目标缓冲区
+     * @return 写入的字节数
+     * @throws BufferOverflowException 剩余空间不足，此时缓冲区的位置不变
+     */
+    public static int encode(LongStream ids, ByteBuffer dst) {
+        int start = dst.position();
+        DeltaWriter writer = new DeltaWriter(dst, start + 1 + COUNT_BYTES);
+        try {
+            dst.put(start, DELTA);
+            ids.forEachOrdered(writer);
+            putFixedCount(dst, start + 1, writer.count);
+        } catch (IndexOutOfBoundsException e) {
+            throw new BufferOverflowException();
+        }
+        dst.position(writer.index);
+        return writer.index - start;
+    }
+
+    /**
+     * 以{@link #BY_WORKER}格式编码，分组所需的排序在新分配的数组上进行
+     *
+     * @see #encodeByWorker(BitLayout, long[], int, int, long[], ByteBuffer)
+     */
+    public static int encodeByWorker(BitLayout layout, long[] ids, int offset, int length, ByteBuffer dst) {
+        return encodeByWorker(layout, ids, offset, length, new long[length], dst);
+    }
+
+    /**
+     * 以{@link #BY_WORKER}格式编码，写入缓冲区的当前位置并前移位置
+     *
+     * @param layout  生成ID时使用的bit位分配
+     * @param ids     ID数组，内容不会被修改
+     * @param offset  起始下标
+     * @param length  ID数量
+     * @param scratch 分组排序使用的数组，长度不小于length，可以在多次编码间复用
+     * @param dst     目标缓冲区
+     * @return 写入的字节数
+     * @throws BufferOverflowException 剩余空间不足，此时缓冲区的位置不变
+     */
+    public static int encodeByWorker(BitLayout layout, long[] ids, int offset, int length, long[] scratch, ByteBuffer dst) {
+        Objects.checkFromIndexSize(offset, length, ids.length);
+        Objects.checkFromIndexSize(0, length, scratch.length);
+        int shift = layout.getClockBackShift();
+        long nodeMask = ~(-1L << shift);
+        groupByNode(ids, offset, length, shift, scratch);
+
+        int start = dst.position();
+        int index = start;
+        try {
+            dst.put(index++, BY_WORKER);
+            dst.put(index++, (byte) shift);
+            int groupsIndex = index;
+            index += COUNT_BYTES;
+            int groups = 0;
+            int i = 0;
+            while (i < length) {
+                long first = Long.rotateLeft(scratch[i] ^ Long.MIN_VALUE, shift);
+                long node = first & nodeMask;
+                int end = i + 1;
+                while (end < length && (Long.rotateLeft(scratch[end] ^ Long.MIN_VALUE, shift) & nodeMask) == node) {
+                    end++;
+                }
+                index = putVarint(dst, index, node);
+                index = putVarint(dst, index, end - i);
+                long previous = first >>> shift;
+                index = putVarint(dst, index, previous);
+                for (int j = i + 1; j < end; j++) {
+                    long high = Long.rotateLeft(scratch[j] ^ Long.MIN_VALUE, shift) >>> shift;
+                    index = putVarint(dst, index, high - previous);
+                    previous = high;
+                }
+                groups++;
+                i = end;
+            }
+            putFixedCount(dst, groupsIndex, groups);
+        } catch (IndexOutOfBoundsException e) {
+            throw new BufferOverflowException();
+        }
+        dst.position(index);
+        return index - start;
+    }
+
+    /**
+     * 将ID的节点部分循环右移到最高位并翻转符号位后写入scratch，使有符号排序等价于先按节点、再按ID排序。
+     * 已经有序时直接返回；节点不超过{@link #MAX_PARTITION_NODES}个时按节点稳定分区，组内已经升序（同一节点按生成顺序排列）时不再排序，
+     * 否则整体排序
+     */
+    private static void groupByNode(long[] ids, int offset, int length, int shift, long[] scratch) {
+        long nodeMask = ~(-1L << shift);
+        long[] nodes = new long[MAX_PARTITION_NODES];
+        int[] starts = new int[MAX_PARTITION_NODES + 1];
+        int distinct = 0;
+        int last = 0;
+        boolean ordered = true;
+        for (int i = 0; i < length; i++) {
+            long id = ids[offset + i];
+            scratch[i] = Long.rotateRight(id, shift) ^ Long.MIN_VALUE;
+            ordered &= i == 0 || scratch[i - 1] <= scratch[i];
+            if (distinct > MAX_PARTITION_NODES) {
+                continue;
+            }
+            long node = id & nodeMask;
+            if (distinct == 0 || nodes[last] != node) {
+                last = indexOf(nodes, distinct, node);
+                if (last < 0) {
+                    if (distinct == MAX_PARTITION_NODES) {
+                        distinct++;
+                        continue;
+                    }
+                    last = distinct++;
+                    nodes[last] = node;
+                }
+            }
+            starts[last + 1]++;
+        }
+        if (ordered) {
+            return;
+        }
+        if (distinct > MAX_PARTITION_NODES) {
+            Arrays.sort(scratch, 0, length);
+            return;
+        }
+        // 按节点排序后计算各组的起始位置，组之间的顺序与整体排序一致
+        for (int i = 1; i < distinct; i++) {
+            for (int j = i; j > 0 && nodes[j - 1] > nodes[j]; j--) {
+                long node = nodes[j];
+                nodes[j] = nodes[j - 1];
+                nodes[j - 1] = node;
+                int count = starts[j + 1];
+                starts[j + 1] = starts[j];
+                starts[j] = count;
+            }
+        }
+        for (int i = 1; i <= distinct; i++) {
+            starts[i] += starts[i - 1];
+        }
+        last = 0;
+        for (int i = offset; i < offset + length; i++) {
+            long node = ids[i] & nodeMask;
+            if (nodes[last] != node) {
+                last = indexOf(nodes, distinct, node);
+            }
+            scratch[starts[last]++] = Long.rotateRight(ids[i], shift) ^ Long.MIN_VALUE;
+        }
+        int from = 0;
+        for (int g = 0; g < distinct; g++) {
+            int to = starts[g];
+            for (int i = from + 1; i < to; i++) {
+                if (scratch[i - 1] > scratch[i]) {
+                    Arrays.sort(scratch, from, to);
+                    break;
+                }
+            }
+            from = to;
+        }
+    }
+
+    private static int indexOf(long[] nodes, int size, long node) {
+        for (int i = 0; i < size; i++) {
+            if (nodes[i] == node) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在缓冲区的当前位置上读取一帧，不改变缓冲区的位置
+     *
+     * @param src 源缓冲区，读取完成前不能修改其内容
+     * @return 逐个读取ID的游标
+     */
+    public static Cursor cursor(ByteBuffer src) {
+        return new Cursor(src, src.position());
+    }
+
+    /**
+     * 读取一帧中ID的数量，不改变缓冲区的位置。{@link #BY_WORKER}格式需要扫描整帧
+     *
+     * @param src 源缓冲区
+     * @return ID数量
+     */
+    public static int count(ByteBuffer src) {
+        return cursor(src).count();
+    }
+
+    /**
+     * 读取一帧写入数组，并将缓冲区的位置前移到帧末尾
+     *
+     * @param src    源缓冲区
+     * @param dst    目标数组
+     * @param offset 写入的起始下标
+     * @return 读取的ID数量
+     * @throws IndexOutOfBoundsException 数组空间不足，此时缓冲区的位置不变
+     */
+    public static int decode(ByteBuffer src, long[] dst, int offset) {
+        Cursor cursor = cursor(src);
+        if (cursor.format() == DELTA) {
+            Objects.checkFromIndexSize(offset, cursor.count(), dst.length);
+        } else {
+            Objects.checkIndex(offset, dst.length + 1);
+        }
+        int i = offset;
+        while (cursor.hasNext()) {
+            dst[i++] = cursor.nextLong();
+        }
+        src.position(cursor.position());
+        return i - offset;
+    }
+
+    /**
+     * 以流的方式读取一帧，不改变缓冲区的位置
+     *
+     * @param src 源缓冲区
+     * @return 按帧内顺序排列的ID流
+     */
+    public static LongStream stream(ByteBuffer src) {
+        Cursor cursor = cursor(src);
+        Spliterator.OfLong spliterator = Spliterators.spliterator(cursor, cursor.count(), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.longStream(spliterator, false);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int putVarint(ByteBuffer dst, int index, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            dst.put(index++, (byte) (value | 0x80));
+            value >>>= 7;
+        }
+        dst.put(index++, (byte) value);
+        return index;
+    }
+
+    /**
+     * 以固定{@link #COUNT_BYTES}个字节写入数量，前几个字节带续位标识，与最短varint的解码方式相同
+     */
+    private static void putFixedCount(ByteBuffer dst, int index, int count) {
+        for (int i = 0; i < COUNT_BYTES - 1; i++) {
+            dst.put(index++, (byte) (count & 0x7F | 0x80));
+            count >>>= 7;
+        }
+        dst.put(index, (byte) count);
+    }
+
+    private static final class DeltaWriter implements LongConsumer {
+        private final ByteBuffer dst;
+        private int index;
+        private int count;
+        private long previous;
+
+        private DeltaWriter(ByteBuffer dst, int index) {
+            this.dst = dst;
+            this.index = index;
+        }
+
+        @Override
+        public void accept(long id) {
+            if (count == Integer.MAX_VALUE) {
+                throw new FlakeGeneratorException(String.format("一帧最多编码%d个ID", Integer.MAX_VALUE));
+            }
+            index = putVarint(dst, index, zigzag(id - previous));
+            previous = id;
+            count++;
+        }
+    }
+
+    /**
+     * 在缓冲区上逐个读取一帧中的ID，不复制字节，非线程安全
+     */
+    public static final class Cursor implements PrimitiveIterator.OfLong {
+        private final ByteBuffer src;
+        private final int headerEnd;
+        private final byte format;
+        private final int shift;
+
+        /**
+         * {@link #DELTA}格式为ID数量，{@link #BY_WORKER}格式为组数
+         */
+        private final int total;
+
+        private int index;
+        private int groups;
+        private int remaining;
+        private long node;
+        private long previous;
+
+        private Cursor(ByteBuffer src, int index) {
+            this.src = src;
+            this.index = index;
+            try {
+                format = src.get(this.index++);
+                if (format == DELTA) {
+                    shift = 0;
+                } else if (format == BY_WORKER) {
+                    shift = src.get(this.index++);
+                    if (shift < 0 || shift >= Long.SIZE) {
+                        throw new FlakeGeneratorException(String.format("节点部分的位数[%d]超出范围", shift));
+                    }
+                } else {
+                    throw new FlakeGeneratorException(String.format("未知的编码格式[%d]", format));
+                }
+                total = readCount();
+            } catch (IndexOutOfBoundsException e) {
+                throw new BufferUnderflowException();
+            }
+            this.headerEnd = this.index;
+            if (format == DELTA) {
+                remaining = total;
+            } else {
+                groups = total;
+            }
+        }
+
+        /**
+         * @return 编码格式，{@link #DELTA}或{@link #BY_WORKER}
+         */
+        public byte format() {
+            return format;
+        }
+
+        /**
+         * @return 帧中的ID总数，{@link #BY_WORKER}格式需要扫描整帧，不影响读取位置
+         */
+        public int count() {
+            if (format == DELTA) {
+                return total;
+            }
+            int saved = index;
+            index = headerEnd;
+            long count = 0L;
+            try {
+                for (int g = 0; g < total; g++) {
+                    readVarint();
+                    int n = readGroupSize();
+                    for (int i = 0; i < n; i++) {
+                        readVarint();
+                    }
+                    count += n;
+                }
+            } catch (IndexOutOfBoundsException e) {
+                throw new BufferUnderflowException();
+            } finally {
+                index = saved;
+            }
+            return Math.toIntExact(count);
+        }
+
+        /**
+         * @return 已读取部分在缓冲区中的结束位置，全部读取后即帧的结束位置
+         */
+        public int position() {
+            return index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0 || groups > 0;
+        }
+
+        @Override
+        public long nextLong() {
+            try {
+                if (format == DELTA) {
+                    if (remaining == 0) {
+                        throw new NoSuchElementException();
+                    }
+                    remaining--;
+                    long value = readVarint();
+                    previous += (value >>> 1) ^ -(value & 1L);
+                    return previous;
+                }
+                if (remaining > 0) {
+                    remaining--;
+                    previous += readVarint();
+                    return previous << shift | node;
+                }
+                if (groups == 0) {
+                    throw new NoSuchElementException();
+                }
+                groups--;
+                node = readVarint();
+                remaining = readGroupSize() - 1;
+                previous = readVarint();
+                return previous << shift | node;
+            } catch (IndexOutOfBoundsException e) {
+                throw new BufferUnderflowException();
+            }
+        }
+
+        private long readVarint() {
+            long value = 0L;
+            for (int shiftBits = 0; shiftBits < MAX_VARINT_BYTES * 7; shiftBits += 7) {
+                byte b = src.get(index++);
+                value |= (long) (b & 0x7F) << shiftBits;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new FlakeGeneratorException(String.format("位置[%d]之前的varint超过%d个字节", index, MAX_VARINT_BYTES));
+        }
+
+        private int readCount() {
+            long count = readVarint();
+            if (count < 0 || count > Integer.MAX_VALUE) {
+                throw new FlakeGeneratorException(String.format("数量[%d]超出范围", count));
+            }
+            return (int) count;
+        }
+
+        private int readGroupSize() {
+            int size = readCount();
+            if (size == 0) {
+                throw new FlakeGeneratorException(String.format("位置[%d]之前的分组为空", index));
+            }
+            return size;
+        }
+    }
+}
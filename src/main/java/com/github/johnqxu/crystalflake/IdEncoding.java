@@ -0,0 +1,334 @@
+package com.github.johnqxu.crystalflake;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * ID的定长字符串编码，适用于在URL与JSON中传递ID
+ * <p>
+ * 编码结果按无符号64位整数补足前导0，字母表按ASCII升序排列，因此编码结果的字典序与ID的数值顺序一致。
+ * 编码与解码直接读写调用方提供的byte[]、char[]或{@link ByteBuffer}，不产生中间对象；
+ * 只有{@link #encodeToString(long)}与{@link #decode(CharSequence)}面向便捷调用，前者会分配字符串
+ *
+ * @author 徐青
+ */
+public enum IdEncoding {
+
+    /**
+     * Crockford Base32，13个字符，字母表为0-9与去掉I、L、O、U的大写字母。
+     * 解码时不区分大小写，并将I、L解码为1，O解码为0
+     */
+    BASE32("0123456789ABCDEFGHJKMNPQRSTVWXYZ", 32, 13, -1L >>> 5, true) {
+        @Override
+        long quotient(long value) {
+            return value >>> 5;
+        }
+    },
+
+    /**
+     * Base62，11个字符，字母表为0-9、A-Z、a-z，区分大小写
+     */
+    BASE62("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz", 62, 11, (-1L >>> 1) / 31, false) {
+        @Override
+        long quotient(long value) {
+            // 无符号除以62：先无符号右移1位再除以31，结果与整体除以62相同
+            return (value >>> 1) / 31;
+        }
+    };
+
+    private final byte[] alphabet;
+    private final int radix;
+    private final int width;
+
+    /**
+     * 无符号64位最大值除以基数的商，累加前超过该值即溢出
+     */
+    private final long maxQuotient;
+
+    /**
+     * ASCII字符到数字的映射，非法字符为-1
+     */
+    private final byte[] digits = new byte[128];
+
+    /**
+     * @param crockford 是否按Crockford规则解码：不区分大小写，I、L解码为1，O解码为0
+     */
+    IdEncoding(String alphabet, int radix, int width, long maxQuotient, boolean crockford) {
+        this.alphabet = alphabet.getBytes(StandardCharsets.US_ASCII);
+        this.radix = radix;
+        this.width = width;
+        this.maxQuotient = maxQuotient;
+        Arrays.fill(digits, (byte) -1);
+        for (int i = 0; i < radix; i++) {
+            digits[alphabet.charAt(i)] = (byte) i;
+            if (crockford) {
+                digits[Character.toLowerCase(alphabet.charAt(i))] = (byte) i;
+            }
+        }
+        if (crockford) {
+            digits['I'] = digits['i'] = digits['L'] = digits['l'] = 1;
+            digits['O'] = digits['o'] = 0;
+        }
+    }
+
+    /**
+     * @param value 无符号64位整数
+     * @return 无符号整除基数的商
+     */
+    abstract long quotient(long value);
+
+    /**
+     * @return 编码结果的固定长度
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * 将ID编码写入byte[]，每个字符占一个字节
+     *
+     * @param id  ID
+     * @param dst 目标数组
+     * @param off 写入的起始位置
+     */
+    public void encode(long id, byte[] dst, int off) {
+        Objects.checkFromIndexSize(off, width, dst.length);
+        long value = id;
+        for (int i = off + width - 1; i >= off; i--) {
+            long q = quotient(value);
+            dst[i] = alphabet[(int) (value - q * radix)];
+            value = q;
+        }
+    }
+
+    /**
+     * 将ID编码写入char[]
+     *
+     * @param id  ID
+     * @param dst 目标数组
+     * @param off 写入的起始位置
+     */
+    public void encode(long id, char[] dst, int off) {
+        Objects.checkFromIndexSize(off, width, dst.length);
+        long value = id;
+        for (int i = off + width - 1; i >= off; i--) {
+            long q = quotient(value);
+            dst[i] = (char) alphabet[(int) (value - q * radix)];
+            value = q;
+        }
+    }
+
+    /**
+     * 将ID编码写入缓冲区的当前位置，并将位置前移{@link #width()}
+     *
+     * @param id  ID
+     * @param dst 目标缓冲区
+     * @throws BufferOverflowException 剩余空间不足
+     */
+    public void encode(long id, ByteBuffer dst) {
+        int position = dst.position();
+        if (dst.remaining() < width) {
+            throw new BufferOverflowException();
+        }
+        if (dst.hasArray()) {
+            encode(id, dst.array(), dst.arrayOffset() + position);
+        } else {
+            long value = id;
+            for (int i = position + width - 1; i >= position; i--) {
+                long q = quotient(value);
+                dst.put(i, alphabet[(int) (value - q * radix)]);
+                value = q;
+            }
+        }
+        dst.position(position + width);
+    }
+
+    /**
+     * 批量编码，编码结果首尾相接，不含分隔符
+     *
+     * @param ids    ID数组
+     * @param off    读取的起始位置
+     * @param len    ID数量
+     * @param dst    目标数组
+     * @param dstOff 写入的起始位置
+     */
+    public void encode(long[] ids, int off, int len, byte[] dst, int dstOff) {
+        Objects.checkFromIndexSize(off, len, ids.length);
+        Objects.checkFromIndexSize(dstOff, Math.multiplyExact(len, width), dst.length);
+        for (int i = 0; i < len; i++) {
+            encode(ids[off + i], dst, dstOff + i * width);
+        }
+    }
+
+    /**
+     * 批量编码，编码结果首尾相接，不含分隔符
+     *
+     * @param ids    ID数组
+     * @param off    读取的起始位置
+     * @param len    ID数量
+     * @param dst    目标数组
+     * @param dstOff 写入的起始位置
+     */
+    public void encode(long[] ids, int off, int len, char[] dst, int dstOff) {
+        Objects.checkFromIndexSize(off, len, ids.length);
+        Objects.checkFromIndexSize(dstOff, Math.multiplyExact(len, width), dst.length);
+        for (int i = 0; i < len; i++) {
+            encode(ids[off + i], dst, dstOff + i * width);
+        }
+    }
+
+    /**
+     * 批量编码到缓冲区的当前位置，编码结果首尾相接，不含分隔符
+     *
+     * @param ids ID数组
+     * @param off 读取的起始位置
+     * @param len ID数量
+     * @param dst 目标缓冲区
+     * @throws BufferOverflowException 剩余空间不足，此时缓冲区不变
+     */
+    public void encode(long[] ids, int off, int len, ByteBuffer dst) {
+        Objects.checkFromIndexSize(off, len, ids.length);
+        if (dst.remaining() < Math.multiplyExact(len, width)) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < len; i++) {
+            encode(ids[off + i], dst);
+        }
+    }
+
+    /**
+     * @param id ID
+     * @return 编码字符串
+     */
+    public String encodeToString(long id) {
+        char[] chars = new char[width];
+        encode(id, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * 从byte[]解码ID
+     *
+     * @param src 源数组
+     * @param off 读取的起始位置
+     * @return ID
+     */
+    public long decode(byte[] src, int off) {
+        Objects.checkFromIndexSize(off, width, src.length);
+        long value = 0L;
+        for (int i = off; i < off + width; i++) {
+            value = accumulate(value, src[i]);
+        }
+        return value;
+    }
+
+    /**
+     * 从char[]解码ID
+     *
+     * @param src 源数组
+     * @param off 读取的起始位置
+     * @return ID
+     */
+    public long decode(char[] src, int off) {
+        Objects.checkFromIndexSize(off, width, src.length);
+        long value = 0L;
+        for (int i = off; i < off + width; i++) {
+            value = accumulate(value, src[i]);
+        }
+        return value;
+    }
+
+    /**
+     * 从缓冲区的当前位置解码ID，并将位置前移{@link #width()}
+     *
+     * @param src 源缓冲区
+     * @return ID
+     * @throws BufferUnderflowException 剩余字节不足
+     */
+    public long decode(ByteBuffer src) {
+        int position = src.position();
+        if (src.remaining() < width) {
+            throw new BufferUnderflowException();
+        }
+        long value = 0L;
+        for (int i = position; i < position + width; i++) {
+            value = accumulate(value, src.get(i));
+        }
+        src.position(position + width);
+        return value;
+    }
+
+    /**
+     * 解码字符串，长度必须为{@link #width()}
+     *
+     * @param encoded 编码字符串
+     * @return ID
+     */
+    public long decode(CharSequence encoded) {
+        if (encoded.length() != width) {
+            throw new FlakeGeneratorException(String.format("%s编码[%s]的长度必须为%d", name(), encoded, width));
+        }
+        long value = 0L;
+        for (int i = 0; i < width; i++) {
+            value = accumulate(value, encoded.charAt(i));
+        }
+        return value;
+    }
+
+    /**
+     * 批量解码首尾相接的编码
+     *
+     * @param src    源数组
+     * @param srcOff 读取的起始位置
+     * @param dst    目标数组
+     * @param off    写入的起始位置
+     * @param len    ID数量
+     */
+    public void decode(byte[] src, int srcOff, long[] dst, int off, int len) {
+        Objects.checkFromIndexSize(srcOff, Math.multiplyExact(len, width), src.length);
+        Objects.checkFromIndexSize(off, len, dst.length);
+        for (int i = 0; i < len; i++) {
+            dst[off + i] = decode(src, srcOff + i * width);
+        }
+    }
+
+    /**
+     * 批量解码首尾相接的编码
+     *
+     * @param src    源数组
+     * @param srcOff 读取的起始位置
+     * @param dst    目标数组
+     * @param off    写入的起始位置
+     * @param len    ID数量
+     */
+    public void decode(char[] src, int srcOff, long[] dst, int off, int len) {
+        Objects.checkFromIndexSize(srcOff, Math.multiplyExact(len, width), src.length);
+        Objects.checkFromIndexSize(off, len, dst.length);
+        for (int i = 0; i < len; i++) {
+            dst[off + i] = decode(src, srcOff + i * width);
+        }
+    }
+
+    /**
+     * 累加一位数字，校验字符与无符号64位溢出
+     */
+    private long accumulate(long value, int c) {
+        int digit = c >= 0 && c < digits.length ? digits[c] : -1;
+        if (digit < 0) {
+            throw new FlakeGeneratorException(String.format("字符[%s]不是合法的%s字符", (char) (c < 0 ? c & 0xFF : c), name()));
+        }
+        if (Long.compareUnsigned(value, maxQuotient) > 0) {
+            throw new FlakeGeneratorException(String.format("%s编码超出64位整数范围", name()));
+        }
+        long shifted = value * radix;
+        long next = shifted + digit;
+        if (Long.compareUnsigned(next, shifted) < 0) {
+            throw new FlakeGeneratorException(String.format("%s编码超出64位整数范围", name()));
+        }
+        return next;
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.johnqxu.crystalflake;
+
+/**
+ * 全局ID生成器
+ *
+ * @author 徐青
+ */
+public interface IdGenerator {
+
+    /**
+     * 生成全局ID
+     *
+     * @return 全局ID
+     */
+    long nextId();
+}
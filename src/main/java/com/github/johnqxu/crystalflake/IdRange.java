@@ -0,0 +1,38 @@
+package com.github.johnqxu.crystalflake;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * {@link RangeStore}分配的号段，左闭右开区间[start, end)
+ *
+ * @author 徐青
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class IdRange {
+
+    private final long start;
+    private final long end;
+
+    private IdRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public static IdRange of(long start, long end) {
+        if (start >= end) {
+            throw new FlakeGeneratorException(String.format("号段[%d,%d)不能为空", start, end));
+        }
+        return new IdRange(start, end);
+    }
+
+    /**
+     * @return 号段中的ID数量
+     */
+    public long size() {
+        return end - start;
+    }
+}
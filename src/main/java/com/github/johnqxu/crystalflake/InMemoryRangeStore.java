@@ -0,0 +1,35 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的号段存储，只保证同一进程内号段互不重叠，适用于测试与单实例部署
+ *
+ * @author 徐青
+ */
+public class InMemoryRangeStore implements RangeStore {
+
+    /**
+     * 业务标识下一个未分配的ID
+     */
+    private final ConcurrentMap<String, AtomicLong> maxIds = new ConcurrentHashMap<>();
+    private final long initialId;
+
+    /**
+     * @param initialId 每个业务标识的第一个ID
+     */
+    public InMemoryRangeStore(long initialId) {
+        this.initialId = initialId;
+    }
+
+    @Override
+    public IdRange next(String key, long step) {
+        if (step <= 0) {
+            throw new FlakeGeneratorException(String.format("号段长度[%d]必须大于0", step));
+        }
+        long end = maxIds.computeIfAbsent(key, k -> new AtomicLong(initialId)).addAndGet(step);
+        return IdRange.of(end - step, end);
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.johnqxu.crystalflake;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * 基于数据库的号段存储
+ * <p>
+ * 每个业务标识在号段表中占一行，max_id为下一个未分配的ID。分配号段时在同一事务中先将max_id增加号段长度，
+ * 再读回增加后的值，行锁保证多个进程同时分配时号段互不重叠。业务标识需要预先插入，例如：
+ * <pre>
+ * CREATE TABLE crystal_flake_range (
+ *     biz_tag VARCHAR(128) NOT NULL PRIMARY KEY,
+ *     max_id  BIGINT       NOT NULL
+ * );
+ * INSERT INTO crystal_flake_range (biz_tag, max_id) VALUES ('order', 1);
+ * </pre>
+ *
+ * @author 徐青
+ */
+public class JdbcRangeStore implements RangeStore {
+
+    /**
+     * 默认号段表名
+     */
+    public final static String DEFAULT_TABLE = "crystal_flake_range";
+
+    private final static Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    private final DataSource dataSource;
+    private final String updateSql;
+    private final String selectSql;
+
+    public JdbcRangeStore(DataSource dataSource) {
+        this(dataSource, DEFAULT_TABLE);
+    }
+
+    /**
+     * @param dataSource 数据源
+     * @param table      号段表名，可以带schema前缀
+     */
+    public JdbcRangeStore(DataSource dataSource, String table) {
+        if (table == null || !TABLE_NAME.matcher(table).matches()) {
+            throw new FlakeGeneratorException(String.format("号段表名[%s]不合法", table));
+        }
+        this.dataSource = Objects.requireNonNull(dataSource, "dataSource");
+        this.updateSql = "UPDATE " + table + " SET max_id = max_id + ? WHERE biz_tag = ?";
+        this.selectSql = "SELECT max_id FROM " + table + " WHERE biz_tag = ?";
+    }
+
+    @Override
+    public IdRange next(String key, long step) {
+        if (step <= 0) {
+            throw new FlakeGeneratorException(String.format("号段长度[%d]必须大于0", step));
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                long maxId = allocate(connection, key, step);
+                connection.commit();
+                return IdRange.of(maxId - step, maxId);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new FlakeGeneratorException(String.format("分配号段[%s]失败：%s", key, e.getMessage()));
+        }
+    }
+
+    /**
+     * @return 增加号段长度后的max_id
+     */
+    private long allocate(Connection connection, String key, long step) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(updateSql)) {
+            update.setLong(1, step);
+            update.setString(2, key);
+            if (update.executeUpdate() == 0) {
+                throw new FlakeGeneratorException(String.format("号段表中不存在业务标识[%s]", key));
+            }
+        }
+        try (PreparedStatement select = connection.prepareStatement(selectSql)) {
+            select.setString(1, key);
+            try (ResultSet resultSet = select.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new FlakeGeneratorException(String.format("号段表中不存在业务标识[%s]", key));
+                }
+                return resultSet.getLong(1);
+            }
+        }
+    }
+}
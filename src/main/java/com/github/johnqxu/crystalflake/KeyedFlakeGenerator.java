@@ -0,0 +1,417 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 按业务标识区分的生成器注册表，为成千上万个业务标识各维护一条单调递增的ID序列
+ * <p>
+ * 业务标识为long，例如由租户ID与业务类型编码拼接而成。注册表不为每个业务标识创建{@link FlakeGenerator}，
+ * 而是将业务标识散列到若干分段，每个分段持有一把{@link ReentrantLock}与一张开放寻址的原始类型散列表：
+ * 业务标识与状态字各存放在一个long[]中，状态字打包了最近一次生成ID的周期与序号，每个业务标识只占用16字节，
+ * 不产生包装对象。长时间未使用的业务标识在分段扩容前或调用{@link #evictIdle()}时被淘汰，
+ * 淘汰后散列表按存活数量重建，内存随活跃业务标识数量伸缩，而不是随出现过的业务标识数量增长。
+ * <p>
+ * 同一业务标识生成的ID唯一且严格递增；不同业务标识之间的ID相互独立，可能相同。
+ * 当前周期序号耗尽时，业务标识直接借用下一周期，最多领先墙上时钟maxLeadSegments个周期，达到上限后在锁外等待；
+ * 时钟回拨时业务标识从上一次使用的周期继续生成，ID中的时钟回拨标识始终为0；回拨期间序号耗尽且超出领先上限时，
+ * 需要等待墙上时钟回到领先上限内。
+ * 业务标识被淘汰后再次使用时，从所在分段已淘汰业务标识的最大周期之后开始，保证ID不会与淘汰前重复
+ *
+ * @author 徐青
+ */
+public class KeyedFlakeGenerator {
+
+    /**
+     * 分段散列表的最小容量
+     */
+    private final static int MIN_CAPACITY = 16;
+
+    private final long workerId;
+    private final long dataCenterId;
+    private final BitLayout bitLayout;
+    private final long maxTimeSegment;
+    private final long maxSeq;
+    private final int seqBits;
+    private final int timeSegmentShiftBits;
+    private final int timeSegmentShift;
+    private final int seqShift;
+
+    /**
+     * ID中机器节点与数据中心部分
+     */
+    private final long nodeBits;
+
+    private final long maxLeadSegments;
+
+    /**
+     * 业务标识最近一次使用的周期早于当前周期超过该周期数时视为空闲
+     */
+    private final long idleSegments;
+
+    private final WaitStrategy waitStrategy;
+    private final LongSupplier clock;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    private KeyedFlakeGenerator(Builder builder) {
+        BitLayout layout = Objects.requireNonNull(builder.bitLayout, "bitLayout");
+        checkRange("workerId", builder.workerId, 0, layout.getMaxWorkerId());
+        checkRange("dataCenterId", builder.dataCenterId, 0, layout.getMaxDataCenterId());
+        checkRange("maxLeadSegments", builder.maxLeadSegments, 0, layout.getMaxTimeSegment());
+        checkRange("concurrencyLevel", builder.concurrencyLevel, 1, 1 << 16);
+        if (builder.idleTimeoutMillis <= 0) {
+            throw new FlakeGeneratorException(String.format("空闲淘汰时长[%d]必须大于0", builder.idleTimeoutMillis));
+        }
+        this.workerId = builder.workerId;
+        this.dataCenterId = builder.dataCenterId;
+        this.bitLayout = layout;
+        this.maxTimeSegment = layout.getMaxTimeSegment();
+        this.maxSeq = layout.getMaxSeq();
+        this.seqBits = layout.getSeqBits();
+        this.timeSegmentShiftBits = layout.getTimeSegmentShiftBits();
+        this.timeSegmentShift = layout.getTimeSegmentShift();
+        this.seqShift = layout.getSeqShift();
+        this.nodeBits = builder.workerId << layout.getWorkerShift() | builder.dataCenterId;
+        this.maxLeadSegments = builder.maxLeadSegments;
+        this.idleSegments = Math.max(1L, builder.idleTimeoutMillis >> timeSegmentShiftBits);
+        this.waitStrategy = Objects.requireNonNull(builder.waitStrategy, "waitStrategy");
+        this.clock = Objects.requireNonNull(builder.timeSource, "timeSource")::currentTimeMillis;
+        int stripeCount = tableSizeFor((int) builder.concurrencyLevel);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 为业务标识生成ID，首次使用的业务标识自动注册
+     *
+     * @param key 业务标识
+     * @return 该业务标识下严格递增的ID
+     */
+    public long nextId(long key) {
+        long hash = mix(key);
+        Stripe stripe = stripes[(int) (hash >>> 48) & stripeMask];
+        while (true) {
+            long wallTimeSegment = currentTimeSegment(clock.getAsLong());
+            boolean exhausted = false;
+            long lastTimeSegment;
+            stripe.lock.lock();
+            try {
+                int slot = stripe.slotOf(key, (int) hash, wallTimeSegment);
+                long state = stripe.states[slot];
+                lastTimeSegment = (state >>> seqBits) - 1L;
+                long seq = state & maxSeq;
+                if (wallTimeSegment > lastTimeSegment) {
+                    // 开始下一生产周期，序号复位
+                    lastTimeSegment = wallTimeSegment;
+                    seq = 0L;
+                } else if (seq < maxSeq) {
+                    seq++;
+                } else if (lastTimeSegment + 1 - wallTimeSegment <= maxLeadSegments && lastTimeSegment < maxTimeSegment) {
+                    // 向未来借用下一周期，无需等待
+                    lastTimeSegment++;
+                    seq = 0L;
+                } else {
+                    exhausted = true;
+                }
+                if (!exhausted) {
+                    stripe.states[slot] = (lastTimeSegment + 1L) << seqBits | seq;
+                    return lastTimeSegment << timeSegmentShift | seq << seqShift | nodeBits;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+            // 序号耗尽且达到领先上限，释放锁后等待，不阻塞同一分段的其他业务标识
+            long targetMillis = ((lastTimeSegment - maxLeadSegments + 1) << timeSegmentShiftBits) + FlakeGenerator.EPOCH;
+            if (waitStrategy.await(targetMillis, Long.MAX_VALUE, clock) < targetMillis) {
+                throw new FlakeGeneratorException("等待下一序号生成周期超时");
+            }
+        }
+    }
+
+    /**
+     * 淘汰所有分段中的空闲业务标识，并按存活数量重建散列表，适合在定时任务中调用
+     *
+     * @return 淘汰的业务标识数量
+     */
+    public int evictIdle() {
+        long wallTimeSegment = currentTimeSegment(clock.getAsLong());
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                evicted += stripe.rebuild(wallTimeSegment, 0);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return 当前注册的业务标识数量
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return 所有分段散列表的槽位总数
+     */
+    int capacity() {
+        int capacity = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                capacity += stripe.keys.length;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return capacity;
+    }
+
+    /**
+     * @return 机器节点ID
+     */
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * @return 数据中心ID
+     */
+    public long getDataCenterId() {
+        return dataCenterId;
+    }
+
+    /**
+     * @return ID的bit位分配
+     */
+    public BitLayout getBitLayout() {
+        return bitLayout;
+    }
+
+    private long currentTimeSegment(long now) {
+        long currentTimeSegment = (now - FlakeGenerator.EPOCH) >> timeSegmentShiftBits;
+        if (currentTimeSegment < 0) {
+            throw new FlakeGeneratorException("当前系统时间不能早于" + new Date(FlakeGenerator.EPOCH));
+        }
+        if (currentTimeSegment > maxTimeSegment) {
+            throw new FlakeGeneratorException("序号生成周期超出最大值");
+        }
+        return currentTimeSegment;
+    }
+
+    /**
+     * 打散业务标识，高16位选择分段，低位选择槽位
+     */
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ h >>> 32;
+    }
+
+    private static int tableSizeFor(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    private static void checkRange(String name, long value, long min, long max) {
+        if (value < min || value > max) {
+            throw new FlakeGeneratorException(String.format("当前的%s[%d]超出范围[%d,%d]", name, value, min, max));
+        }
+    }
+
+    /**
+     * 分段，线性探测的开放寻址散列表，状态字为0的槽位为空
+     */
+    private final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long[] keys = new long[MIN_CAPACITY];
+        private long[] states = new long[MIN_CAPACITY];
+        private int size;
+
+        /**
+         * 已淘汰业务标识的最大周期，重新注册的业务标识从该周期之后开始
+         */
+        private long evictedHighWater = -1L;
+
+        /**
+         * 查找业务标识所在的槽位，不存在时注册
+         */
+        private int slotOf(long key, int hash, long wallTimeSegment) {
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (states[slot] != 0L) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                rebuild(wallTimeSegment, 1);
+                return slotOf(key, hash, wallTimeSegment);
+            }
+            keys[slot] = key;
+            // 视为已用完淘汰高水位所在周期的序号，下一个ID不早于其后一个周期
+            states[slot] = (evictedHighWater + 1L) << seqBits | maxSeq;
+            size++;
+            return slot;
+        }
+
+        /**
+         * 淘汰空闲业务标识，并按存活数量加上预留数量重建散列表，重建后负载不超过1/3
+         *
+         * @param reserve 重建后即将注册的业务标识数量
+         * @return 淘汰的业务标识数量
+         */
+        private int rebuild(long wallTimeSegment, int reserve) {
+            long[] oldKeys = keys;
+            long[] oldStates = states;
+            int live = 0;
+            for (int i = 0; i < oldStates.length; i++) {
+                if (oldStates[i] != 0L) {
+                    long lastTimeSegment = (oldStates[i] >>> seqBits) - 1L;
+                    if (wallTimeSegment - lastTimeSegment > idleSegments) {
+                        evictedHighWater = Math.max(evictedHighWater, lastTimeSegment);
+                        oldStates[i] = 0L;
+                    } else {
+                        live++;
+                    }
+                }
+            }
+            int evicted = size - live;
+            int capacity = Math.max(MIN_CAPACITY, tableSizeFor((live + reserve) * 3));
+            if (evicted == 0 && capacity == oldKeys.length) {
+                return 0;
+            }
+            keys = new long[capacity];
+            states = new long[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldStates.length; i++) {
+                if (oldStates[i] != 0L) {
+                    int slot = (int) mix(oldKeys[i]) & mask;
+                    while (states[slot] != 0L) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    states[slot] = oldStates[i];
+                }
+            }
+            size = live;
+            return evicted;
+        }
+    }
+
+    /**
+     * {@link KeyedFlakeGenerator}构建器
+     */
+    public static class Builder {
+        private long workerId = -1L;
+        private long dataCenterId = -1L;
+        private long maxLeadSegments = 8L;
+        private long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+        private long concurrencyLevel = Runtime.getRuntime().availableProcessors() * 4L;
+        private WaitStrategy waitStrategy = WaitStrategy.virtualThreadAware();
+        private TimeSource timeSource = TimeSource.system();
+        private BitLayout bitLayout = BitLayout.DEFAULT;
+
+        private Builder() {
+        }
+
+        /**
+         * @param workerId 机器节点ID
+         * @return 构建器
+         */
+        public Builder workerId(long workerId) {
+            this.workerId = workerId;
+            return this;
+        }
+
+        /**
+         * @param dataCenterId 数据中心ID
+         * @return 构建器
+         */
+        public Builder dataCenterId(long dataCenterId) {
+            this.dataCenterId = dataCenterId;
+            return this;
+        }
+
+        /**
+         * @param maxLeadSegments 序号耗尽时业务标识的周期领先墙上时钟的最大周期数，默认8
+         * @return 构建器
+         */
+        public Builder maxLeadSegments(long maxLeadSegments) {
+            this.maxLeadSegments = maxLeadSegments;
+            return this;
+        }
+
+        /**
+         * @param idleTimeout 业务标识超过该时长未使用时可以被淘汰，精度为一个生产周期，默认10分钟
+         * @param unit        时长单位
+         * @return 构建器
+         */
+        public Builder idleTimeout(long idleTimeout, TimeUnit unit) {
+            this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+            return this;
+        }
+
+        /**
+         * @param concurrencyLevel 预计并发使用的线程数，分段数为不小于该值的2的幂，默认CPU核数的4倍
+         * @return 构建器
+         */
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        /**
+         * @param waitStrategy 序号耗尽且达到领先上限时等待下一周期的策略，默认平台线程忙等待、虚拟线程挂起等待
+         * @return 构建器
+         */
+        public Builder waitStrategy(WaitStrategy waitStrategy) {
+            this.waitStrategy = waitStrategy;
+            return this;
+        }
+
+        /**
+         * @param timeSource 使用的时钟，默认系统时钟
+         * @return 构建器
+         */
+        public Builder timeSource(TimeSource timeSource) {
+            this.timeSource = timeSource;
+            return this;
+        }
+
+        /**
+         * @param bitLayout ID的bit位分配，默认{@link BitLayout#DEFAULT}
+         * @return 构建器
+         */
+        public Builder bitLayout(BitLayout bitLayout) {
+            this.bitLayout = bitLayout;
+            return this;
+        }
+
+        public KeyedFlakeGenerator build() {
+            return new KeyedFlakeGenerator(this);
+        }
+    }
+}
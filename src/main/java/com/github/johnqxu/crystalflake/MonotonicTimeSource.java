@@ -0,0 +1,27 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单调时钟
+ * <p>
+ * 创建时记录系统时间与{@link System#nanoTime()}作为锚点，之后的时间完全由nanoTime的流逝推算，
+ * NTP对系统时间的回拨或跳变不会影响该时钟。长时间运行时与系统时间之间可能存在漂移
+ *
+ * @author 徐青
+ */
+final class MonotonicTimeSource implements TimeSource {
+
+    private final long anchorMillis;
+    private final long anchorNanos;
+
+    MonotonicTimeSource() {
+        this.anchorMillis = System.currentTimeMillis();
+        this.anchorNanos = System.nanoTime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return anchorMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - anchorNanos);
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * 挂起到周期边界的等待策略，挂起提前返回时重新计算剩余时长
+ *
+ * @author 徐青
+ */
+final class ParkingWaitStrategy implements WaitStrategy {
+
+    static final ParkingWaitStrategy INSTANCE = new ParkingWaitStrategy();
+
+    private ParkingWaitStrategy() {
+    }
+
+    @Override
+    public long await(long targetMillis, long deadlineMillis, LongSupplier clock) {
+        long timestamp = clock.getAsLong();
+        while (timestamp < targetMillis && timestamp < deadlineMillis) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Math.min(targetMillis, deadlineMillis) - timestamp));
+            timestamp = clock.getAsLong();
+        }
+        return timestamp;
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.johnqxu.crystalflake;
+
+/**
+ * 号段存储
+ * <p>
+ * 为{@link SegmentIdGenerator}分配互不重叠的号段，同一业务标识先后分配的号段递增。
+ * 实现必须保证多个进程同时分配同一业务标识时得到的号段也互不重叠
+ *
+ * @author 徐青
+ */
+public interface RangeStore {
+
+    /**
+     * 分配下一个号段
+     *
+     * @param key  业务标识
+     * @param step 号段长度
+     * @return 号段
+     */
+    IdRange next(String key, long step);
+
+    /**
+     * @return 进程内的号段存储，号段从1开始
+     */
+    static RangeStore inMemory() {
+        return new InMemoryRangeStore(1L);
+    }
+}
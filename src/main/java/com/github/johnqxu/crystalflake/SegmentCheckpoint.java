@@ -0,0 +1,202 @@
+package com.github.johnqxu.crystalflake;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 基于内存映射文件的生产周期检查点，用于重启后的时钟回拨保护
+ * <p>
+ * 文件中只保存一个租约时间戳：生成器保证已发出的ID所在周期都在租约之内。租约每次向前延长leaseMillis，
+ * 生成的ID越过租约的一半时才续约，续约只是对映射内存的一次写入，不会产生系统调用，由操作系统负责回写磁盘。
+ * 进程重启后，生成器按{@link StartupPolicy}拒绝生成ID或者等待墙上时钟越过持久化的租约。
+ * <p>
+ * 正常关闭时将租约收回到生成器实际发出的ID所在周期的结束时间，重启后无需等待；只有进程崩溃时文件中才保留领先的租约。
+ * 每个生成器应使用独立的检查点文件
+ *
+ * @author 徐青
+ */
+@Slf4j
+public final class SegmentCheckpoint implements AutoCloseable {
+
+    /**
+     * 文件头魔数，"CFLKCKP1"
+     */
+    private final static long MAGIC = 0x43464C4B434B5031L;
+
+    private final static int MAGIC_OFFSET = 0;
+
+    private final static int LEASE_OFFSET = 8;
+
+    private final static int FILE_SIZE = 16;
+
+    /**
+     * 启动时墙上时钟早于持久化租约的处理策略
+     */
+    public enum StartupPolicy {
+        /**
+         * 等待墙上时钟越过租约
+         */
+        WAIT,
+        /**
+         * 拒绝创建生成器，抛出{@link FlakeGeneratorException}
+         */
+        REFUSE
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long leaseMillis;
+
+    /**
+     * 打开时读取的租约，即上一次运行中已发出ID的时间上界
+     */
+    private final long persistedLeaseMillis;
+
+    /**
+     * 当前租约，已发出的ID所在周期的结束时间不超过该值
+     */
+    private volatile long leaseUntilMillis;
+
+    /**
+     * 生成的ID越过该时间戳时续约
+     */
+    volatile long renewAfterMillis;
+
+    /**
+     * 续约在生成ID的路径上执行，使用显式锁而不是synchronized，避免虚拟线程固定载体线程
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 使用该检查点的生成器已发出ID所在周期的结束时间，关闭时写入文件
+     */
+    private LongSupplier issuedUntil;
+
+    private SegmentCheckpoint(Path file, long leaseMillis) throws IOException {
+        this.file = file;
+        this.leaseMillis = leaseMillis;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        boolean created = size == 0;
+        if (!created && size != FILE_SIZE) {
+            channel.close();
+            throw new FlakeGeneratorException(String.format("检查点文件[%s]的长度[%d]不正确", file, size));
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        if (created) {
+            buffer.putLong(MAGIC_OFFSET, MAGIC);
+            buffer.putLong(LEASE_OFFSET, 0L);
+        } else if (buffer.getLong(MAGIC_OFFSET) != MAGIC) {
+            channel.close();
+            throw new FlakeGeneratorException(String.format("检查点文件[%s]格式不正确", file));
+        }
+        this.persistedLeaseMillis = buffer.getLong(LEASE_OFFSET);
+        this.leaseUntilMillis = persistedLeaseMillis;
+        this.renewAfterMillis = Long.MIN_VALUE;
+    }
+
+    /**
+     * 打开检查点文件，文件不存在时创建
+     *
+     * @param file  检查点文件
+     * @param lease 每次续约的时长，应为数秒，过短会频繁续约，过长会延长重启后的等待
+     * @param unit  时长单位
+     * @return 检查点
+     */
+    public static SegmentCheckpoint open(Path file, long lease, TimeUnit unit) {
+        long leaseMillis = unit.toMillis(lease);
+        if (leaseMillis <= 0) {
+            throw new FlakeGeneratorException(String.format("租约时长[%d]必须大于0毫秒", leaseMillis));
+        }
+        try {
+            return new SegmentCheckpoint(file, leaseMillis);
+        } catch (IOException e) {
+            throw new FlakeGeneratorException(String.format("打开检查点文件[%s]失败：%s", file, e.getMessage()));
+        }
+    }
+
+    /**
+     * @return 打开文件时读取的租约，新建文件为0
+     */
+    public long getPersistedLeaseMillis() {
+        return persistedLeaseMillis;
+    }
+
+    /**
+     * @return 当前租约
+     */
+    public long getLeaseUntilMillis() {
+        return leaseUntilMillis;
+    }
+
+    /**
+     * 续约，使租约覆盖即将发出的ID
+     *
+     * @param issuedUntilMillis 即将发出的ID所在周期的结束时间
+     */
+    void renew(long issuedUntilMillis) {
+        lock.lock();
+        try {
+            if (issuedUntilMillis <= renewAfterMillis) {
+                return;
+            }
+            long lease = Math.max(issuedUntilMillis + leaseMillis, leaseUntilMillis);
+            buffer.putLong(LEASE_OFFSET, lease);
+            leaseUntilMillis = lease;
+            renewAfterMillis = lease - leaseMillis / 2;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 绑定生成器，每个检查点只能被一个生成器使用
+     *
+     * @param issuedUntil 生成器已发出ID所在周期的结束时间
+     */
+    void attach(LongSupplier issuedUntil) {
+        lock.lock();
+        try {
+            if (this.issuedUntil != null) {
+                throw new FlakeGeneratorException(String.format("检查点文件[%s]已被其他生成器使用", file));
+            }
+            this.issuedUntil = issuedUntil;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将生成器实际发出ID的时间上界写入租约，回写磁盘并关闭文件
+     * <p>
+     * 关闭后不再续约，应在停止生成ID之后关闭
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (issuedUntil != null) {
+                // 本次运行没有发出ID时保留上一次运行的上界，启动时墙上时钟已越过该值
+                long lease = Math.max(issuedUntil.getAsLong(), persistedLeaseMillis);
+                buffer.putLong(LEASE_OFFSET, lease);
+                leaseUntilMillis = lease;
+                renewAfterMillis = Long.MAX_VALUE;
+            }
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("关闭检查点文件[{}]失败", file, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
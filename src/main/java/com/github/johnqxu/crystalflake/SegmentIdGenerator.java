@@ -0,0 +1,230 @@
+package com.github.johnqxu.crystalflake;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 号段模式生成器
+ * <p>
+ * 从{@link RangeStore}租用一段连续的ID，在内存中逐个发放，生成的ID稠密、数值小，适用于需要短ID的业务表。
+ * 当前号段的使用量达到预取比例时，在后台线程中分配下一个号段，当前号段用完时直接切换，
+ * 只要号段存储的延迟短于一个号段的消耗时间，调用方就不会等待号段存储。
+ * <p>
+ * 发放ID只对当前号段的游标做一次原子自增；只有切换号段的线程需要加锁。
+ * ID全局唯一且趋势递增，进程重启后未发放完的号段不再使用，ID会出现空洞
+ *
+ * @author 徐青
+ */
+@Slf4j
+public class SegmentIdGenerator implements IdGenerator, AutoCloseable {
+
+    /**
+     * 默认预取比例，当前号段用掉10%时开始预取下一个号段
+     */
+    public final static double DEFAULT_PREFETCH_RATIO = 0.1;
+
+    private final RangeStore rangeStore;
+    private final String key;
+    private final long step;
+    private final double prefetchRatio;
+    private final Executor executor;
+
+    /**
+     * 本生成器创建的预取线程池，关闭时一并关闭；使用调用方的线程池时为null
+     */
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * 当前号段，初始为空号段，第一次生成ID时同步分配
+     */
+    private volatile Segment current = new Segment(0L, 0L, 0.0);
+
+    /**
+     * 预取中或已预取的下一个号段，同一时刻至多一个
+     */
+    private final AtomicReference<CompletableFuture<Segment>> next = new AtomicReference<>();
+
+    /**
+     * 切换号段的锁
+     */
+    private final ReentrantLock switchLock = new ReentrantLock();
+
+    /**
+     * 使用单个守护线程预取号段
+     *
+     * @param rangeStore 号段存储
+     * @param key        业务标识
+     * @param step       号段长度
+     */
+    public SegmentIdGenerator(RangeStore rangeStore, String key, long step) {
+        this(rangeStore, key, step, DEFAULT_PREFETCH_RATIO, null);
+    }
+
+    /**
+     * @param rangeStore    号段存储
+     * @param key           业务标识
+     * @param step          号段长度
+     * @param prefetchRatio 预取比例，取值[0,1)，当前号段用掉该比例时开始预取下一个号段
+     * @param executor      执行预取的线程池，为null时使用单个守护线程，由本生成器负责关闭
+     */
+    public SegmentIdGenerator(RangeStore rangeStore, String key, long step, double prefetchRatio, Executor executor) {
+        if (step <= 0) {
+            throw new FlakeGeneratorException(String.format("号段长度[%d]必须大于0", step));
+        }
+        if (!(prefetchRatio >= 0.0 && prefetchRatio < 1.0)) {
+            throw new FlakeGeneratorException(String.format("预取比例[%s]超出范围[0,1)", prefetchRatio));
+        }
+        this.rangeStore = Objects.requireNonNull(rangeStore, "rangeStore");
+        this.key = Objects.requireNonNull(key, "key");
+        this.step = step;
+        this.prefetchRatio = prefetchRatio;
+        if (executor == null) {
+            this.ownedExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "crystal-flake-segment-" + key);
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = ownedExecutor;
+        } else {
+            this.ownedExecutor = null;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * 生成ID
+     *
+     * @return ID
+     */
+    @Override
+    public long nextId() {
+        while (true) {
+            Segment segment = current;
+            long id = segment.cursor.getAndIncrement();
+            if (id < segment.end) {
+                // 恰好只有一个线程取到预取位置
+                if (id == segment.prefetchAt) {
+                    prefetch();
+                }
+                return id;
+            }
+            switchSegment(segment);
+        }
+    }
+
+    /**
+     * @return 业务标识
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return 当前号段中剩余的ID数量
+     */
+    public long remaining() {
+        Segment segment = current;
+        return Math.max(0L, segment.end - segment.cursor.get());
+    }
+
+    /**
+     * 关闭自行创建的预取线程池，已分配的号段依然可以使用
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 在后台分配下一个号段，已有预取中或已预取的号段时不重复分配
+     */
+    private void prefetch() {
+        if (next.get() != null) {
+            return;
+        }
+        CompletableFuture<Segment> future = new CompletableFuture<>();
+        if (!next.compareAndSet(null, future)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(load());
+                } catch (RuntimeException e) {
+                    log.error("预取号段[{}]失败", key, e);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭，切换号段时同步分配
+            next.compareAndSet(future, null);
+        }
+    }
+
+    /**
+     * 当前号段用完时切换到预取的号段，没有预取的号段时同步分配
+     *
+     * @param exhausted 已用完的号段
+     */
+    private void switchSegment(Segment exhausted) {
+        switchLock.lock();
+        try {
+            if (current != exhausted) {
+                return;
+            }
+            CompletableFuture<Segment> future = next.getAndSet(null);
+            current = future == null ? load() : await(future);
+        } finally {
+            switchLock.unlock();
+        }
+    }
+
+    private Segment await(CompletableFuture<Segment> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FlakeGeneratorException(String.format("等待号段[%s]时被中断", key));
+        } catch (ExecutionException e) {
+            // 预取失败时同步重试一次，仍然失败则抛给调用方
+            return load();
+        }
+    }
+
+    private Segment load() {
+        IdRange range = rangeStore.next(key, step);
+        return new Segment(range.getStart(), range.getEnd(), prefetchRatio);
+    }
+
+    /**
+     * 正在发放的号段，游标越过end后的值不会发放
+     */
+    private static final class Segment {
+
+        private final long end;
+        private final AtomicLong cursor;
+
+        /**
+         * 游标取到该值的线程触发预取
+         */
+        private final long prefetchAt;
+
+        Segment(long start, long end, double prefetchRatio) {
+            this.end = end;
+            this.cursor = new AtomicLong(start);
+            this.prefetchAt = start + (long) ((end - start) * prefetchRatio);
+        }
+    }
+}
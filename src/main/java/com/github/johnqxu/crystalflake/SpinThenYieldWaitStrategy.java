@@ -0,0 +1,36 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 先忙等待，再让出CPU的等待策略
+ *
+ * @author 徐青
+ */
+final class SpinThenYieldWaitStrategy implements WaitStrategy {
+
+    private final int spins;
+
+    SpinThenYieldWaitStrategy(int spins) {
+        if (spins < 0) {
+            throw new FlakeGeneratorException(String.format("忙等待次数[%d]不能小于0", spins));
+        }
+        this.spins = spins;
+    }
+
+    @Override
+    public long await(long targetMillis, long deadlineMillis, LongSupplier clock) {
+        long timestamp = clock.getAsLong();
+        int counter = spins;
+        while (timestamp < targetMillis && timestamp < deadlineMillis) {
+            if (counter > 0) {
+                counter--;
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+            timestamp = clock.getAsLong();
+        }
+        return timestamp;
+    }
+}
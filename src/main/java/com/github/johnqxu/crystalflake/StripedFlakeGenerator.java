@@ -0,0 +1,92 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+/**
+ * 多机器节点分段生成器
+ * <p>
+ * 一个{@link FlakeGenerator}只拥有一个workerId，每个周期最多生成MAX_SEQ + 1个ID。
+ * 本生成器为一段连续的workerId各持有一个相互独立的{@link FlakeGenerator}，线程首次使用时按轮询方式绑定到其中一段，
+ * 所绑定的段在当前周期序号耗尽时依次尝试其他段并改绑到成功的段，所有段都耗尽时才在所绑定的段上等待下一周期，
+ * 吞吐量随段数与CPU核数线性增长。
+ * <p>
+ * 不同段生成的ID只在workerId部分不同，ID全局唯一且按生产周期有序，但同一线程先后取得的ID不保证严格递增
+ *
+ * @author 徐青
+ */
+public class StripedFlakeGenerator implements IdGenerator {
+
+    private final FlakeGenerator[] stripes;
+
+    /**
+     * 下一个新线程绑定的段
+     */
+    private final AtomicInteger nextStripe = new AtomicInteger();
+
+    /**
+     * 线程绑定的段下标
+     */
+    private final ThreadLocal<int[]> affinity;
+
+    /**
+     * @param workerIdFrom 起始workerId，包含
+     * @param workerIdTo   结束workerId，包含
+     * @param dataCenterId 数据中心ID
+     */
+    public StripedFlakeGenerator(long workerIdFrom, long workerIdTo, long dataCenterId) {
+        this(workerIdFrom, workerIdTo, workerId -> new FlakeGenerator(workerId, dataCenterId));
+    }
+
+    /**
+     * @param workerIdFrom 起始workerId，包含
+     * @param workerIdTo   结束workerId，包含
+     * @param factory      按workerId创建生成器，可以在其中指定时钟、等待策略与bit位分配
+     */
+    public StripedFlakeGenerator(long workerIdFrom, long workerIdTo, LongFunction<FlakeGenerator> factory) {
+        if (workerIdFrom < 0 || workerIdFrom > workerIdTo || workerIdTo - workerIdFrom >= Integer.MAX_VALUE) {
+            throw new FlakeGeneratorException(String.format("workerId范围[%d,%d]非法", workerIdFrom, workerIdTo));
+        }
+        this.stripes = new FlakeGenerator[(int) (workerIdTo - workerIdFrom + 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            FlakeGenerator stripe = factory.apply(workerIdFrom + i);
+            if (stripe.getWorkerId() != workerIdFrom + i) {
+                throw new FlakeGeneratorException(String.format("生成器的workerId[%d]与分配的workerId[%d]不一致", stripe.getWorkerId(), workerIdFrom + i));
+            }
+            if (i > 0 && (stripe.getDataCenterId() != stripes[0].getDataCenterId() || !stripe.getBitLayout().equals(stripes[0].getBitLayout()))) {
+                throw new FlakeGeneratorException("各段生成器的dataCenterId与bit位分配必须一致");
+            }
+            stripes[i] = stripe;
+        }
+        this.affinity = ThreadLocal.withInitial(() -> new int[]{Math.floorMod(nextStripe.getAndIncrement(), stripes.length)});
+    }
+
+    /**
+     * 生成全局ID
+     *
+     * @return 全局ID
+     */
+    @Override
+    public long nextId() {
+        int[] home = affinity.get();
+        int index = home[0];
+        for (int i = 0; i < stripes.length; i++) {
+            long id = stripes[index].tryNextId(0, TimeUnit.MILLISECONDS);
+            if (id >= 0) {
+                home[0] = index;
+                return id;
+            }
+            index = index + 1 == stripes.length ? 0 : index + 1;
+        }
+        // 所有段在当前周期内的序号均已耗尽
+        return stripes[home[0]].nextId();
+    }
+
+    /**
+     * @return 段数，即持有的workerId数量
+     */
+    public int stripeCount() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.johnqxu.crystalflake;
+
+/**
+ * 系统时钟
+ *
+ * @author 徐青
+ */
+final class SystemTimeSource implements TimeSource {
+
+    static final SystemTimeSource INSTANCE = new SystemTimeSource();
+
+    private SystemTimeSource() {
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
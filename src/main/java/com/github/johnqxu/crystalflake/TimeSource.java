@@ -0,0 +1,45 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成器使用的时钟
+ *
+ * @author 徐青
+ */
+public interface TimeSource {
+
+    /**
+     * @return 当前时间戳，单位毫秒，与{@link System#currentTimeMillis()}同一纪元
+     */
+    long currentTimeMillis();
+
+    /**
+     * 直接读取{@link System#currentTimeMillis()}的系统时钟
+     *
+     * @return 时钟
+     */
+    static TimeSource system() {
+        return SystemTimeSource.INSTANCE;
+    }
+
+    /**
+     * 以创建时的系统时间为锚点、按{@link System#nanoTime()}流逝的单调时钟，不受NTP回拨影响
+     *
+     * @return 时钟
+     */
+    static TimeSource monotonic() {
+        return new MonotonicTimeSource();
+    }
+
+    /**
+     * 由后台守护线程按指定精度刷新的缓存时钟，读取时只访问一个volatile字段
+     *
+     * @param tick 刷新间隔，应小于一个序号生成周期
+     * @param unit 间隔单位
+     * @return 时钟
+     */
+    static CachedTimeSource cached(long tick, TimeUnit unit) {
+        return new CachedTimeSource(system(), tick, unit);
+    }
+}
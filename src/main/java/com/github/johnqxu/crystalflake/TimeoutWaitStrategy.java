@@ -0,0 +1,29 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 限时等待策略
+ *
+ * @author 徐青
+ */
+final class TimeoutWaitStrategy implements WaitStrategy {
+
+    private final WaitStrategy delegate;
+    private final long timeoutMillis;
+
+    TimeoutWaitStrategy(WaitStrategy delegate, long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new FlakeGeneratorException(String.format("等待时长[%d]不能小于0", timeoutMillis));
+        }
+        this.delegate = delegate;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public long await(long targetMillis, long deadlineMillis, LongSupplier clock) {
+        long now = clock.getAsLong();
+        long deadline = timeoutMillis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeoutMillis;
+        return delegate.await(targetMillis, Math.min(deadline, deadlineMillis), clock);
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 按调用线程选择的等待策略：虚拟线程挂起，让出载体线程；平台线程使用指定的策略
+ *
+ * @author 徐青
+ */
+final class VirtualThreadAwareWaitStrategy implements WaitStrategy {
+
+    private final WaitStrategy platformStrategy;
+
+    VirtualThreadAwareWaitStrategy(WaitStrategy platformStrategy) {
+        if (platformStrategy == null) {
+            throw new FlakeGeneratorException("平台线程的等待策略不能为空");
+        }
+        this.platformStrategy = platformStrategy;
+    }
+
+    @Override
+    public long await(long targetMillis, long deadlineMillis, LongSupplier clock) {
+        if (VirtualThreads.isVirtual()) {
+            return ParkingWaitStrategy.INSTANCE.await(targetMillis, deadlineMillis, clock);
+        }
+        return platformStrategy.await(targetMillis, deadlineMillis, clock);
+    }
+}
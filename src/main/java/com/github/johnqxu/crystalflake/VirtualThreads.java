@@ -0,0 +1,43 @@
+package com.github.johnqxu.crystalflake;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * 虚拟线程识别
+ * <p>
+ * Java 11基线版本通过方法句柄查找{@code Thread#isVirtual()}，运行在没有虚拟线程的JDK上时始终返回false。
+ * 多版本JAR中META-INF/versions/21下的同名类直接调用{@code Thread#isVirtual()}
+ *
+ * @author 徐青
+ */
+final class VirtualThreads {
+
+    private final static MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return 当前线程是否为虚拟线程
+     */
+    static boolean isVirtual() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
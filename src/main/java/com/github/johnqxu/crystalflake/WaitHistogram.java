@@ -0,0 +1,119 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 等待时长直方图，单位纳秒
+ * <p>
+ * 参考HdrHistogram的对数-线性分桶：每个2的幂区间等分为32个桶，相对误差不超过1/32，约3%。
+ * 桶数固定，记录过程只有一次数组下标的原子自增，不产生内存分配。超过{@link #HIGHEST_TRACKABLE_NANOS}的值记入最后一个桶
+ *
+ * @author 徐青
+ */
+public final class WaitHistogram {
+
+    /**
+     * 每个2的幂区间的桶数位数
+     */
+    private final static int SUB_BUCKET_BITS = 5;
+
+    private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * 可精确分桶的最大时长，约68.7秒
+     */
+    public final static long HIGHEST_TRACKABLE_NANOS = (1L << 36) - 1;
+
+    private final static int BUCKET_COUNT = bucketIndex(HIGHEST_TRACKABLE_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    WaitHistogram() {
+    }
+
+    /**
+     * 记录一次等待
+     *
+     * @param nanos 等待时长，单位纳秒，负数按0记录
+     */
+    void record(long nanos) {
+        long value = Math.max(nanos, 0L);
+        counts.incrementAndGet(bucketIndex(Math.min(value, HIGHEST_TRACKABLE_NANOS)));
+        totalCount.increment();
+        totalNanos.add(value);
+        if (value > maxNanos.get()) {
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * @return 记录的等待次数
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * @return 等待总时长，单位纳秒
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return 最长的一次等待，单位纳秒
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * 计算分位数。读取过程中仍有记录写入时，结果是近似值
+     *
+     * @param percentile 分位数，取值范围[0,100]
+     * @return 不低于该分位数的最小桶上界，单位纳秒，没有记录时返回0
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new FlakeGeneratorException(String.format("分位数[%s]超出范围[0,100]", percentile));
+        }
+        long total = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+        long target = Math.max(1L, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT + (shift << SUB_BUCKET_BITS) + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) >>> SUB_BUCKET_BITS;
+        long subBucket = SUB_BUCKET_COUNT + ((index - SUB_BUCKET_COUNT) & (SUB_BUCKET_COUNT - 1));
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
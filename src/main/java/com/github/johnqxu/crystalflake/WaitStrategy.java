@@ -0,0 +1,81 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 当前周期序号耗尽时，等待下一序号生成周期的策略
+ *
+ * @author 徐青
+ */
+public interface WaitStrategy {
+
+    /**
+     * 等待时钟到达目标时间戳
+     *
+     * @param targetMillis   目标时间戳
+     * @param deadlineMillis 放弃等待的时间戳，不限时等待时为{@link Long#MAX_VALUE}
+     * @param clock          时钟
+     * @return 最后一次读取的时间戳，小于targetMillis表示到达deadlineMillis后放弃了等待
+     */
+    long await(long targetMillis, long deadlineMillis, LongSupplier clock);
+
+    /**
+     * 忙等待，延迟最低，等待期间持续占用CPU
+     *
+     * @return 等待策略
+     */
+    static WaitStrategy busySpin() {
+        return BusySpinWaitStrategy.INSTANCE;
+    }
+
+    /**
+     * 先忙等待指定次数，之后每次读取时钟前让出CPU
+     *
+     * @param spins 忙等待次数
+     * @return 等待策略
+     */
+    static WaitStrategy spinThenYield(int spins) {
+        return new SpinThenYieldWaitStrategy(spins);
+    }
+
+    /**
+     * 通过{@link java.util.concurrent.locks.LockSupport#parkNanos(long)}挂起到周期边界，等待期间不占用CPU
+     *
+     * @return 等待策略
+     */
+    static WaitStrategy parking() {
+        return ParkingWaitStrategy.INSTANCE;
+    }
+
+    /**
+     * 虚拟线程挂起等待，挂起期间释放载体线程；平台线程忙等待
+     *
+     * @return 等待策略
+     */
+    static WaitStrategy virtualThreadAware() {
+        return virtualThreadAware(busySpin());
+    }
+
+    /**
+     * 虚拟线程挂起等待，挂起期间释放载体线程；平台线程使用指定的策略
+     *
+     * @param platformStrategy 平台线程的等待策略
+     * @return 等待策略
+     */
+    static WaitStrategy virtualThreadAware(WaitStrategy platformStrategy) {
+        return new VirtualThreadAwareWaitStrategy(platformStrategy);
+    }
+
+    /**
+     * 单次等待超过指定时长后放弃，生成器抛出{@link FlakeGeneratorException}
+     *
+     * @param delegate 实际执行等待的策略
+     * @param timeout  最长等待时长
+     * @param unit     时长单位
+     * @return 等待策略
+     */
+    static WaitStrategy timeout(WaitStrategy delegate, long timeout, TimeUnit unit) {
+        return new TimeoutWaitStrategy(delegate, unit.toMillis(timeout));
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.johnqxu.crystalflake;
+
+/**
+ * 机器节点ID分配器
+ * <p>
+ * 在创建生成器之前为当前进程分配workerId与dataCenterId，生成器停止使用后调用{@link #release()}归还。
+ * {@link com.github.johnqxu.crystalflake.annotation.EnableGlobalId#workerIdAssigner()}可以选择分配器的实现
+ *
+ * @author 徐青
+ */
+public interface WorkerIdAssigner {
+
+    /**
+     * 分配机器节点ID
+     *
+     * @param bitLayout ID的bit位分配，决定workerId的取值范围
+     * @return 分配结果
+     */
+    WorkerIdAssignment assign(BitLayout bitLayout);
+
+    /**
+     * 归还已分配的机器节点ID，重复调用没有副作用
+     */
+    default void release() {
+    }
+
+    /**
+     * 归还已分配的机器节点ID，并告知已发出的ID的时间上界，重复调用没有副作用
+     * <p>
+     * 同一workerId可能被立即重新分配的实现应保证新的持有者等待墙上时钟越过该时间戳，默认实现忽略该参数
+     *
+     * @param issuedUntilMillis 已发出的ID所在周期的结束时间
+     */
+    default void release(long issuedUntilMillis) {
+        release();
+    }
+
+    /**
+     * @return 从环境变量读取的分配器
+     */
+    static WorkerIdAssigner env() {
+        return new EnvWorkerIdAssigner();
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.johnqxu.crystalflake;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 机器节点ID的分配结果，workerId为闭区间[workerIdFrom, workerIdTo]，单个ID时两端相等
+ *
+ * @author 徐青
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class WorkerIdAssignment {
+
+    private final long workerIdFrom;
+    private final long workerIdTo;
+    private final long dataCenterId;
+
+    private WorkerIdAssignment(long workerIdFrom, long workerIdTo, long dataCenterId) {
+        this.workerIdFrom = workerIdFrom;
+        this.workerIdTo = workerIdTo;
+        this.dataCenterId = dataCenterId;
+    }
+
+    public static WorkerIdAssignment of(long workerId, long dataCenterId) {
+        return new WorkerIdAssignment(workerId, workerId, dataCenterId);
+    }
+
+    public static WorkerIdAssignment of(long workerIdFrom, long workerIdTo, long dataCenterId) {
+        return new WorkerIdAssignment(workerIdFrom, workerIdTo, dataCenterId);
+    }
+
+    /**
+     * @return 是否分配了workerId区间
+     */
+    public boolean isRange() {
+        return workerIdFrom != workerIdTo;
+    }
+}
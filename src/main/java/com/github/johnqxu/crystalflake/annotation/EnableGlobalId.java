@@ -1,5 +1,8 @@
 package com.github.johnqxu.crystalflake.annotation;
 
+import com.github.johnqxu.crystalflake.EnvWorkerIdAssigner;
+import com.github.johnqxu.crystalflake.FlakeGenerator;
+import com.github.johnqxu.crystalflake.WorkerIdAssigner;
 import org.springframework.context.annotation.Import;
 
 import java.lang.annotation.*;
@@ -14,8 +17,50 @@ import java.lang.annotation.*;
 @Documented
 @Import(GlobalIdConfig.class)
 public @interface EnableGlobalId {
-    String ENV_WORKER_KEY = "WORKER_ID";
-    String ENV_DATA_CENTER_KEY = "DATA_CENTER_ID";
+    String ENV_WORKER_KEY = EnvWorkerIdAssigner.ENV_WORKER_KEY;
+    String ENV_DATA_CENTER_KEY = EnvWorkerIdAssigner.ENV_DATA_CENTER_KEY;
+
+    /**
+     * workerId区间的分隔符，例如WORKER_ID=8-15
+     */
+    char WORKER_RANGE_SEPARATOR = EnvWorkerIdAssigner.WORKER_RANGE_SEPARATOR;
 
     long workerId() default -1;
+
+    /**
+     * 容器中存在该类型的bean时使用该bean，否则通过无参构造器创建
+     *
+     * @return 机器节点ID分配器，默认从环境变量读取
+     */
+    Class<? extends WorkerIdAssigner> workerIdAssigner() default EnvWorkerIdAssigner.class;
+
+    /**
+     * @return 生产周期位数
+     */
+    int timeSegmentBits() default (int) FlakeGenerator.TIME_SEGMENT_BITS;
+
+    /**
+     * @return 序号位数
+     */
+    int seqBits() default (int) FlakeGenerator.SEQ_BITS;
+
+    /**
+     * @return 时钟回拨标识位数
+     */
+    int clockBackBits() default (int) FlakeGenerator.CLOCK_BACK_BITS;
+
+    /**
+     * @return 机器节点位数
+     */
+    int workerIdBits() default (int) FlakeGenerator.WORKER_ID_BITS;
+
+    /**
+     * @return 数据中心位数
+     */
+    int dataCenterBits() default (int) FlakeGenerator.DATA_CENTER_BITS;
+
+    /**
+     * @return 时间戳精度位数，一个生产周期为2^timeSegmentShiftBits毫秒
+     */
+    int timeSegmentShiftBits() default FlakeGenerator.TIME_SEGMENT_SHIFT_BITS;
 }
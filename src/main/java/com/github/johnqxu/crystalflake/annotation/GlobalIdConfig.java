@@ -1,40 +1,133 @@
 package com.github.johnqxu.crystalflake.annotation;
 
+import com.github.johnqxu.crystalflake.BitLayout;
+import com.github.johnqxu.crystalflake.EnvWorkerIdAssigner;
 import com.github.johnqxu.crystalflake.FlakeGenerator;
+import com.github.johnqxu.crystalflake.FlakeGenerators;
+import com.github.johnqxu.crystalflake.FlakeMetrics;
+import com.github.johnqxu.crystalflake.FlakeMetricsBinder;
+import com.github.johnqxu.crystalflake.IdGenerator;
+import com.github.johnqxu.crystalflake.StripedFlakeGenerator;
+import com.github.johnqxu.crystalflake.WorkerIdAssigner;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.config.SingletonBeanRegistry;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportAware;
+import org.springframework.core.annotation.AnnotationAttributes;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.util.ClassUtils;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author 徐青
  */
 @Slf4j
-public class GlobalIdConfig implements ApplicationContextAware {
-    private long workerId = -1L;
-    private long dataCenterId = -1L;
+@Configuration(proxyBeanMethods = false)
+public class GlobalIdConfig implements ApplicationContextAware, ImportAware, InitializingBean, DisposableBean {
+    private final static String MICROMETER_BINDER_CLASS = "io.micrometer.core.instrument.binder.MeterBinder";
+
+    private BitLayout bitLayout = BitLayout.DEFAULT;
+    private Class<? extends WorkerIdAssigner> workerIdAssignerClass = EnvWorkerIdAssigner.class;
+    private FlakeGenerators generators;
+    private ConfigurableApplicationContext applicationContext;
+    private final List<FlakeGenerator> flakeGenerators = new ArrayList<>();
+    private final List<ObjectName> registeredMBeans = new ArrayList<>();
 
     /**
-     * 从环境变量读取worker与dataCenter的配置
+     * 从{@link EnableGlobalId}读取bit位分配与机器节点ID分配器，直接注册本配置类时使用默认的bit位分配与环境变量分配器
      */
-    private void loadConfigFromEnv() {
-        try {
-            workerId = Long.parseLong(System.getenv(EnableGlobalId.ENV_WORKER_KEY));
-            dataCenterId = Long.parseLong(System.getenv(EnableGlobalId.ENV_DATA_CENTER_KEY));
-        } catch (NumberFormatException nfe) {
-            workerId = -1L;
-            dataCenterId = -1L;
+    @Override
+    public void setImportMetadata(AnnotationMetadata importMetadata) {
+        AnnotationAttributes attributes = AnnotationAttributes.fromMap(importMetadata.getAnnotationAttributes(EnableGlobalId.class.getName()));
+        if (attributes != null) {
+            bitLayout = BitLayout.of(attributes.getNumber("timeSegmentBits").intValue(),
+                    attributes.getNumber("seqBits").intValue(),
+                    attributes.getNumber("clockBackBits").intValue(),
+                    attributes.getNumber("workerIdBits").intValue(),
+                    attributes.getNumber("dataCenterBits").intValue(),
+                    attributes.getNumber("timeSegmentShiftBits").intValue());
+            workerIdAssignerClass = attributes.getClass("workerIdAssigner");
         }
     }
 
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
-        ConfigurableApplicationContext cac = (ConfigurableApplicationContext) applicationContext;
-        loadConfigFromEnv();
-        FlakeGenerator flakeGenerator = new FlakeGenerator(workerId, dataCenterId);
-        SingletonBeanRegistry beanRegistry = cac.getBeanFactory();
-        beanRegistry.registerSingleton("flakeGenerator",flakeGenerator);
+        this.applicationContext = (ConfigurableApplicationContext) applicationContext;
+    }
+
+    /**
+     * {@link ImportAware}回调晚于{@link ApplicationContextAware}，在所有回调完成后再通过{@link FlakeGenerators}创建并注册生成器。
+     * 配置了workerId区间时注册{@link StripedFlakeGenerator}，此时应按{@link IdGenerator}类型注入。
+     * 容器关闭时归还分配的机器节点ID。每个生成器的运行指标注册到JMX，classpath中存在Micrometer时另外注册{@link FlakeMetricsBinder}
+     */
+    @Override
+    public void afterPropertiesSet() {
+        generators = FlakeGenerators.start(resolveWorkerIdAssigner(workerIdAssignerClass), bitLayout);
+        flakeGenerators.addAll(generators.getFlakeGenerators());
+        SingletonBeanRegistry beanRegistry = applicationContext.getBeanFactory();
+        beanRegistry.registerSingleton("flakeGenerator", generators.getIdGenerator());
+        registerMBeans();
+        if (ClassUtils.isPresent(MICROMETER_BINDER_CLASS, applicationContext.getClassLoader())) {
+            beanRegistry.registerSingleton("flakeMetricsBinder", MicrometerSupport.newBinder(flakeGenerators));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredMBeans) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                log.warn("注销JMX对象[{}]失败", name, e);
+            }
+        }
+        registeredMBeans.clear();
+        if (generators != null) {
+            generators.close();
+        }
+    }
+
+    private void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (FlakeGenerator flakeGenerator : flakeGenerators) {
+            FlakeMetrics metrics = flakeGenerator.getMetrics();
+            try {
+                server.registerMBean(metrics, metrics.getObjectName());
+                registeredMBeans.add(metrics.getObjectName());
+            } catch (JMException e) {
+                log.warn("注册JMX对象[{}]失败", metrics.getObjectName(), e);
+            }
+        }
+    }
+
+    /**
+     * 容器中存在该类型的bean时使用该bean，否则创建：默认的环境变量分配器直接创建，不经过反射
+     */
+    private <T extends WorkerIdAssigner> T resolveWorkerIdAssigner(Class<T> type) {
+        return applicationContext.getBeanProvider(type).getIfAvailable(() -> type == EnvWorkerIdAssigner.class
+                ? type.cast(WorkerIdAssigner.env()) : BeanUtils.instantiateClass(type));
+    }
+
+    /**
+     * 隔离对Micrometer的引用，classpath中没有Micrometer时不会加载本类
+     */
+    private static final class MicrometerSupport {
+        private static Object newBinder(List<FlakeGenerator> flakeGenerators) {
+            return new FlakeMetricsBinder(flakeGenerators);
+        }
     }
 }
@@ -0,0 +1,19 @@
+package com.github.johnqxu.crystalflake;
+
+/**
+ * 虚拟线程识别，Java 21版本直接调用{@link Thread#isVirtual()}
+ *
+ * @author 徐青
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return 当前线程是否为虚拟线程
+     */
+    static boolean isVirtual() {
+        return Thread.currentThread().isVirtual();
+    }
+}
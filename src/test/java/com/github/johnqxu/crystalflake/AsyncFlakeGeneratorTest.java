@@ -0,0 +1,174 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncFlakeGeneratorTest {
+
+    /**
+     * 1ms一个周期，每周期32个序号
+     */
+    private static final BitLayout LAYOUT = BitLayout.of(44, 5, 2, 8, 4, 0);
+
+    private static final int SEQ_PER_SEGMENT = 32;
+
+    private MockTimeSource timeSource;
+    private AsyncFlakeGenerator asyncGenerator;
+
+    @Before
+    public void beforeTest() {
+        timeSource = new MockTimeSource();
+        asyncGenerator = new AsyncFlakeGenerator(FlakeGenerator.builder().workerId(1).dataCenterId(1)
+                .bitLayout(LAYOUT).timeSource(timeSource).build());
+    }
+
+    @After
+    public void afterTest() {
+        asyncGenerator.close();
+    }
+
+    @Test
+    @DisplayName("当前周期有剩余序号时直接完成，耗尽后在下一周期完成且不阻塞调用线程")
+    public void shouldCompleteAtNextSegmentWhenExhausted() throws Exception {
+        long now = System.currentTimeMillis();
+        timeSource.set(now);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < SEQ_PER_SEGMENT; i++) {
+            CompletableFuture<Long> future = asyncGenerator.nextIdAsync();
+            Assert.assertTrue(future.isDone());
+            ids.add(future.get());
+        }
+        List<CompletableFuture<Long>> waiting = new ArrayList<>();
+        for (int i = 0; i < SEQ_PER_SEGMENT; i++) {
+            waiting.add(asyncGenerator.nextIdAsync());
+        }
+        Thread.sleep(20);
+        for (CompletableFuture<Long> future : waiting) {
+            Assert.assertFalse(future.isDone());
+        }
+
+        timeSource.set(now + 1);
+        long previous = -1L;
+        for (CompletableFuture<Long> future : waiting) {
+            long id = future.get(1, TimeUnit.SECONDS);
+            // 排队的请求按到达顺序完成
+            Assert.assertTrue(id > previous);
+            previous = id;
+            Assert.assertEquals(now + 1, FlakeIdDecoder.timestampMillis(LAYOUT, id));
+            ids.add(id);
+        }
+        Assert.assertEquals(SEQ_PER_SEGMENT * 2, ids.size());
+    }
+
+    @Test
+    @DisplayName("发布者只按下游请求量发出ID批次，凑不满一批时在下一周期补齐")
+    public void shouldEmitBatchesOnDemand() throws Exception {
+        long now = System.currentTimeMillis();
+        timeSource.set(now);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        asyncGenerator.publisher(SEQ_PER_SEGMENT + 8).subscribe(subscriber);
+        Flow.Subscription subscription = subscriber.subscription.poll(1, TimeUnit.SECONDS);
+        Assert.assertNotNull(subscription);
+
+        subscription.request(2);
+        Assert.assertNull(subscriber.batches.poll(50, TimeUnit.MILLISECONDS));
+        timeSource.answer(System::currentTimeMillis);
+
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            long[] batch = subscriber.batches.poll(1, TimeUnit.SECONDS);
+            Assert.assertNotNull(batch);
+            Assert.assertEquals(SEQ_PER_SEGMENT + 8, batch.length);
+            for (long id : batch) {
+                ids.add(id);
+            }
+        }
+        Assert.assertNull(subscriber.batches.poll(50, TimeUnit.MILLISECONDS));
+
+        subscription.request(3);
+        for (int i = 0; i < 3; i++) {
+            long[] batch = subscriber.batches.poll(1, TimeUnit.SECONDS);
+            Assert.assertNotNull(batch);
+            for (long id : batch) {
+                ids.add(id);
+            }
+        }
+        Assert.assertEquals(5 * (SEQ_PER_SEGMENT + 8), ids.size());
+        subscription.cancel();
+        subscription.request(1);
+        Assert.assertNull(subscriber.batches.poll(50, TimeUnit.MILLISECONDS));
+        Assert.assertNull(subscriber.error.poll());
+    }
+
+    @Test
+    @DisplayName("请求数量非法时，以异常结束订阅")
+    public void shouldSignalErrorWhenRequestIllegal() throws Exception {
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        asyncGenerator.publisher(1).subscribe(subscriber);
+        subscriber.subscription.take().request(0);
+        Assert.assertTrue(subscriber.error.poll(1, TimeUnit.SECONDS) instanceof IllegalArgumentException);
+
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> asyncGenerator.publisher(0));
+        Assert.assertTrue(exception.getMessage().contains("每批ID数量"));
+    }
+
+    @Test
+    @DisplayName("关闭后，等待中的请求与订阅以异常结束")
+    public void shouldFailPendingWhenClosed() throws Exception {
+        timeSource.set(System.currentTimeMillis());
+        for (int i = 0; i < SEQ_PER_SEGMENT; i++) {
+            asyncGenerator.nextIdAsync();
+        }
+        CompletableFuture<Long> waiting = asyncGenerator.nextIdAsync();
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        asyncGenerator.publisher(1).subscribe(subscriber);
+        subscriber.subscription.take().request(1);
+
+        asyncGenerator.close();
+        ExecutionException exception = Assert.assertThrows(ExecutionException.class, () -> waiting.get(1, TimeUnit.SECONDS));
+        Assert.assertTrue(exception.getCause().getMessage().contains("已关闭"));
+        Assert.assertTrue(subscriber.error.poll(1, TimeUnit.SECONDS) instanceof FlakeGeneratorException);
+        Assert.assertTrue(asyncGenerator.nextIdAsync().isCompletedExceptionally());
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<long[]> {
+
+        final BlockingQueue<Flow.Subscription> subscription = new LinkedBlockingQueue<>();
+        final BlockingQueue<long[]> batches = new LinkedBlockingQueue<>();
+        final BlockingQueue<Throwable> error = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription.add(subscription);
+        }
+
+        @Override
+        public void onNext(long[] item) {
+            batches.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            error.add(new IllegalStateException("ID流不应结束"));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.Arrays;
+
+public class BitLayoutTest {
+
+    @Test
+    @DisplayName("默认bit位分配与静态常量一致")
+    public void shouldMatchStaticConstantsByDefault() {
+        BitLayout layout = BitLayout.DEFAULT;
+        Assert.assertEquals(FlakeGenerator.MAX_TIME_SEGMENT, layout.getMaxTimeSegment());
+        Assert.assertEquals(FlakeGenerator.MAX_SEQ, layout.getMaxSeq());
+        Assert.assertEquals(FlakeGenerator.MAX_CLOCK_BACK_TIMES, layout.getMaxClockBackTimes());
+        Assert.assertEquals(FlakeGenerator.MAX_WORKER_ID, layout.getMaxWorkerId());
+        Assert.assertEquals(FlakeGenerator.MAX_DATA_CENTER_ID, layout.getMaxDataCenterId());
+        Assert.assertEquals(FlakeGenerator.WORKER_SHIFT, layout.getWorkerShift());
+        Assert.assertEquals(FlakeGenerator.CLOCK_BACK_SHIFT, layout.getClockBackShift());
+        Assert.assertEquals(FlakeGenerator.SEQ_SHIFT, layout.getSeqShift());
+        Assert.assertEquals(FlakeGenerator.TIME_SEGMENT_SHIFT, layout.getTimeSegmentShift());
+        Assert.assertEquals(32, layout.getSegmentMillis());
+        Assert.assertEquals(BitLayout.of(36, 8, 2, 13, 4), layout);
+    }
+
+    @Test
+    @DisplayName("bit位分配非法时，抛出异常")
+    public void shouldThrowExceptionWhenLayoutIllegal() {
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> BitLayout.of(36, 8, 2, 13, 5));
+        Assert.assertTrue(exception.getMessage().contains("各部分位数之和"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> BitLayout.of(37, 0, 2, 20, 4));
+        Assert.assertTrue(exception.getMessage().contains("当前的seqBits"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> BitLayout.of(36, 8, 2, 13, 4, 21));
+        Assert.assertTrue(exception.getMessage().contains("当前的timeSegmentShiftBits"));
+        // 机器节点与数据中心位数过少，无法打包进生成器状态字
+        exception = Assert.assertThrows(FlakeGeneratorException.class,
+                () -> FlakeGenerator.builder().workerId(0).dataCenterId(0).bitLayout(BitLayout.of(45, 12, 2, 4, 0)).build());
+        Assert.assertTrue(exception.getMessage().contains("无法打包进生成器状态字"));
+    }
+
+    @Test
+    @DisplayName("12位序号的bit位分配，每个周期能够生成4096个不重复的ID")
+    public void shouldGenerateIdsWithCustomLayout() {
+        BitLayout layout = BitLayout.of(36, 12, 2, 9, 4);
+        MockTimeSource timeSource = new MockTimeSource();
+        timeSource.set(FlakeGeneratorTest.mockSeqStartTimestamp);
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder()
+                .workerId(layout.getMaxWorkerId())
+                .dataCenterId(3)
+                .bitLayout(layout)
+                .timeSource(timeSource)
+                .build();
+        Assert.assertSame(layout, flakeGenerator.getBitLayout());
+
+        long[] ids = flakeGenerator.nextIds((int) layout.getMaxSeq() + 1);
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        Assert.assertArrayEquals(ids, sorted);
+        long segment = (FlakeGeneratorTest.mockSeqStartTimestamp - FlakeGenerator.EPOCH) >> layout.getTimeSegmentShiftBits();
+        for (int i = 0; i < ids.length; i++) {
+            Assert.assertEquals(segment, ids[i] >>> layout.getTimeSegmentShift());
+            Assert.assertEquals(i, (ids[i] >>> layout.getSeqShift()) & layout.getMaxSeq());
+            Assert.assertEquals(layout.getMaxWorkerId(), (ids[i] >>> layout.getWorkerShift()) & layout.getMaxWorkerId());
+            Assert.assertEquals(3, ids[i] & layout.getMaxDataCenterId());
+        }
+
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class,
+                () -> FlakeGenerator.builder().workerId(layout.getMaxWorkerId() + 1).dataCenterId(0).bitLayout(layout).build());
+        Assert.assertTrue(exception.getMessage().contains("当前的workerId"));
+    }
+
+    @Test
+    @DisplayName("3位时钟回拨标识的bit位分配，支持连续7次时钟回拨")
+    public void shouldSupportMoreClockBackTimesWithCustomLayout() {
+        BitLayout layout = BitLayout.of(36, 8, 3, 12, 4);
+        MockTimeSource timeSource = new MockTimeSource();
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).bitLayout(layout).timeSource(timeSource).build();
+        for (int i = 0; i <= layout.getMaxClockBackTimes(); i++) {
+            timeSource.set(FlakeGeneratorTest.mockSeqStartTimestamp - layout.getSegmentMillis() * i);
+            long id = flakeGenerator.nextId();
+            Assert.assertEquals(i, (id >>> layout.getClockBackShift()) & layout.getMaxClockBackTimes());
+        }
+        timeSource.set(FlakeGeneratorTest.mockSeqStartTimestamp - layout.getSegmentMillis() * (layout.getMaxClockBackTimes() + 1));
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, flakeGenerator::nextId);
+        Assert.assertTrue(exception.getMessage().contains("时钟回拨超出最大次数"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class CachedFlakeGeneratorTest {
+
+    /**
+     * 无法生成ID的生成器，用于构造缓冲区为空的场景
+     */
+    private static class FailingFlakeGenerator extends FlakeGenerator {
+
+        private static final long INLINE_ID = 42L;
+
+        FailingFlakeGenerator() {
+            super(1, 1);
+        }
+
+        @Override
+        public long nextId() {
+            return INLINE_ID;
+        }
+
+        @Override
+        public void fill(long[] dst, int off, int len) {
+            throw new FlakeGeneratorException("mock");
+        }
+    }
+
+    private static void awaitFull(CachedFlakeGenerator generator) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (generator.size() < generator.capacity() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    @DisplayName("后台线程将缓冲区补满，取出的ID序号连续")
+    public void shouldPreFillBuffer() throws Exception {
+        try (CachedFlakeGenerator generator = new CachedFlakeGenerator(new FlakeGenerator(1, 1), 200, 64, CachedFlakeGenerator.EmptyPolicy.THROW)) {
+            Assert.assertEquals(256, generator.capacity());
+            awaitFull(generator);
+            Assert.assertEquals(1.0, generator.fillRatio(), 0.0);
+
+            long previous = generator.nextId();
+            for (int i = 1; i < 100; i++) {
+                long id = generator.nextId();
+                Assert.assertTrue(id > previous);
+                previous = id;
+            }
+            Assert.assertTrue(generator.fillRatio() < 1.0);
+        }
+    }
+
+    @Test
+    @DisplayName("多线程从缓冲区取出的ID不重复")
+    public void shouldGenerateUniqueIdsAcrossThreads() throws Exception {
+        int threads = 16;
+        int idsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (CachedFlakeGenerator generator = new CachedFlakeGenerator(new FlakeGenerator(1, 1), 512, 256, CachedFlakeGenerator.EmptyPolicy.BLOCK)) {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    long[] ids = new long[idsPerThread];
+                    for (int j = 0; j < idsPerThread; j++) {
+                        ids[j] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+            long[] all = new long[threads * idsPerThread];
+            int pos = 0;
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get(60, TimeUnit.SECONDS);
+                System.arraycopy(ids, 0, all, pos, ids.length);
+                pos += ids.length;
+            }
+            Arrays.sort(all);
+            for (int i = 1; i < all.length; i++) {
+                Assert.assertNotEquals(all[i - 1], all[i]);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("缓冲区为空时，按照配置的策略处理")
+    public void shouldApplyEmptyPolicy() {
+        try (CachedFlakeGenerator generator = new CachedFlakeGenerator(new FailingFlakeGenerator(), 16, 8, CachedFlakeGenerator.EmptyPolicy.THROW)) {
+            Exception exception = Assert.assertThrows(FlakeGeneratorException.class, generator::nextId);
+            Assert.assertTrue(exception.getMessage().contains("ID缓冲区为空"));
+            Assert.assertEquals(0.0, generator.fillRatio(), 0.0);
+        }
+        try (CachedFlakeGenerator generator = new CachedFlakeGenerator(new FailingFlakeGenerator(), 16, 8, CachedFlakeGenerator.EmptyPolicy.INLINE)) {
+            Assert.assertEquals(FailingFlakeGenerator.INLINE_ID, generator.nextId());
+        }
+        CachedFlakeGenerator generator = new CachedFlakeGenerator(new FailingFlakeGenerator(), 16, 8, CachedFlakeGenerator.EmptyPolicy.BLOCK);
+        generator.close();
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, generator::nextId);
+        Assert.assertTrue(exception.getMessage().contains("ID缓冲区已关闭"));
+    }
+
+    @Test
+    @DisplayName("缓冲区参数非法时，抛出异常")
+    public void shouldThrowExceptionWhenArgumentsIllegal() {
+        FlakeGenerator flakeGenerator = new FlakeGenerator(1, 1);
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class,
+                () -> new CachedFlakeGenerator(flakeGenerator, 0, 1, CachedFlakeGenerator.EmptyPolicy.BLOCK));
+        Assert.assertTrue(exception.getMessage().contains("缓冲区容量"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class,
+                () -> new CachedFlakeGenerator(flakeGenerator, 16, 17, CachedFlakeGenerator.EmptyPolicy.BLOCK));
+        Assert.assertTrue(exception.getMessage().contains("补充阈值"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentFlakeGeneratorTest {
+
+    /**
+     * 并发线程数
+     */
+    private static final int THREADS = 32;
+
+    /**
+     * 每个线程生成的ID数量
+     */
+    private static final int IDS_PER_THREAD = 500;
+
+    private static long[] generate(FlakeGenerator flakeGenerator, CountDownLatch startLatch) throws InterruptedException {
+        long[] ids = new long[IDS_PER_THREAD];
+        startLatch.await();
+        for (int i = 0; i < IDS_PER_THREAD; i++) {
+            ids[i] = flakeGenerator.nextId();
+        }
+        return ids;
+    }
+
+    @Test
+    @DisplayName("多线程并发生成ID，不会产生重复，且每个线程内ID单调递增")
+    public void shouldGenerateUniqueIdsAcrossThreads() throws Exception {
+        FlakeGenerator flakeGenerator = new FlakeGenerator(1, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> generate(flakeGenerator, startLatch)));
+            }
+            startLatch.countDown();
+
+            long[] all = new long[THREADS * IDS_PER_THREAD];
+            int pos = 0;
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get(60, TimeUnit.SECONDS);
+                for (int i = 1; i < ids.length; i++) {
+                    Assert.assertTrue(ids[i] > ids[i - 1]);
+                }
+                System.arraycopy(ids, 0, all, pos, ids.length);
+                pos += ids.length;
+            }
+
+            Arrays.sort(all);
+            for (int i = 1; i < all.length; i++) {
+                Assert.assertNotEquals(all[i - 1], all[i]);
+            }
+            Assert.assertEquals(1, FlakeGeneratorTest.getWorkerId(all[0]));
+            Assert.assertEquals(1, FlakeGeneratorTest.getDataCenterId(all[all.length - 1]));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("多线程竞争时每个生产周期的序号都能被用满")
+    public void shouldUseUpEverySequenceOfFullSegments() throws Exception {
+        FlakeGenerator flakeGenerator = new FlakeGenerator(2, 3);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> generate(flakeGenerator, startLatch)));
+            }
+            startLatch.countDown();
+
+            long[] all = new long[THREADS * IDS_PER_THREAD];
+            int pos = 0;
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get(60, TimeUnit.SECONDS);
+                System.arraycopy(ids, 0, all, pos, ids.length);
+                pos += ids.length;
+            }
+            Arrays.sort(all);
+
+            // 同一周期内的序号必须从0开始连续分配，不存在空洞
+            long expectedSeq = 0;
+            for (int i = 0; i < all.length; i++) {
+                if (i > 0 && FlakeGeneratorTest.getSegment(all[i]) != FlakeGeneratorTest.getSegment(all[i - 1])) {
+                    expectedSeq = 0;
+                }
+                Assert.assertEquals(expectedSeq++, FlakeGeneratorTest.getSeq(all[i]));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+public class FileLockWorkerIdAssignerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    @DisplayName("多个分配器从同一个槽位文件租用互不相同的workerId，释放后可以重新租用")
+    public void shouldLeaseUniqueWorkerIds() {
+        Path slotFile = folder.getRoot().toPath().resolve("worker.slots");
+        FileLockWorkerIdAssigner first = new FileLockWorkerIdAssigner(slotFile, 3, 200, TimeUnit.MILLISECONDS);
+        FileLockWorkerIdAssigner second = new FileLockWorkerIdAssigner(slotFile, 3);
+        Assert.assertEquals(WorkerIdAssignment.of(0, 3), first.assign(BitLayout.DEFAULT));
+        Assert.assertEquals(WorkerIdAssignment.of(1, 3), second.assign(BitLayout.DEFAULT));
+        // 重复分配返回同一个workerId
+        Assert.assertEquals(WorkerIdAssignment.of(0, 3), first.assign(BitLayout.DEFAULT));
+
+        // 未告知已发出ID的上界，槽位中保留租约标记，重新租用时等待租约到期
+        long releasedAt = System.currentTimeMillis();
+        first.release();
+        first.release();
+        FileLockWorkerIdAssigner third = new FileLockWorkerIdAssigner(slotFile, 3);
+        Assert.assertEquals(0, third.assign(BitLayout.DEFAULT).getWorkerIdFrom());
+        Assert.assertTrue(System.currentTimeMillis() - releasedAt >= 100);
+        second.release();
+        third.release();
+        Assert.assertThrows(FlakeGeneratorException.class, () -> new FileLockWorkerIdAssigner(slotFile, 3, 0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("归还后在同一周期内重新租用workerId，等待上一个持有者已发出的周期结束，ID不重复")
+    public void shouldNotCollideAfterReassignWithinSegment() {
+        Path slotFile = folder.getRoot().toPath().resolve("worker.slots");
+        // 借用模式下逻辑周期领先墙上时钟，归还时已发出的ID所在周期尚未到来
+        UnaryOperator<FlakeGenerator.Builder> borrow = builder -> builder.maxLeadSegments(16);
+        int n = 16 * 256;
+        Set<Long> ids = new HashSet<>();
+        long lastId = 0;
+        long issuedUntilMillis;
+        try (FlakeGenerators first = FlakeGenerators.start(new FileLockWorkerIdAssigner(slotFile, 1), BitLayout.DEFAULT, borrow)) {
+            for (int i = 0; i < n; i++) {
+                lastId = first.nextId();
+                ids.add(lastId);
+            }
+            issuedUntilMillis = first.getFlakeGenerators().get(0).issuedUntilMillis();
+            Assert.assertTrue(issuedUntilMillis > System.currentTimeMillis());
+        }
+        try (FlakeGenerators second = FlakeGenerators.start(new FileLockWorkerIdAssigner(slotFile, 1), BitLayout.DEFAULT, borrow)) {
+            Assert.assertEquals(0, second.getAssignment().getWorkerIdFrom());
+            Assert.assertTrue(System.currentTimeMillis() >= issuedUntilMillis);
+            for (int i = 0; i < n; i++) {
+                long id = second.nextId();
+                Assert.assertTrue(id > lastId);
+                Assert.assertTrue(ids.add(id));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("workerId全部被占用时，抛出异常")
+    public void shouldThrowExceptionWhenSlotsExhausted() {
+        Path slotFile = folder.getRoot().toPath().resolve("worker.slots");
+        BitLayout layout = BitLayout.of(36, 8, 2, 1, 16);
+        FileLockWorkerIdAssigner first = new FileLockWorkerIdAssigner(slotFile, 0);
+        FileLockWorkerIdAssigner second = new FileLockWorkerIdAssigner(slotFile, 0);
+        first.assign(layout);
+        second.assign(layout);
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> new FileLockWorkerIdAssigner(slotFile, 0).assign(layout));
+        Assert.assertTrue(exception.getMessage().contains("已全部被占用"));
+        first.release();
+        second.release();
+
+        Assert.assertThrows(FlakeGeneratorException.class,
+                () -> new FileLockWorkerIdAssigner(folder.getRoot().toPath().resolve("missing/worker.slots"), 0).assign(layout));
+    }
+
+    @Test
+    @DisplayName("持有租约的进程崩溃后，workerId被回收")
+    public void shouldReclaimWorkerIdAfterCrash() throws Exception {
+        Path slotFile = folder.getRoot().toPath().resolve("worker.slots");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Holder.class.getName(), slotFile.toString())
+                .redirectError(new File(folder.getRoot(), "holder.err"))
+                .start();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            String line = reader.readLine();
+            while (line != null && !line.startsWith(Holder.PREFIX)) {
+                line = reader.readLine();
+            }
+            Assert.assertEquals(Holder.PREFIX + 0, line);
+            FileLockWorkerIdAssigner assigner = new FileLockWorkerIdAssigner(slotFile, 0);
+            Assert.assertEquals(1, assigner.assign(BitLayout.DEFAULT).getWorkerIdFrom());
+            assigner.release();
+        } finally {
+            process.destroyForcibly();
+            Assert.assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        }
+        FileLockWorkerIdAssigner assigner = new FileLockWorkerIdAssigner(slotFile, 0);
+        Assert.assertEquals(0, assigner.assign(BitLayout.DEFAULT).getWorkerIdFrom());
+        assigner.release();
+    }
+
+    @Test
+    @DisplayName("同一JVM内的分配器归还或分配失败后，其他分配器持有的workerId不会被其他进程租用")
+    public void shouldKeepSiblingLocksAfterRelease() throws Exception {
+        Path slotFile = folder.getRoot().toPath().resolve("worker.slots");
+        BitLayout layout = BitLayout.of(36, 8, 2, 1, 16);
+        FileLockWorkerIdAssigner x = new FileLockWorkerIdAssigner(slotFile, 0);
+        FileLockWorkerIdAssigner y = new FileLockWorkerIdAssigner(folder.getRoot().toPath().resolve("./worker.slots"), 0);
+        Assert.assertEquals(0, x.assign(layout).getWorkerIdFrom());
+        Assert.assertEquals(1, y.assign(layout).getWorkerIdFrom());
+        Assert.assertThrows(FlakeGeneratorException.class, () -> new FileLockWorkerIdAssigner(slotFile, 0).assign(layout));
+        Assert.assertEquals(Prober.EXHAUSTED, probe(slotFile));
+
+        x.release(FlakeGenerator.EPOCH);
+        FileLockWorkerIdAssigner w = new FileLockWorkerIdAssigner(slotFile, 0);
+        Assert.assertEquals(0, w.assign(layout).getWorkerIdFrom());
+        Assert.assertEquals(Prober.EXHAUSTED, probe(slotFile));
+
+        w.release(FlakeGenerator.EPOCH);
+        y.release(FlakeGenerator.EPOCH);
+        Assert.assertEquals(Prober.PREFIX + 0, probe(slotFile));
+    }
+
+    /**
+     * 在子进程中按2个workerId的bit位分配租用一次，返回子进程的输出
+     */
+    private String probe(Path slotFile) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Prober.class.getName(), slotFile.toString())
+                .redirectError(new File(folder.getRoot(), "prober.err"))
+                .start();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            String line = reader.readLine();
+            while (line != null && !line.startsWith(Prober.PREFIX) && !line.equals(Prober.EXHAUSTED)) {
+                line = reader.readLine();
+            }
+            return line;
+        } finally {
+            Assert.assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * 在子进程中租用workerId后立即归还并退出
+     */
+    public static class Prober {
+        static final String PREFIX = "workerId=";
+        static final String EXHAUSTED = "exhausted";
+
+        public static void main(String[] args) {
+            FileLockWorkerIdAssigner assigner = new FileLockWorkerIdAssigner(Paths.get(args[0]), 0);
+            try {
+                System.out.println(PREFIX + assigner.assign(BitLayout.of(36, 8, 2, 1, 16)).getWorkerIdFrom());
+                assigner.release(FlakeGenerator.EPOCH);
+            } catch (FlakeGeneratorException e) {
+                System.out.println(EXHAUSTED);
+            }
+            System.out.flush();
+        }
+    }
+
+    /**
+     * 在子进程中租用workerId并保持，直到被强制结束
+     */
+    public static class Holder {
+        static final String PREFIX = "workerId=";
+
+        public static void main(String[] args) throws Exception {
+            WorkerIdAssignment assignment = new FileLockWorkerIdAssigner(Paths.get(args[0]), 0).assign(BitLayout.DEFAULT);
+            System.out.println(PREFIX + assignment.getWorkerIdFrom());
+            System.out.flush();
+            Thread.sleep(TimeUnit.MINUTES.toMillis(5));
+        }
+    }
+}
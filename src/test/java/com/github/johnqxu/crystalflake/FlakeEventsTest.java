@@ -0,0 +1,96 @@
+package com.github.johnqxu.crystalflake;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+public class FlakeEventsTest {
+
+    private static final long T = FlakeGeneratorTest.mockSeqStartTimestamp;
+
+    private static final String PREFIX = "com.github.johnqxu.crystalflake.";
+
+    private final MockTimeSource timeSource = new MockTimeSource();
+
+    @Test
+    @DisplayName("开启后记录时钟回拨、回拨复位、回拨被拒绝与序号耗尽事件")
+    public void shouldEmitEventsWhenEnabled() throws Exception {
+        List<RecordedEvent> events = record(true);
+        Assert.assertEquals(4, events.size());
+
+        RecordedEvent clockBack = events.get(0);
+        Assert.assertEquals(PREFIX + "ClockBack", clockBack.getEventType().getName());
+        Assert.assertEquals(2, clockBack.getLong("depthSegments"));
+        Assert.assertEquals(Duration.ofMillis(56), clockBack.getDuration("stepMillis"));
+        Assert.assertEquals(1, clockBack.getLong("clockBackTimes"));
+        Assert.assertEquals(3, clockBack.getLong("workerId"));
+
+        RecordedEvent reset = events.get(1);
+        Assert.assertEquals(PREFIX + "ClockBackReset", reset.getEventType().getName());
+        Assert.assertEquals(1, reset.getLong("clockBackTimes"));
+
+        RecordedEvent exhausted = events.get(2);
+        Assert.assertEquals(PREFIX + "SequenceExhausted", exhausted.getEventType().getName());
+        Assert.assertFalse(exhausted.getBoolean("timedOut"));
+
+        RecordedEvent rejected = events.get(3);
+        Assert.assertEquals(PREFIX + "ClockBackRejected", rejected.getEventType().getName());
+        Assert.assertEquals("时钟回拨超出最大忍耐值", rejected.getString("reason"));
+    }
+
+    @Test
+    @DisplayName("默认关闭，不记录事件")
+    public void shouldNotEmitEventsByDefault() throws Exception {
+        Assert.assertTrue(record(false).isEmpty());
+    }
+
+    private List<RecordedEvent> record(boolean enabled) throws Exception {
+        Path file = Files.createTempFile("crystal-flake", ".jfr");
+        try (Recording recording = new Recording()) {
+            if (enabled) {
+                recording.enable(FlakeEvents.ClockBackEvent.class);
+                recording.enable(FlakeEvents.ClockBackRejectedEvent.class);
+                recording.enable(FlakeEvents.ClockBackResetEvent.class);
+                recording.enable(FlakeEvents.SequenceExhaustedEvent.class);
+            }
+            recording.start();
+            generate();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().startsWith(PREFIX))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private void generate() {
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(3).dataCenterId(1).timeSource(timeSource).build();
+        // 回拨2个周期
+        timeSource.set(T + 4);
+        flakeGenerator.nextId();
+        timeSource.set(T - 56);
+        flakeGenerator.nextId();
+        // 越过恢复阈值，回拨标识复位
+        timeSource.set(T + 32 * 9);
+        flakeGenerator.nextId();
+        // 序号耗尽后等待下一周期
+        AtomicLong reads = new AtomicLong();
+        timeSource.answer(() -> reads.incrementAndGet() <= FlakeGenerator.MAX_SEQ + 1 ? T + 32 * 9 : T + 32 * 10);
+        flakeGenerator.nextIds((int) FlakeGenerator.MAX_SEQ + 1);
+        // 超出最大忍耐值
+        timeSource.set(T);
+        Assert.assertThrows(FlakeGeneratorException.class, flakeGenerator::nextId);
+    }
+}
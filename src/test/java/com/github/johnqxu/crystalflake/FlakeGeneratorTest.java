@@ -6,20 +6,14 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.jupiter.api.DisplayName;
-import org.junit.runner.RunWith;
-import org.powermock.api.mockito.PowerMockito;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.LongStream;
 
-import static org.powermock.api.mockito.PowerMockito.when;
-
 @Slf4j
-@RunWith(PowerMockRunner.class)
-@PrepareForTest(FlakeGenerator.class)
 public class FlakeGeneratorTest {
 
     /**
@@ -52,9 +46,19 @@ public class FlakeGeneratorTest {
      */
     private static final long seqCycleMillis = ~(-1 << FlakeGenerator.TIME_SEGMENT_SHIFT_BITS) + 1;
 
+    /**
+     * 测试用时钟
+     */
+    private MockTimeSource timeSource;
+
     @Before
     public void beforeTest() {
         tsMockTimes = 0;
+        timeSource = new MockTimeSource();
+    }
+
+    private FlakeGenerator newGenerator(long workerId, long dataCenterId) {
+        return FlakeGenerator.builder().workerId(workerId).dataCenterId(dataCenterId).timeSource(timeSource).build();
     }
 
     @BeforeClass
@@ -105,37 +109,36 @@ public class FlakeGeneratorTest {
     @Test
     @DisplayName("mock时间戳边界值，应该得到正确的结果")
     public void shouldGetCorrectIdWithTimeSeriesBorderValue() {
-        PowerMockito.mockStatic(System.class);
         Set<Long> idSet = new HashSet<>();
         int i = 0;
-        FlakeGenerator flakeGenerator = new FlakeGenerator(1, 1);
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
         long id;
 
         // mock非法边下界
-        when(System.currentTimeMillis()).thenReturn(tsLowerBorder - 1);
+        timeSource.set(tsLowerBorder - 1);
         Exception exception = Assert.assertThrows(FlakeGeneratorException.class, flakeGenerator::nextId);
         Assert.assertTrue(exception.getMessage().contains("当前系统时间不能早于"));
 
         //mock合法边下界
-        when(System.currentTimeMillis()).thenReturn(tsLowerBorder);
+        timeSource.set(tsLowerBorder);
         id = flakeGenerator.nextId();
         idSet.add(id);
         Assert.assertEquals(++i, idSet.size());
 
         // mock任意有效时间
-        when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp);
+        timeSource.set(mockSeqStartTimestamp);
         id = flakeGenerator.nextId();
         idSet.add(id);
         Assert.assertEquals(++i, idSet.size());
 
         // mock合法边上界
-        when(System.currentTimeMillis()).thenReturn(tsUpperBorder);
+        timeSource.set(tsUpperBorder);
         id = flakeGenerator.nextId();
         idSet.add(id);
         Assert.assertEquals(++i, idSet.size());
 
         // mock非法边上界
-        when(System.currentTimeMillis()).thenReturn(tsUpperBorder + seqCycleMillis);
+        timeSource.set(tsUpperBorder + seqCycleMillis);
         exception = Assert.assertThrows(FlakeGeneratorException.class, flakeGenerator::nextId);
         Assert.assertTrue(exception.getMessage().contains("序号生成周期超出最大值"));
 
@@ -144,27 +147,26 @@ public class FlakeGeneratorTest {
     @Test
     @DisplayName("mock workerId边界值，应该得到正确的结果")
     public void shouldGetCorrectIdWhenMockWorkerId() {
-        PowerMockito.mockStatic(System.class);
-        when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp);
+        timeSource.set(mockSeqStartTimestamp);
         // workerId下界非法
         Exception exception = Assert.assertThrows(FlakeGeneratorException.class
-                , () -> new FlakeGenerator(-1, 1).nextId()
+                , () -> newGenerator(-1, 1).nextId()
         );
         Assert.assertTrue(exception.getMessage().contains("当前的workerId"));
 
         //workerId合法下界
-        FlakeGenerator flakeMaker = new FlakeGenerator(1, 1);
+        FlakeGenerator flakeMaker = newGenerator(1, 1);
         long id = flakeMaker.nextId();
         Assert.assertEquals(getWorkerId(id), 1);
 
         //workerId合法上界
-        flakeMaker = new FlakeGenerator(FlakeGenerator.MAX_WORKER_ID, 1);
+        flakeMaker = newGenerator(FlakeGenerator.MAX_WORKER_ID, 1);
         id = flakeMaker.nextId();
         Assert.assertEquals(FlakeGenerator.MAX_WORKER_ID, getWorkerId(id));
 
         //workerId非法上界
         exception = Assert.assertThrows(FlakeGeneratorException.class
-                , () -> new FlakeGenerator(FlakeGenerator.MAX_WORKER_ID + 1, 1).nextId()
+                , () -> newGenerator(FlakeGenerator.MAX_WORKER_ID + 1, 1).nextId()
         );
         Assert.assertTrue(exception.getMessage().contains("当前的workerId"));
     }
@@ -172,27 +174,26 @@ public class FlakeGeneratorTest {
     @Test
     @DisplayName("mock dataCenterId边界值，应该得到正确的结果")
     public void shouldGetCorrectIdWhenMockDataCenterId() {
-        PowerMockito.mockStatic(System.class);
-        when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp);
+        timeSource.set(mockSeqStartTimestamp);
         // dataCenterId下界非法
         Exception exception = Assert.assertThrows(FlakeGeneratorException.class
-                , () -> new FlakeGenerator(1, -1).nextId()
+                , () -> newGenerator(1, -1).nextId()
         );
         Assert.assertTrue(exception.getMessage().contains("当前的dataCenterId"));
 
         // dataCenterId合法下界
-        FlakeGenerator flakeMaker = new FlakeGenerator(1, 1);
+        FlakeGenerator flakeMaker = newGenerator(1, 1);
         long id = flakeMaker.nextId();
         Assert.assertEquals(1, getDataCenterId(id));
 
         // dataCenterId合法上界
-        flakeMaker = new FlakeGenerator(1, FlakeGenerator.MAX_DATA_CENTER_ID);
+        flakeMaker = newGenerator(1, FlakeGenerator.MAX_DATA_CENTER_ID);
         id = flakeMaker.nextId();
         Assert.assertEquals(FlakeGenerator.MAX_DATA_CENTER_ID, getDataCenterId(id));
 
         // dataCenterId非法上界
         exception = Assert.assertThrows(FlakeGeneratorException.class
-                , () -> new FlakeGenerator(1, FlakeGenerator.MAX_DATA_CENTER_ID + 1).nextId()
+                , () -> newGenerator(1, FlakeGenerator.MAX_DATA_CENTER_ID + 1).nextId()
         );
         Assert.assertTrue(exception.getMessage().contains("当前的dataCenterId"));
     }
@@ -201,9 +202,8 @@ public class FlakeGeneratorTest {
     @DisplayName("在一个序号生成周期内的一毫秒内，能够生成不重复的足够的id")
     public void shouldCreateCorrectIdInOneTimeCycleWithOneMillis() {
         Set<Long> idSet = new HashSet<>();
-        PowerMockito.mockStatic(System.class);
-        when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp);
-        FlakeGenerator flakeMaker = new FlakeGenerator(1, 1);
+        timeSource.set(mockSeqStartTimestamp);
+        FlakeGenerator flakeMaker = newGenerator(1, 1);
         for (int i = 0; i < maxSeqPerCycle; i++) {
             long id = flakeMaker.nextId();
             idSet.add(id);
@@ -216,12 +216,11 @@ public class FlakeGeneratorTest {
     public void shouldCreateCorrectIdInOneTimeCycleWithDifferentMillis() {
         Set<Long> idSet = new HashSet<>();
         Set<Long> segmentSet = new HashSet<>();
-        PowerMockito.mockStatic(System.class);
 
         long[] tsForOneCycle = LongStream.range(mockSeqStartTimestamp, mockSeqStartTimestamp + seqCycleMillis - 1).toArray();
 
-        FlakeGenerator flakeMaker = new FlakeGenerator(1, 1);
-        when(System.currentTimeMillis()).thenAnswer(x -> getMockCurrentMillis(tsForOneCycle));
+        FlakeGenerator flakeMaker = newGenerator(1, 1);
+        timeSource.answer(() -> getMockCurrentMillis(tsForOneCycle));
         for (int i = 0; i < maxSeqPerCycle; i++) {
             long id = flakeMaker.nextId();
             idSet.add(id);
@@ -237,9 +236,8 @@ public class FlakeGeneratorTest {
         Set<Long> idSet = new HashSet<>();
         Set<Long> segmentSet = new HashSet<>();
         long[] ts = LongStream.range(1, maxSeqPerCycle * 6).map(x -> (long) (mockSeqStartTimestamp + seqCycleMillis * Math.floor((double) x / maxSeqPerCycle / 2))).toArray();
-        PowerMockito.mockStatic(System.class);
-        FlakeGenerator flakeGenerator = new FlakeGenerator(1, 1);
-        when(System.currentTimeMillis()).thenAnswer(x -> getMockCurrentMillis(ts));
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
+        timeSource.answer(() -> getMockCurrentMillis(ts));
 
         for (int i = 0; i < maxSeqPerCycle * 2; i++) {
             long id = flakeGenerator.nextId();
@@ -254,10 +252,9 @@ public class FlakeGeneratorTest {
     @DisplayName("测试时钟回拨保护")
     public void shouldEnableCorrectClockBackTimes() {
         Set<Long> idSet = new HashSet<>();
-        PowerMockito.mockStatic(System.class);
-        FlakeGenerator flakeGenerator = new FlakeGenerator(1, 1);
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
         for (int i = 0; i < FlakeGenerator.MAX_CLOCK_BACK_TIMES + 1; i++) {
-            when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp - seqCycleMillis * i);
+            timeSource.set(mockSeqStartTimestamp - seqCycleMillis * i);
             long id = flakeGenerator.nextId();
             idSet.add(id);
             Assert.assertEquals(getClockBack(id), i);
@@ -268,12 +265,11 @@ public class FlakeGeneratorTest {
     @Test
     @DisplayName("超出最大连续回拨次数后，抛出异常")
     public void shouldTrowExceptionWhenClockBackTimesOverflow() {
-        PowerMockito.mockStatic(System.class);
-        FlakeGenerator flakeGenerator = new FlakeGenerator(1, 1);
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
         Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> {
             int i;
             for (i = 0; i < FlakeGenerator.MAX_CLOCK_BACK_TIMES + 2; i++) {
-                when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp - seqCycleMillis * i);
+                timeSource.set(mockSeqStartTimestamp - seqCycleMillis * i);
                 flakeGenerator.nextId();
             }
         });
@@ -283,14 +279,13 @@ public class FlakeGeneratorTest {
     @Test
     @DisplayName("反复回拨-回正正常")
     public void shouldGetCorrectIdWhenClockBackTimesOverAndOver() {
-        PowerMockito.mockStatic(System.class);
-        FlakeGenerator flakeGenerator = new FlakeGenerator(1, 1);
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
         Set<Long> idSet = new HashSet<>();
         long id;
         int idCounts = 0;
 
         for (int i = 0; i < maxSeqPerCycle; i++) {
-            when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp);
+            timeSource.set(mockSeqStartTimestamp);
             id = flakeGenerator.nextId();
             idSet.add(id);
             idCounts++;
@@ -300,7 +295,7 @@ public class FlakeGeneratorTest {
         for (int i = 0; i < FlakeGenerator.MAX_CLOCK_BACK_TIMES; i++) {
             //回拨
             long clockBackMillis = mockSeqStartTimestamp - seqCycleMillis * (i + 1);
-            when(System.currentTimeMillis()).thenReturn(clockBackMillis);
+            timeSource.set(clockBackMillis);
             for (int k = 0; k < maxSeqPerCycle; k++) {
                 id = flakeGenerator.nextId();
                 idSet.add(id);
@@ -310,7 +305,7 @@ public class FlakeGeneratorTest {
 
             //回正
             for (int j = 0; j < i + 1; j++) {
-                when(System.currentTimeMillis()).thenReturn(clockBackMillis + (j + 1) * seqCycleMillis);
+                timeSource.set(clockBackMillis + (j + 1) * seqCycleMillis);
                 for (int k = 0; k < maxSeqPerCycle; k++) {
                     id = flakeGenerator.nextId();
                     idSet.add(id);
@@ -325,20 +320,19 @@ public class FlakeGeneratorTest {
     @Test
     @DisplayName("时钟达到恢复阈值后，生成的id中时钟回拨标识复位0")
     public void shouldResetClockBackWhenClockExceedsRecoveryThreshold() {
-        PowerMockito.mockStatic(System.class);
-        FlakeGenerator flakeGenerator = new FlakeGenerator(1, 1);
-        when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp);
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
+        timeSource.set(mockSeqStartTimestamp);
         long id = flakeGenerator.nextId();
         Assert.assertEquals(0, FlakeGeneratorTest.getClockBack(id));
-        when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp - seqCycleMillis);
+        timeSource.set(mockSeqStartTimestamp - seqCycleMillis);
         id = flakeGenerator.nextId();
         Assert.assertEquals(1, FlakeGeneratorTest.getClockBack(id));
         // 回正
-        when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp);
+        timeSource.set(mockSeqStartTimestamp);
         id = flakeGenerator.nextId();
         Assert.assertEquals(1, FlakeGeneratorTest.getClockBack(id));
         // 达到阈值
-        when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp + seqCycleMillis * (FlakeGenerator.MAX_CLOCK_BACK_SEGMENTS + 1));
+        timeSource.set(mockSeqStartTimestamp + seqCycleMillis * (FlakeGenerator.MAX_CLOCK_BACK_SEGMENTS + 1));
         id = flakeGenerator.nextId();
         Assert.assertEquals(0, FlakeGeneratorTest.getClockBack(id));
     }
@@ -346,30 +340,247 @@ public class FlakeGeneratorTest {
     @Test
     @DisplayName("超出最大回拨忍耐值时，抛出异常")
     public void shouldThrowExceptionWhenClockBackTooLong() {
-        PowerMockito.mockStatic(System.class);
-        FlakeGenerator flakeGenerator = new FlakeGenerator(1, 1);
-        when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp);
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
+        timeSource.set(mockSeqStartTimestamp);
         long id = flakeGenerator.nextId();
         Assert.assertEquals(0, FlakeGeneratorTest.getClockBack(id));
 
         // 回拨
         Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> {
-            when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp - FlakeGenerator.MAX_CLOCK_BACK_SEGMENTS * seqCycleMillis);
+            timeSource.set(mockSeqStartTimestamp - FlakeGenerator.MAX_CLOCK_BACK_SEGMENTS * seqCycleMillis);
             flakeGenerator.nextId();
         });
         Assert.assertTrue(exception.getMessage().contains("时钟回拨超出最大忍耐值"));
 
         // 回拨
-        when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp - seqCycleMillis);
+        timeSource.set(mockSeqStartTimestamp - seqCycleMillis);
         id = flakeGenerator.nextId();
         Assert.assertEquals(1, FlakeGeneratorTest.getClockBack(id));
 
         // 超出最大忍耐值
         exception = Assert.assertThrows(FlakeGeneratorException.class, () -> {
-            when(System.currentTimeMillis()).thenReturn(mockSeqStartTimestamp - (FlakeGenerator.MAX_CLOCK_BACK_SEGMENTS + 1) * seqCycleMillis);
+            timeSource.set(mockSeqStartTimestamp - (FlakeGenerator.MAX_CLOCK_BACK_SEGMENTS + 1) * seqCycleMillis);
             flakeGenerator.nextId();
         });
         Assert.assertTrue(exception.getMessage().contains("时钟回拨超出最大忍耐值"));
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("启用降级模式后，超出最大回拨忍耐值时按逻辑时钟继续生成ID，墙上时钟追上后退出降级")
+    public void shouldDegradeWhenClockBackTooLong() {
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).degradeOnClockBack(true).timeSource(timeSource).build();
+        timeSource.set(mockSeqStartTimestamp);
+        long last = flakeGenerator.nextId();
+        long highWaterSegment = getSegment(last);
+
+        // 回拨一小时，逻辑周期固定在高水位并按单调时钟前进
+        timeSource.set(mockSeqStartTimestamp - TimeUnit.HOURS.toMillis(1));
+        long[] ids = flakeGenerator.nextIds((int) maxSeqPerCycle * 2);
+        Assert.assertTrue(flakeGenerator.isDegraded());
+        for (long id : ids) {
+            Assert.assertTrue(id > last);
+            Assert.assertTrue(getSegment(id) >= highWaterSegment);
+            Assert.assertEquals(0, getClockBack(id));
+            last = id;
+        }
+        FlakeMetrics metrics = flakeGenerator.getMetrics();
+        Assert.assertTrue(metrics.isDegraded());
+        Assert.assertEquals(1, metrics.getDegradedEpisodes());
+        Assert.assertEquals(0, metrics.getClockBackRejections());
+
+        // 墙上时钟追上逻辑时钟
+        long wallTimestamp = mockSeqStartTimestamp + seqCycleMillis * 1000;
+        timeSource.set(wallTimestamp);
+        long id = flakeGenerator.nextId();
+        Assert.assertFalse(flakeGenerator.isDegraded());
+        Assert.assertFalse(metrics.isDegraded());
+        Assert.assertTrue(id > last);
+        Assert.assertEquals((wallTimestamp - FlakeGenerator.EPOCH) >> FlakeGenerator.TIME_SEGMENT_SHIFT_BITS, getSegment(id));
+        // 两个周期的序号按单调时钟等待生成，降级时长不少于一个周期
+        Assert.assertTrue(metrics.getDegradedTimeMillis() >= seqCycleMillis);
+        Assert.assertEquals(1, metrics.getDegradedEpisodes());
+    }
+
+    @Test
+    @DisplayName("启用降级模式后，超出最大连续回拨次数时不抛出异常")
+    public void shouldDegradeWhenClockBackTimesOverflow() {
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).degradeOnClockBack(true).timeSource(timeSource).build();
+        Set<Long> idSet = new HashSet<>();
+        for (int i = 0; i < FlakeGenerator.MAX_CLOCK_BACK_TIMES + 2; i++) {
+            timeSource.set(mockSeqStartTimestamp - seqCycleMillis * i);
+            idSet.add(flakeGenerator.nextId());
+        }
+        Assert.assertEquals(FlakeGenerator.MAX_CLOCK_BACK_TIMES + 2, idSet.size());
+        Assert.assertTrue(flakeGenerator.isDegraded());
+        Assert.assertEquals(1, flakeGenerator.getMetrics().getDegradedEpisodes());
+    }
+
+    @Test
+    @DisplayName("启用降级模式后，时钟回拨一次且不再恢复，墙上时钟按真实时间流逝追上逻辑周期后退出降级")
+    public void shouldExitDegradedAfterPersistentStepBack() throws InterruptedException {
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).degradeOnClockBack(true).timeSource(timeSource).build();
+        long start = System.nanoTime();
+        AtomicLong regressionMillis = new AtomicLong();
+        timeSource.answer(() -> mockSeqStartTimestamp - regressionMillis.get() + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        long last = flakeGenerator.nextId();
+
+        // 回拨超出最大忍耐值，之后墙上时钟从回拨后的位置正常流逝
+        long regression = (FlakeGenerator.MAX_CLOCK_BACK_SEGMENTS + 2) * seqCycleMillis;
+        regressionMillis.set(regression);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(regression * 10);
+        boolean degraded = false;
+        while (System.nanoTime() < deadline) {
+            long id = flakeGenerator.nextId();
+            Assert.assertTrue(id > last);
+            last = id;
+            degraded |= flakeGenerator.isDegraded();
+            if (degraded && !flakeGenerator.isDegraded()) {
+                break;
+            }
+            Thread.sleep(1);
+        }
+        Assert.assertTrue(degraded);
+        Assert.assertFalse(flakeGenerator.isDegraded());
+        Assert.assertEquals(1, flakeGenerator.getMetrics().getDegradedEpisodes());
+        Assert.assertTrue(flakeGenerator.getMetrics().getDegradedTimeMillis() < regression * 5);
+    }
+
+    @Test
+    @DisplayName("批量生成的ID在同一周期内序号连续，并写入指定位置")
+    public void shouldFillContinuousIdsInOneTimeCycle() {
+        timeSource.set(mockSeqStartTimestamp);
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
+        long first = flakeGenerator.nextId();
+
+        long[] ids = new long[(int) maxSeqPerCycle + 2];
+        flakeGenerator.fill(ids, 1, (int) maxSeqPerCycle - 1);
+        Assert.assertEquals(0, ids[0]);
+        Assert.assertEquals(0, ids[ids.length - 1]);
+        for (int i = 1; i < maxSeqPerCycle; i++) {
+            Assert.assertEquals(getSegment(first), getSegment(ids[i]));
+            Assert.assertEquals(i, getSeq(ids[i]));
+            Assert.assertEquals(1, getWorkerId(ids[i]));
+            Assert.assertEquals(1, getDataCenterId(ids[i]));
+        }
+    }
+
+    @Test
+    @DisplayName("批量生成的ID超出当前周期剩余序号时，在后续周期中继续生成")
+    public void shouldFillIdsAcrossTimeCycles() {
+        long[] ts = LongStream.range(0, seqCycleMillis * 8).map(x -> mockSeqStartTimestamp + x).toArray();
+        timeSource.answer(() -> getMockCurrentMillis(ts));
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
+
+        long[] ids = flakeGenerator.nextIds((int) maxSeqPerCycle * 3 + 10);
+        Set<Long> idSet = new HashSet<>();
+        Set<Long> segmentSet = new HashSet<>();
+        for (int i = 0; i < ids.length; i++) {
+            idSet.add(ids[i]);
+            segmentSet.add(getSegment(ids[i]));
+            Assert.assertEquals(i % maxSeqPerCycle, getSeq(ids[i]));
+            if (i > 0) {
+                Assert.assertTrue(ids[i] > ids[i - 1]);
+            }
+        }
+        Assert.assertEquals(ids.length, idSet.size());
+        Assert.assertEquals(4, segmentSet.size());
+    }
+
+    @Test
+    @DisplayName("批量生成参数非法时，抛出异常")
+    public void shouldThrowExceptionWhenBatchArgumentsIllegal() {
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
+        Assert.assertEquals(0, flakeGenerator.nextIds(0).length);
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> flakeGenerator.nextIds(-1));
+        Assert.assertTrue(exception.getMessage().contains("不能小于0"));
+        Assert.assertThrows(IndexOutOfBoundsException.class, () -> flakeGenerator.fill(new long[4], 2, 3));
+        Assert.assertThrows(IndexOutOfBoundsException.class, () -> flakeGenerator.fill(new long[4], -1, 1));
+    }
+
+    @Test
+    @DisplayName("启用借用模式后，序号耗尽时不等待，逻辑周期在领先上限内前进")
+    public void shouldBorrowFutureTimeSegmentsWhenSeqExhausted() {
+        long[] ts = new long[]{mockSeqStartTimestamp, mockSeqStartTimestamp, mockSeqStartTimestamp, mockSeqStartTimestamp,
+                mockSeqStartTimestamp + seqCycleMillis};
+        timeSource.answer(() -> getMockCurrentMillis(ts));
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).maxLeadSegments(2).timeSource(timeSource).build();
+        long startSegment = (mockSeqStartTimestamp - FlakeGenerator.EPOCH) >> FlakeGenerator.TIME_SEGMENT_SHIFT_BITS;
+
+        // 三个周期的序号在同一时刻生成完毕
+        long[] ids = flakeGenerator.nextIds((int) maxSeqPerCycle * 3);
+        Assert.assertEquals(3, tsMockTimes);
+        for (int i = 0; i < ids.length; i++) {
+            Assert.assertEquals(startSegment + i / maxSeqPerCycle, getSegment(ids[i]));
+            Assert.assertEquals(0, getClockBack(ids[i]));
+            if (i > 0) {
+                Assert.assertTrue(ids[i] > ids[i - 1]);
+            }
+        }
+
+        // 达到领先上限后等待墙上时钟前进
+        long id = flakeGenerator.nextId();
+        Assert.assertEquals(ts.length, tsMockTimes);
+        Assert.assertEquals(startSegment + 3, getSegment(id));
+        Assert.assertEquals(0, getSeq(id));
+        Assert.assertTrue(id > ids[ids.length - 1]);
+    }
+
+    @Test
+    @DisplayName("启用借用模式后，领先上限内的时钟回退由逻辑周期吸收")
+    public void shouldAbsorbClockBackWithinLeadSegments() {
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).maxLeadSegments(2).timeSource(timeSource).build();
+        timeSource.set(mockSeqStartTimestamp);
+        long id = flakeGenerator.nextId();
+
+        timeSource.set(mockSeqStartTimestamp - seqCycleMillis * 2);
+        long next = flakeGenerator.nextId();
+        Assert.assertEquals(0, getClockBack(next));
+        Assert.assertEquals(getSegment(id), getSegment(next));
+        Assert.assertEquals(1, getSeq(next));
+
+        // 超出领先上限，按时钟回拨处理
+        timeSource.set(mockSeqStartTimestamp - seqCycleMillis * 3);
+        next = flakeGenerator.nextId();
+        Assert.assertEquals(1, getClockBack(next));
+
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class,
+                () -> FlakeGenerator.builder().workerId(1).dataCenterId(1).maxLeadSegments(-1).build());
+        Assert.assertTrue(exception.getMessage().contains("当前的maxLeadSegments"));
+    }
+
+    @Test
+    @DisplayName("序号耗尽时，tryNextId在超时后返回-1")
+    public void shouldReturnNegativeWhenTryNextIdTimeout() {
+        long[] ts = LongStream.range(0, maxSeqPerCycle + 4)
+                .map(x -> x <= maxSeqPerCycle ? mockSeqStartTimestamp : mockSeqStartTimestamp + (x - maxSeqPerCycle) * 5)
+                .toArray();
+        timeSource.answer(() -> getMockCurrentMillis(ts));
+        FlakeGenerator flakeGenerator = newGenerator(1, 1);
+        for (int i = 0; i < maxSeqPerCycle; i++) {
+            Assert.assertTrue(flakeGenerator.tryNextId(0, TimeUnit.MILLISECONDS) >= 0);
+        }
+        Assert.assertEquals(-1, flakeGenerator.tryNextId(3, TimeUnit.MILLISECONDS));
+
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> flakeGenerator.tryNextId(-1, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(exception.getMessage().contains("等待时长"));
+    }
+
+    @Test
+    @DisplayName("限时等待策略超时后，抛出异常")
+    public void shouldThrowExceptionWhenWaitStrategyTimeout() {
+        long[] ts = LongStream.range(0, maxSeqPerCycle + 4)
+                .map(x -> x <= maxSeqPerCycle ? mockSeqStartTimestamp : mockSeqStartTimestamp + (x - maxSeqPerCycle) * 5)
+                .toArray();
+        timeSource.answer(() -> getMockCurrentMillis(ts));
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder()
+                .workerId(1)
+                .dataCenterId(1)
+                .waitStrategy(WaitStrategy.timeout(WaitStrategy.parking(), 3, TimeUnit.MILLISECONDS))
+                .timeSource(timeSource)
+                .build();
+        flakeGenerator.nextIds((int) maxSeqPerCycle);
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, flakeGenerator::nextId);
+        Assert.assertTrue(exception.getMessage().contains("等待下一序号生成周期超时"));
+    }
+
+}
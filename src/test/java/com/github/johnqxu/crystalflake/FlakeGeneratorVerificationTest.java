@@ -0,0 +1,178 @@
+package com.github.johnqxu.crystalflake;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * 大规模唯一性与单调性校验
+ * <p>
+ * 多个生成器各使用一个脚本时钟，每个生成器由多个线程并发生成ID，注入序号耗尽与时钟回拨；
+ * 唯一性通过每个机器节点一个堆外位图校验，单调性在每个线程内逐个比较，全程不产生包装对象。
+ * 默认规模在单元测试中几秒内完成，可以通过系统属性放大，例如：
+ * {@code mvn test -Dtest=FlakeGeneratorVerificationTest -Dcrystalflake.verify.ids=1000000000}
+ */
+@Slf4j
+public class FlakeGeneratorVerificationTest {
+
+    /**
+     * 每个场景生成的ID总数
+     */
+    private static final long TOTAL_IDS = Long.getLong("crystalflake.verify.ids", 1L << 21);
+
+    private static final int WORKERS = Integer.getInteger("crystalflake.verify.workers", 4);
+
+    private static final int THREADS_PER_WORKER = Integer.getInteger("crystalflake.verify.threads", 4);
+
+    /**
+     * 批量生成时每批的ID数量，与逐个生成交替进行
+     */
+    private static final int BATCH = 64;
+
+    /**
+     * 脚本时钟前进1ms需要的读取次数，每个周期512次读取，逐个生成时必然出现序号耗尽
+     */
+    private static final int READS_PER_MILLI = 16;
+
+    private static final long START_MILLIS = 1648724946016L;
+
+    private static final long SEGMENT_MILLIS = BitLayout.DEFAULT.getSegmentMillis();
+
+    /**
+     * 位图覆盖的周期数上限，约24天的脚本时间
+     */
+    private static final long MAX_SEGMENTS = 1L << 26;
+
+    @Test
+    @DisplayName("默认模式：序号耗尽与忍耐值内的时钟回拨下，ID全局唯一")
+    public void shouldStayUniqueWithClockBackAndExhaustion() throws Exception {
+        FlakeGenerator[] generators = verify(builder -> builder,
+                period -> (period % (FlakeGenerator.MAX_CLOCK_BACK_SEGMENTS - 1) + 1) * SEGMENT_MILLIS, 600, 100, false);
+        Assert.assertTrue(sum(generators, FlakeMetrics::getClockBackEvents) > 0);
+        Assert.assertTrue(sum(generators, FlakeMetrics::getSequenceExhaustedWaits) > 0);
+        Assert.assertEquals(0, sum(generators, FlakeMetrics::getClockBackRejections));
+    }
+
+    @Test
+    @DisplayName("借用模式：逻辑周期领先墙上时钟时，ID全局唯一且每个线程内严格递增")
+    public void shouldStayUniqueAndMonotonicWhenBorrowing() throws Exception {
+        FlakeGenerator[] generators = verify(builder -> builder.maxLeadSegments(4), period -> 0L, 600, 100, true);
+        Assert.assertTrue(sum(generators, FlakeMetrics::getSegmentRollovers) > 0);
+        Assert.assertEquals(0, sum(generators, FlakeMetrics::getClockBackEvents));
+    }
+
+    @Test
+    @DisplayName("降级模式：超出忍耐值的时钟回拨下，ID全局唯一且每个线程内严格递增")
+    public void shouldStayUniqueAndMonotonicWhenDegraded() throws Exception {
+        FlakeGenerator[] generators = verify(builder -> builder.degradeOnClockBack(true),
+                period -> (period % 3 + 1) * 20 * SEGMENT_MILLIS, 4000, 2500, true);
+        Assert.assertTrue(sum(generators, FlakeMetrics::getDegradedEpisodes) > 0);
+        Assert.assertEquals(0, sum(generators, FlakeMetrics::getClockBackRejections));
+    }
+
+    /**
+     * @param config     按场景配置生成器
+     * @param regression 按回拨周期序号计算回拨时长
+     * @param monotonic  是否校验每个线程内ID严格递增
+     * @return 各机器节点的生成器
+     */
+    private FlakeGenerator[] verify(UnaryOperator<FlakeGenerator.Builder> config, LongUnaryOperator regression,
+                                    long periodMillis, long windowMillis, boolean monotonic) throws Exception {
+        BitLayout layout = BitLayout.DEFAULT;
+        long startSegment = (START_MILLIS - FlakeGenerator.EPOCH) >> layout.getTimeSegmentShiftBits();
+        long perThread = TOTAL_IDS / WORKERS / THREADS_PER_WORKER;
+        FlakeGenerator[] generators = new FlakeGenerator[WORKERS];
+        IdBitmap[] bitmaps = new IdBitmap[WORKERS];
+        for (int w = 0; w < WORKERS; w++) {
+            TimeSource timeSource = new ScriptedTimeSource(START_MILLIS, READS_PER_MILLI, periodMillis, windowMillis, regression);
+            generators[w] = config.apply(FlakeGenerator.builder().workerId(w).dataCenterId(1).timeSource(timeSource)).build();
+            bitmaps[w] = new IdBitmap(layout, startSegment, MAX_SEGMENTS);
+        }
+
+        LongAdder duplicates = new LongAdder();
+        LongAdder regressions = new LongAdder();
+        LongAdder foreign = new LongAdder();
+        AtomicLong firstFailure = new AtomicLong(-1L);
+        long nodeMask = ~(-1L << layout.getClockBackShift());
+        long begin = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(WORKERS * THREADS_PER_WORKER);
+        try {
+            Future<?>[] futures = new Future[WORKERS * THREADS_PER_WORKER];
+            for (int t = 0; t < futures.length; t++) {
+                FlakeGenerator generator = generators[t % WORKERS];
+                IdBitmap bitmap = bitmaps[t % WORKERS];
+                long nodeBits = generator.getWorkerId() << layout.getWorkerShift() | generator.getDataCenterId();
+                futures[t] = executor.submit(() -> {
+                    long[] batch = new long[BATCH];
+                    long last = -1L;
+                    long produced = 0L;
+                    boolean single = true;
+                    while (produced < perThread) {
+                        int n;
+                        if (single) {
+                            batch[0] = generator.nextId();
+                            n = 1;
+                        } else {
+                            n = (int) Math.min(BATCH, perThread - produced);
+                            generator.fill(batch, 0, n);
+                        }
+                        single = !single;
+                        for (int i = 0; i < n; i++) {
+                            long id = batch[i];
+                            if ((id & nodeMask) != nodeBits) {
+                                foreign.increment();
+                                firstFailure.compareAndSet(-1L, id);
+                            } else if (!bitmap.add(id)) {
+                                duplicates.increment();
+                                firstFailure.compareAndSet(-1L, id);
+                            }
+                            if (monotonic && id <= last) {
+                                regressions.increment();
+                                firstFailure.compareAndSet(-1L, id);
+                            }
+                            last = id;
+                        }
+                        produced += n;
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        long bitmapBytes = 0L;
+        for (IdBitmap bitmap : bitmaps) {
+            bitmapBytes += bitmap.allocatedBytes();
+        }
+        log.info("校验{}个ID耗时{}ms，位图占用堆外内存{}KB", perThread * WORKERS * THREADS_PER_WORKER, elapsedMillis, bitmapBytes >> 10);
+
+        String failure = String.format("首个失败的ID[%d]", firstFailure.get());
+        Assert.assertEquals(failure, 0, foreign.sum());
+        Assert.assertEquals(failure, 0, duplicates.sum());
+        Assert.assertEquals(failure, 0, regressions.sum());
+        Assert.assertEquals(perThread * WORKERS * THREADS_PER_WORKER, sum(generators, FlakeMetrics::getIdsIssued));
+        return generators;
+    }
+
+    private static long sum(FlakeGenerator[] generators, ToLongFunction<FlakeMetrics> metric) {
+        long sum = 0L;
+        for (FlakeGenerator generator : generators) {
+            sum += metric.applyAsLong(generator.getMetrics());
+        }
+        return sum;
+    }
+}
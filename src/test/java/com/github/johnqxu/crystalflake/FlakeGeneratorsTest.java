@@ -0,0 +1,109 @@
+package com.github.johnqxu.crystalflake;
+
+import jdk.jfr.Event;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class FlakeGeneratorsTest {
+
+    private static final String REFLECT_CONFIG = "/META-INF/native-image/io.github.johnqxu/crystal-flake/reflect-config.json";
+
+    /**
+     * 记录归还次数的分配器
+     */
+    private static final class FixedWorkerIdAssigner implements WorkerIdAssigner {
+        private final WorkerIdAssignment assignment;
+        private final AtomicInteger releases = new AtomicInteger();
+
+        private FixedWorkerIdAssigner(WorkerIdAssignment assignment) {
+            this.assignment = assignment;
+        }
+
+        @Override
+        public WorkerIdAssignment assign(BitLayout bitLayout) {
+            return assignment;
+        }
+
+        @Override
+        public void release() {
+            releases.incrementAndGet();
+        }
+    }
+
+    @Test
+    @DisplayName("分配到单个workerId时创建FlakeGenerator，关闭时归还workerId")
+    public void shouldStartSingleGenerator() {
+        FixedWorkerIdAssigner assigner = new FixedWorkerIdAssigner(WorkerIdAssignment.of(7, 2));
+        MockTimeSource timeSource = new MockTimeSource();
+        timeSource.set(System.currentTimeMillis());
+        try (FlakeGenerators generators = FlakeGenerators.start(assigner, BitLayout.DEFAULT, builder -> builder.timeSource(timeSource))) {
+            Assert.assertTrue(generators.getIdGenerator() instanceof FlakeGenerator);
+            Assert.assertEquals(1, generators.getFlakeGenerators().size());
+            long id = generators.nextId();
+            Assert.assertEquals(7, FlakeIdDecoder.workerId(id));
+            Assert.assertEquals(2, FlakeIdDecoder.dataCenterId(id));
+            Assert.assertEquals(timeSource.currentTimeMillis(), FlakeIdDecoder.timestampMillis(id), BitLayout.DEFAULT.getSegmentMillis());
+            Assert.assertEquals(0, assigner.releases.get());
+        }
+        Assert.assertEquals(1, assigner.releases.get());
+    }
+
+    @Test
+    @DisplayName("分配到workerId区间时创建StripedFlakeGenerator，每段使用相同的bit位分配")
+    public void shouldStartStripedGenerator() {
+        BitLayout layout = BitLayout.of(36, 12, 2, 9, 4);
+        FixedWorkerIdAssigner assigner = new FixedWorkerIdAssigner(WorkerIdAssignment.of(8, 11, 3));
+        try (FlakeGenerators generators = FlakeGenerators.start(assigner, layout)) {
+            Assert.assertTrue(generators.getIdGenerator() instanceof StripedFlakeGenerator);
+            Assert.assertEquals(4, generators.getFlakeGenerators().size());
+            Assert.assertTrue(generators.getAssignment().isRange());
+            for (FlakeGenerator generator : generators.getFlakeGenerators()) {
+                Assert.assertEquals(layout, generator.getBitLayout());
+            }
+            long workerId = FlakeIdDecoder.workerId(layout, generators.nextId());
+            Assert.assertTrue(workerId >= 8 && workerId <= 11);
+        }
+    }
+
+    @Test
+    @DisplayName("创建生成器失败时归还workerId并抛出异常")
+    public void shouldReleaseWhenStartFails() {
+        FixedWorkerIdAssigner assigner = new FixedWorkerIdAssigner(WorkerIdAssignment.of(FlakeGenerator.MAX_WORKER_ID + 1, 1));
+        Assert.assertThrows(FlakeGeneratorException.class, () -> FlakeGenerators.start(assigner, BitLayout.DEFAULT));
+        Assert.assertEquals(1, assigner.releases.get());
+    }
+
+    @Test
+    @DisplayName("native-image反射元数据中的类都存在，并覆盖全部JFR事件")
+    public void shouldKeepReflectConfigInSync() throws Exception {
+        String json;
+        try (InputStream in = FlakeGeneratorsTest.class.getResourceAsStream(REFLECT_CONFIG)) {
+            Assert.assertNotNull(in);
+            json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        Set<String> names = new HashSet<>();
+        Matcher matcher = Pattern.compile("\"name\"\\s*:\\s*\"([^\"<]+)\"").matcher(json);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        for (String name : names) {
+            if (name.startsWith("com.github.johnqxu.")) {
+                Class.forName(name, false, FlakeGeneratorsTest.class.getClassLoader());
+            }
+        }
+        for (Class<?> type : FlakeEvents.class.getDeclaredClasses()) {
+            if (Event.class.isAssignableFrom(type)) {
+                Assert.assertTrue(type.getName(), names.contains(type.getName()));
+            }
+        }
+    }
+}
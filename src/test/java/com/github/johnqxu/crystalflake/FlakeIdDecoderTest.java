@@ -0,0 +1,83 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class FlakeIdDecoderTest {
+
+    @Test
+    @DisplayName("按默认bit位分配解析ID的各个组成部分")
+    public void shouldDecodeIdWithDefaultLayout() {
+        MockTimeSource timeSource = new MockTimeSource();
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(FlakeGenerator.MAX_WORKER_ID).dataCenterId(9).timeSource(timeSource).build();
+        timeSource.set(FlakeGeneratorTest.mockSeqStartTimestamp + 5);
+        flakeGenerator.nextId();
+        long id = flakeGenerator.nextId();
+        Assert.assertEquals(FlakeGeneratorTest.mockSeqStartTimestamp, FlakeIdDecoder.timestampMillis(id));
+        Assert.assertEquals(FlakeGeneratorTest.getSegment(id), FlakeIdDecoder.timeSegment(id));
+        Assert.assertEquals(1, FlakeIdDecoder.sequence(id));
+        Assert.assertEquals(0, FlakeIdDecoder.clockBack(id));
+        Assert.assertEquals(FlakeGenerator.MAX_WORKER_ID, FlakeIdDecoder.workerId(id));
+        Assert.assertEquals(9, FlakeIdDecoder.dataCenterId(id));
+
+        // 时钟回拨
+        timeSource.set(FlakeGeneratorTest.mockSeqStartTimestamp - 32);
+        id = flakeGenerator.nextId();
+        Assert.assertEquals(1, FlakeIdDecoder.clockBack(id));
+        Assert.assertEquals(FlakeGeneratorTest.mockSeqStartTimestamp - 32, FlakeIdDecoder.timestampMillis(id));
+    }
+
+    @Test
+    @DisplayName("批量解析的结果与逐个解析一致")
+    public void shouldBulkDecodeIds() {
+        BitLayout layout = BitLayout.of(35, 12, 2, 10, 4, 4);
+        MockTimeSource timeSource = new MockTimeSource();
+        long[] ids = new long[5000];
+        int pos = 0;
+        for (int workerId = 0; workerId < 2; workerId++) {
+            FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1000 + workerId).dataCenterId(workerId + 3)
+                    .bitLayout(layout).timeSource(timeSource).build();
+            timeSource.set(FlakeGeneratorTest.mockSeqStartTimestamp + workerId * 100);
+            flakeGenerator.fill(ids, pos, 2500);
+            pos += 2500;
+        }
+
+        int len = ids.length - 2;
+        long[] timestampMillis = new long[ids.length];
+        int[] sequences = new int[ids.length];
+        int[] clockBacks = new int[ids.length];
+        int[] workerIds = new int[ids.length];
+        int[] dataCenterIds = new int[ids.length];
+        FlakeIdDecoder.decode(layout, ids, 1, len, timestampMillis, sequences, clockBacks, workerIds, dataCenterIds, 2);
+        for (int i = 0; i < len; i++) {
+            long id = ids[i + 1];
+            Assert.assertEquals(FlakeIdDecoder.timestampMillis(layout, id), timestampMillis[i + 2]);
+            Assert.assertEquals(FlakeIdDecoder.sequence(layout, id), sequences[i + 2]);
+            Assert.assertEquals(FlakeIdDecoder.clockBack(layout, id), clockBacks[i + 2]);
+            Assert.assertEquals(FlakeIdDecoder.workerId(layout, id), workerIds[i + 2]);
+            Assert.assertEquals(FlakeIdDecoder.dataCenterId(layout, id), dataCenterIds[i + 2]);
+        }
+        Assert.assertEquals(1000, workerIds[2]);
+        Assert.assertEquals(1001, workerIds[len + 1]);
+        Assert.assertEquals(2499, sequences[2500]);
+        Assert.assertEquals(FlakeGeneratorTest.mockSeqStartTimestamp + 96, timestampMillis[len + 1]);
+
+        // 目标数组为null的部分不解析
+        int[] onlyDataCenterIds = new int[ids.length];
+        FlakeIdDecoder.decode(layout, ids, 0, ids.length, null, null, null, null, onlyDataCenterIds, 0);
+        Assert.assertEquals(3, onlyDataCenterIds[0]);
+        Assert.assertEquals(4, onlyDataCenterIds[ids.length - 1]);
+    }
+
+    @Test
+    @DisplayName("批量解析参数非法时，抛出异常")
+    public void shouldThrowExceptionWhenBulkArgumentsIllegal() {
+        long[] ids = new long[4];
+        Assert.assertThrows(IndexOutOfBoundsException.class, () -> FlakeIdDecoder.workerIds(BitLayout.DEFAULT, ids, 0, 4, new int[3], 0));
+        Assert.assertThrows(IndexOutOfBoundsException.class, () -> FlakeIdDecoder.timestampMillis(BitLayout.DEFAULT, ids, 2, 3, new long[8], 0));
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class,
+                () -> FlakeIdDecoder.sequences(BitLayout.of(20, 32, 2, 5, 4), ids, 0, 4, new int[4], 0));
+        Assert.assertTrue(exception.getMessage().contains("超出int范围"));
+    }
+}
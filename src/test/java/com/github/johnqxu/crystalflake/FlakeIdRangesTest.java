@@ -0,0 +1,100 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class FlakeIdRangesTest {
+
+    private static final long SEGMENT_MILLIS = BitLayout.DEFAULT.getSegmentMillis();
+
+    private static FlakeGenerator newGenerator(MockTimeSource timeSource, long workerId, long dataCenterId) {
+        return FlakeGenerator.builder().workerId(workerId).dataCenterId(dataCenterId).timeSource(timeSource).build();
+    }
+
+    @Test
+    @DisplayName("时间区间内生成的ID都落在ID区间中，区间外周期生成的ID不在其中")
+    public void shouldBoundIdsCreatedInTimeWindow() {
+        MockTimeSource timeSource = new MockTimeSource();
+        FlakeGenerator[] generators = {newGenerator(timeSource, 1, 1), newGenerator(timeSource, 2, 1), newGenerator(timeSource, 1, 2)};
+        long from = FlakeIdRanges.segmentStartMillis(FlakeIdRanges.minId(System.currentTimeMillis())) + SEGMENT_MILLIS * 10;
+        long to = from + SEGMENT_MILLIS * 5 - 1;
+        long minId = FlakeIdRanges.minId(from);
+        long maxId = FlakeIdRanges.maxId(to);
+
+        for (long t = from - SEGMENT_MILLIS; t <= to + SEGMENT_MILLIS; t += 7) {
+            timeSource.set(t);
+            for (FlakeGenerator generator : generators) {
+                long id = generator.nextId();
+                boolean inWindow = t >= from && t <= to;
+                Assert.assertEquals(inWindow, id >= minId && id <= maxId);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("指定数据中心与机器节点时，区间两端取到该节点的极值")
+    public void shouldNarrowBoundsByNode() {
+        MockTimeSource timeSource = new MockTimeSource();
+        long from = FlakeIdRanges.segmentStartMillis(FlakeIdRanges.minId(System.currentTimeMillis())) + 3;
+        timeSource.set(from);
+        FlakeGenerator generator = newGenerator(timeSource, 5, 3);
+        long first = generator.nextId();
+        BitLayout layout = BitLayout.DEFAULT;
+
+        // 起点所在周期的第一个ID就是下界
+        Assert.assertEquals(first, FlakeIdRanges.minId(layout, from, 3, 5));
+        long maxId = FlakeIdRanges.maxId(layout, from, 3, 5);
+        Assert.assertEquals(5, FlakeIdDecoder.workerId(maxId));
+        Assert.assertEquals(3, FlakeIdDecoder.dataCenterId(maxId));
+        Assert.assertEquals(FlakeGenerator.MAX_SEQ, FlakeIdDecoder.sequence(maxId));
+        Assert.assertEquals(FlakeGenerator.MAX_CLOCK_BACK_TIMES, FlakeIdDecoder.clockBack(maxId));
+        Assert.assertEquals(FlakeIdDecoder.timeSegment(first), FlakeIdDecoder.timeSegment(maxId));
+
+        long dcMin = FlakeIdRanges.minId(layout, from, 3);
+        long dcMax = FlakeIdRanges.maxId(layout, from, 3);
+        Assert.assertEquals(0, FlakeIdDecoder.workerId(dcMin));
+        Assert.assertEquals(FlakeGenerator.MAX_WORKER_ID, FlakeIdDecoder.workerId(dcMax));
+        Assert.assertEquals(3, FlakeIdDecoder.dataCenterId(dcMin));
+        Assert.assertEquals(3, FlakeIdDecoder.dataCenterId(dcMax));
+        Assert.assertTrue(dcMin <= first && first <= dcMax);
+        Assert.assertTrue(FlakeIdRanges.minId(from) <= dcMin && dcMax <= FlakeIdRanges.maxId(from));
+    }
+
+    @Test
+    @DisplayName("由ID得到所在周期的起止时间")
+    public void shouldResolveSegmentTimeBounds() {
+        MockTimeSource timeSource = new MockTimeSource();
+        long now = System.currentTimeMillis();
+        timeSource.set(now);
+        long id = newGenerator(timeSource, 1, 1).nextId();
+        long start = FlakeIdRanges.segmentStartMillis(id);
+        long end = FlakeIdRanges.segmentEndMillis(id);
+        Assert.assertTrue(start <= now && now <= end);
+        Assert.assertEquals(SEGMENT_MILLIS - 1, end - start);
+        Assert.assertEquals(0, (start - FlakeGenerator.EPOCH) % SEGMENT_MILLIS);
+        Assert.assertTrue(FlakeIdRanges.minId(start) <= id && id <= FlakeIdRanges.maxId(end));
+
+        BitLayout layout = BitLayout.of(41, 12, 2, 4, 4, 0);
+        long millisId = FlakeIdRanges.minId(layout, now);
+        Assert.assertEquals(now, FlakeIdRanges.segmentStartMillis(layout, millisId));
+        Assert.assertEquals(now, FlakeIdRanges.segmentEndMillis(layout, millisId));
+    }
+
+    @Test
+    @DisplayName("时间戳或节点超出范围时，抛出异常")
+    public void shouldThrowExceptionWhenOutOfRange() {
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> FlakeIdRanges.minId(FlakeGenerator.EPOCH - 1));
+        Assert.assertTrue(exception.getMessage().contains("不能早于"));
+        long beyond = ((FlakeGenerator.MAX_TIME_SEGMENT + 1) << FlakeGenerator.TIME_SEGMENT_SHIFT_BITS) + FlakeGenerator.EPOCH;
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> FlakeIdRanges.maxId(beyond));
+        Assert.assertTrue(exception.getMessage().contains("超出生产周期上限"));
+        Assert.assertEquals(Long.MAX_VALUE, FlakeIdRanges.maxId(beyond - 1));
+        exception = Assert.assertThrows(FlakeGeneratorException.class,
+                () -> FlakeIdRanges.minId(BitLayout.DEFAULT, System.currentTimeMillis(), 16));
+        Assert.assertTrue(exception.getMessage().contains("dataCenterId"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class,
+                () -> FlakeIdRanges.maxId(BitLayout.DEFAULT, System.currentTimeMillis(), 1, -1));
+        Assert.assertTrue(exception.getMessage().contains("workerId"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.johnqxu.crystalflake;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FlakeMetricsTest {
+
+    private static final long T = FlakeGeneratorTest.mockSeqStartTimestamp;
+
+    private final MockTimeSource timeSource = new MockTimeSource();
+
+    private FlakeGenerator newGenerator() {
+        return FlakeGenerator.builder().workerId(1).dataCenterId(1).timeSource(timeSource).build();
+    }
+
+    @Test
+    @DisplayName("统计生成的ID数量、周期切换与序号耗尽等待")
+    public void shouldCountIssuedIdsAndExhaustedWaits() {
+        AtomicLong reads = new AtomicLong();
+        timeSource.answer(() -> reads.incrementAndGet() <= FlakeGenerator.MAX_SEQ + 2 ? T : T + 32);
+        FlakeGenerator flakeGenerator = newGenerator();
+        FlakeMetrics metrics = flakeGenerator.getMetrics();
+        flakeGenerator.fill(new long[10], 0, 10);
+        for (int i = 10; i <= FlakeGenerator.MAX_SEQ; i++) {
+            flakeGenerator.nextId();
+        }
+        Assert.assertEquals(FlakeGenerator.MAX_SEQ + 1, metrics.getIdsIssued());
+        Assert.assertEquals(1, metrics.getSegmentRollovers());
+        Assert.assertEquals(0, metrics.getSequenceExhaustedWaits());
+
+        flakeGenerator.nextId();
+        Assert.assertEquals(FlakeGenerator.MAX_SEQ + 2, metrics.getIdsIssued());
+        Assert.assertEquals(2, metrics.getSegmentRollovers());
+        Assert.assertEquals(1, metrics.getSequenceExhaustedWaits());
+        Assert.assertEquals(1, metrics.getWaitCount());
+        Assert.assertTrue(metrics.getWaitTimeMaxMicros() >= 0);
+        Assert.assertEquals(0, metrics.getWaitTimeouts());
+    }
+
+    @Test
+    @DisplayName("按回拨深度统计时钟回拨，并统计被拒绝的回拨")
+    public void shouldCountClockBackByDepth() {
+        timeSource.set(T);
+        FlakeGenerator flakeGenerator = newGenerator();
+        FlakeMetrics metrics = flakeGenerator.getMetrics();
+        flakeGenerator.nextId();
+        timeSource.set(T - 64);
+        flakeGenerator.nextId();
+        flakeGenerator.nextId();
+        Assert.assertEquals(1, metrics.getClockBackEvents(2));
+        Assert.assertEquals(1, metrics.getClockBackEvents());
+
+        timeSource.set(T - 64 - 32 * 7);
+        flakeGenerator.nextId();
+        Assert.assertArrayEquals(new long[]{0, 1, 0, 0, 0, 0, 1}, metrics.getClockBackEventsByDepth());
+
+        timeSource.set(T - 64 - 32 * 15);
+        Assert.assertThrows(FlakeGeneratorException.class, flakeGenerator::nextId);
+        Assert.assertEquals(1, metrics.getClockBackRejections());
+        Assert.assertEquals(2, metrics.getClockBackEvents());
+        Assert.assertThrows(FlakeGeneratorException.class, () -> metrics.getClockBackEvents(8));
+    }
+
+    @Test
+    @DisplayName("等待超时与关闭指标记录")
+    public void shouldCountWaitTimeoutsAndDisableMetrics() {
+        timeSource.set(T);
+        FlakeGenerator flakeGenerator = newGenerator();
+        flakeGenerator.nextIds((int) FlakeGenerator.MAX_SEQ + 1);
+        // 不等待的探测只计入直接返回次数
+        Assert.assertEquals(-1, flakeGenerator.tryNextId(0, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, flakeGenerator.tryFill(new long[4], 0, 4));
+        FlakeMetrics metrics = flakeGenerator.getMetrics();
+        Assert.assertEquals(2, metrics.getNonBlockingRejections());
+        Assert.assertEquals(0, metrics.getWaitTimeouts());
+        Assert.assertEquals(0, metrics.getSequenceExhaustedWaits());
+        Assert.assertEquals(0, metrics.getWaitCount());
+
+        // 时钟在当前周期内前进，等待在截止时间到达后超时
+        AtomicLong reads = new AtomicLong();
+        timeSource.answer(() -> T + Math.min(reads.incrementAndGet(), 8));
+        Assert.assertEquals(-1, flakeGenerator.tryNextId(2, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, metrics.getWaitTimeouts());
+        Assert.assertEquals(1, metrics.getSequenceExhaustedWaits());
+        Assert.assertEquals(1, metrics.getWaitCount());
+        Assert.assertEquals(2, metrics.getNonBlockingRejections());
+
+        FlakeGenerator withoutMetrics = FlakeGenerator.builder().workerId(1).dataCenterId(1).timeSource(timeSource).metricsEnabled(false).build();
+        Assert.assertNull(withoutMetrics.getMetrics());
+        Assert.assertTrue(withoutMetrics.nextId() > 0);
+    }
+
+    @Test
+    @DisplayName("直方图分桶的相对误差不超过1/32，分位数计算正确")
+    public void shouldRecordWaitHistogram() {
+        for (long value = 0; value < 1L << 20; value = value * 3 / 2 + 1) {
+            long highest = WaitHistogram.highestEquivalentValue(WaitHistogram.bucketIndex(value));
+            Assert.assertTrue(highest >= value);
+            Assert.assertTrue(highest - value <= value / 32);
+        }
+        WaitHistogram histogram = new WaitHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        histogram.record(-1);
+        Assert.assertEquals(1001, histogram.getCount());
+        Assert.assertEquals(1000_000, histogram.getMaxNanos());
+        Assert.assertEquals(1000_000, histogram.getValueAtPercentile(100));
+        long p50 = histogram.getValueAtPercentile(50);
+        Assert.assertTrue(p50 >= 500_000 && p50 <= 500_000 * 33 / 32);
+        long p99 = histogram.getValueAtPercentile(99);
+        Assert.assertTrue(p99 >= 990_000 && p99 <= 1000_000);
+        Assert.assertThrows(FlakeGeneratorException.class, () -> histogram.getValueAtPercentile(101));
+    }
+
+    @Test
+    @DisplayName("绑定到Micrometer")
+    public void shouldBindToMicrometer() {
+        timeSource.set(T);
+        FlakeGenerator flakeGenerator = newGenerator();
+        flakeGenerator.nextIds(5);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new FlakeMetricsBinder(flakeGenerator).bindTo(registry);
+        Assert.assertEquals(5, registry.get("crystal.flake.ids.issued").tag("workerId", "1").functionCounter().count(), 0);
+        Assert.assertEquals(7, registry.get("crystal.flake.clock.back").functionCounters().size());
+        Assert.assertEquals(0, registry.get("crystal.flake.wait").functionTimer().count(), 0);
+        Assert.assertEquals(3, registry.get("crystal.flake.wait.percentile").timeGauges().size());
+        Assert.assertEquals(0, registry.get("crystal.flake.degraded").functionTimer().count(), 0);
+        Assert.assertEquals(0, registry.get("crystal.flake.degraded.active").gauge().value(), 0);
+    }
+}
@@ -6,15 +6,27 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.beans.factory.BeanCreationException;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
 
 import static org.powermock.api.mockito.PowerMockito.when;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({GlobalIdConfig.class, FlakeGenerator.class})
+@PowerMockIgnore("javax.management.*")
+@PrepareForTest({GlobalIdConfig.class, EnvWorkerIdAssigner.class, SystemTimeSource.class})
 public class GlobalIdConfigTest {
 
     @Test
@@ -63,4 +75,80 @@ public class GlobalIdConfigTest {
         });
         Assert.assertNotNull(exception);
     }
+
+    @Configuration
+    @EnableGlobalId(seqBits = 12, workerIdBits = 9)
+    static class CustomLayoutConfig {
+    }
+
+    @Test
+    public void shouldSelectBitLayoutFromEnableGlobalId() {
+        PowerMockito.mockStatic(System.class);
+        when(System.getenv(EnableGlobalId.ENV_WORKER_KEY)).thenReturn("511");
+        when(System.getenv(EnableGlobalId.ENV_DATA_CENTER_KEY)).thenReturn("1");
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(CustomLayoutConfig.class);
+        FlakeGenerator flakeGenerator = ctx.getBean(FlakeGenerator.class);
+        Assert.assertEquals(BitLayout.of(36, 12, 2, 9, 4), flakeGenerator.getBitLayout());
+        Assert.assertEquals(511, flakeGenerator.getWorkerId());
+        ctx.close();
+
+        ctx = new AnnotationConfigApplicationContext(GlobalIdConfig.class);
+        Assert.assertEquals(BitLayout.DEFAULT, ctx.getBean(FlakeGenerator.class).getBitLayout());
+        ctx.close();
+    }
+
+    @Configuration
+    @EnableGlobalId(workerIdAssigner = FileLockWorkerIdAssigner.class)
+    static class FileLockConfig {
+        @Bean
+        FileLockWorkerIdAssigner fileLockWorkerIdAssigner() {
+            return new FileLockWorkerIdAssigner(SLOT_FILE, 2);
+        }
+    }
+
+    private static final Path SLOT_FILE = Paths.get(System.getProperty("java.io.tmpdir"), "crystal-flake-config-test-" + UUID.randomUUID() + ".slots");
+
+    @Test
+    public void shouldAssignWorkerIdFromSlotFile() throws Exception {
+        try {
+            AnnotationConfigApplicationContext first = new AnnotationConfigApplicationContext(FileLockConfig.class);
+            AnnotationConfigApplicationContext second = new AnnotationConfigApplicationContext(FileLockConfig.class);
+            Assert.assertEquals(0, first.getBean(FlakeGenerator.class).getWorkerId());
+            Assert.assertEquals(1, second.getBean(FlakeGenerator.class).getWorkerId());
+            Assert.assertEquals(2, second.getBean(FlakeGenerator.class).getDataCenterId());
+            long lastId = first.getBean(FlakeGenerator.class).nextId();
+            first.close();
+            // 同一周期内重新租用workerId 0，等待上一个容器已发出的周期结束
+            AnnotationConfigApplicationContext third = new AnnotationConfigApplicationContext(FileLockConfig.class);
+            Assert.assertEquals(0, third.getBean(FlakeGenerator.class).getWorkerId());
+            Assert.assertTrue(third.getBean(FlakeGenerator.class).nextId() > lastId);
+            second.close();
+            third.close();
+        } finally {
+            Files.deleteIfExists(SLOT_FILE);
+        }
+    }
+
+    @Test
+    public void shouldRegisterStripedGeneratorForWorkerIdRange() throws Exception {
+        PowerMockito.mockStatic(System.class);
+        when(System.getenv(EnableGlobalId.ENV_WORKER_KEY)).thenReturn("8-11");
+        when(System.getenv(EnableGlobalId.ENV_DATA_CENTER_KEY)).thenReturn("1");
+        when(System.currentTimeMillis()).thenReturn(FlakeGeneratorTest.mockSeqStartTimestamp);
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(GlobalIdConfig.class);
+        IdGenerator idGenerator = ctx.getBean(IdGenerator.class);
+        Assert.assertTrue(idGenerator instanceof StripedFlakeGenerator);
+        Assert.assertEquals(4, ((StripedFlakeGenerator) idGenerator).stripeCount());
+        long workerId = FlakeGeneratorTest.getWorkerId(idGenerator.nextId());
+        Assert.assertTrue(workerId >= 8 && workerId <= 11);
+        Assert.assertTrue(ctx.getBean("flakeMetricsBinder") instanceof FlakeMetricsBinder);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new FlakeGenerator(11, 1).getMetrics().getObjectName();
+        Assert.assertTrue(server.isRegistered(name));
+        ctx.close();
+        Assert.assertFalse(server.isRegistered(name));
+
+        when(System.getenv(EnableGlobalId.ENV_WORKER_KEY)).thenReturn("11-8");
+        Assert.assertThrows(BeanCreationException.class, () -> new AnnotationConfigApplicationContext(GlobalIdConfig.class));
+    }
 }
@@ -0,0 +1,186 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+public class IdBatchCodecTest {
+
+    /**
+     * 4个机器节点轮流生成的ID，时钟每读取16次前进1ms，批次内必然出现序号耗尽与周期切换
+     */
+    private static long[] interleavedIds(int n) {
+        AtomicLong reads = new AtomicLong();
+        long start = System.currentTimeMillis();
+        MockTimeSource timeSource = new MockTimeSource();
+        timeSource.answer(() -> start + reads.getAndIncrement() / 16);
+        FlakeGenerator[] generators = new FlakeGenerator[4];
+        for (int w = 0; w < generators.length; w++) {
+            generators[w] = FlakeGenerator.builder().workerId(w + 10).dataCenterId(w % 2).timeSource(timeSource).build();
+        }
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = generators[i % generators.length].nextId();
+        }
+        return ids;
+    }
+
+    private static long[] sortedByNode(long[] ids, BitLayout layout) {
+        long nodeMask = ~(-1L << layout.getClockBackShift());
+        return Arrays.stream(ids).boxed()
+                .sorted((a, b) -> a.longValue() == b.longValue() ? 0
+                        : (a & nodeMask) != (b & nodeMask) ? Long.compare(a & nodeMask, b & nodeMask) : Long.compare(a, b))
+                .mapToLong(Long::longValue).toArray();
+    }
+
+    @Test
+    @DisplayName("差值编码按原顺序还原ID，数组、流与游标读取的结果一致")
+    public void shouldRoundTripDelta() {
+        long[] ids = interleavedIds(16384);
+        ByteBuffer buffer = ByteBuffer.allocate(IdBatchCodec.maxEncodedLength(ids.length));
+        buffer.position(3);
+        int written = IdBatchCodec.encode(ids, 0, ids.length, buffer);
+        Assert.assertEquals(3 + written, buffer.position());
+        Assert.assertTrue(written < ids.length * 5);
+
+        buffer.flip().position(3);
+        Assert.assertEquals(ids.length, IdBatchCodec.count(buffer));
+        Assert.assertArrayEquals(ids, IdBatchCodec.stream(buffer).toArray());
+        long[] decoded = new long[ids.length + 1];
+        Assert.assertEquals(ids.length, IdBatchCodec.decode(buffer, decoded, 1));
+        Assert.assertArrayEquals(ids, Arrays.copyOfRange(decoded, 1, decoded.length));
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    @DisplayName("流式编码与数组编码的ID相同，任意long值都能还原")
+    public void shouldEncodeLongStream() {
+        SplittableRandom random = new SplittableRandom(42);
+        long[] ids = random.longs(1000).toArray();
+        ids[0] = Long.MIN_VALUE;
+        ids[1] = Long.MAX_VALUE;
+        ids[2] = 0L;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(IdBatchCodec.maxEncodedLength(ids.length));
+        int written = IdBatchCodec.encode(LongStream.of(ids), buffer);
+        Assert.assertEquals(written, buffer.position());
+        buffer.flip();
+        Assert.assertArrayEquals(ids, IdBatchCodec.stream(buffer).toArray());
+
+        buffer.clear();
+        IdBatchCodec.encode(LongStream.empty(), buffer);
+        buffer.flip();
+        IdBatchCodec.Cursor cursor = IdBatchCodec.cursor(buffer);
+        Assert.assertEquals(IdBatchCodec.DELTA, cursor.format());
+        Assert.assertEquals(0, cursor.count());
+        Assert.assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    @DisplayName("按节点分组编码每个ID约1个字节，解码结果按节点、ID排序")
+    public void shouldRoundTripByWorker() {
+        long[] ids = interleavedIds(16384);
+        BitLayout layout = BitLayout.DEFAULT;
+        long[] original = ids.clone();
+        ByteBuffer buffer = ByteBuffer.allocate(IdBatchCodec.maxEncodedLengthByWorker(ids.length));
+        int written = IdBatchCodec.encodeByWorker(layout, ids, 0, ids.length, buffer);
+        Assert.assertArrayEquals(original, ids);
+        Assert.assertTrue(String.format("%d字节", written), written < ids.length * 1.2);
+        Assert.assertTrue(written < IdBatchCodec.encode(ids, 0, ids.length, ByteBuffer.allocate(IdBatchCodec.maxEncodedLength(ids.length))));
+
+        buffer.flip();
+        IdBatchCodec.Cursor cursor = IdBatchCodec.cursor(buffer);
+        Assert.assertEquals(IdBatchCodec.BY_WORKER, cursor.format());
+        Assert.assertEquals(ids.length, cursor.count());
+        long[] decoded = new long[ids.length];
+        Assert.assertEquals(ids.length, IdBatchCodec.decode(buffer, decoded, 0));
+        Assert.assertArrayEquals(sortedByNode(ids, layout), decoded);
+        Assert.assertFalse(buffer.hasRemaining());
+
+        // 复用排序数组，只编码一部分
+        long[] scratch = new long[ids.length];
+        buffer.clear();
+        IdBatchCodec.encodeByWorker(layout, ids, 100, 7, scratch, buffer);
+        buffer.flip();
+        Assert.assertArrayEquals(sortedByNode(Arrays.copyOfRange(ids, 100, 107), layout), IdBatchCodec.stream(buffer).toArray());
+    }
+
+    @Test
+    @DisplayName("组内乱序或节点数超过分区上限时，按节点分组编码的结果不变")
+    public void shouldGroupUnorderedAndManyNodes() {
+        BitLayout layout = BitLayout.DEFAULT;
+        SplittableRandom random = new SplittableRandom(7);
+        long[] shuffled = interleavedIds(4096);
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long id = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = id;
+        }
+        long[] manyNodes = new long[4096];
+        for (int i = 0; i < manyNodes.length; i++) {
+            manyNodes[i] = random.nextLong(1L << 40) << layout.getClockBackShift() | random.nextInt(100);
+        }
+        for (long[] ids : new long[][]{shuffled, manyNodes}) {
+            ByteBuffer buffer = ByteBuffer.allocate(IdBatchCodec.maxEncodedLengthByWorker(ids.length));
+            IdBatchCodec.encodeByWorker(layout, ids, 0, ids.length, buffer);
+            buffer.flip();
+            Assert.assertArrayEquals(sortedByNode(ids, layout), IdBatchCodec.stream(buffer).toArray());
+        }
+    }
+
+    @Test
+    @DisplayName("连续写入的多帧可以依次读取")
+    public void shouldReadConsecutiveFrames() {
+        long[] ids = interleavedIds(300);
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        IdBatchCodec.encode(ids, 0, 100, buffer);
+        IdBatchCodec.encodeByWorker(BitLayout.DEFAULT, ids, 100, 100, buffer);
+        IdBatchCodec.encode(LongStream.of(ids).skip(200), buffer);
+        buffer.flip();
+        long[] decoded = new long[300];
+        int n = 0;
+        while (buffer.hasRemaining()) {
+            n += IdBatchCodec.decode(buffer, decoded, n);
+        }
+        Assert.assertEquals(300, n);
+        Assert.assertArrayEquals(Arrays.copyOfRange(ids, 0, 100), Arrays.copyOfRange(decoded, 0, 100));
+        Assert.assertArrayEquals(sortedByNode(Arrays.copyOfRange(ids, 100, 200), BitLayout.DEFAULT), Arrays.copyOfRange(decoded, 100, 200));
+        Assert.assertArrayEquals(Arrays.copyOfRange(ids, 200, 300), Arrays.copyOfRange(decoded, 200, 300));
+    }
+
+    @Test
+    @DisplayName("空间不足时缓冲区位置不变，数据损坏时抛出异常")
+    public void shouldRejectOverflowAndCorruption() {
+        long[] ids = interleavedIds(100);
+        ByteBuffer small = ByteBuffer.allocate(50);
+        small.position(1);
+        Assert.assertThrows(BufferOverflowException.class, () -> IdBatchCodec.encode(ids, 0, ids.length, small));
+        Assert.assertThrows(BufferOverflowException.class, () -> IdBatchCodec.encode(LongStream.of(ids), small));
+        Assert.assertThrows(BufferOverflowException.class, () -> IdBatchCodec.encodeByWorker(BitLayout.DEFAULT, ids, 0, ids.length, small));
+        Assert.assertEquals(1, small.position());
+
+        ByteBuffer buffer = ByteBuffer.allocate(IdBatchCodec.maxEncodedLength(ids.length));
+        int written = IdBatchCodec.encode(ids, 0, ids.length, buffer);
+        ByteBuffer truncated = ByteBuffer.wrap(buffer.array(), 0, written - 1);
+        Assert.assertThrows(BufferUnderflowException.class, () -> IdBatchCodec.stream(truncated).toArray());
+        Assert.assertEquals(0, truncated.position());
+        Assert.assertThrows(IndexOutOfBoundsException.class, () -> IdBatchCodec.decode(ByteBuffer.wrap(buffer.array(), 0, written), new long[10], 0));
+
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> IdBatchCodec.cursor(ByteBuffer.wrap(new byte[]{7, 0})));
+        Assert.assertTrue(exception.getMessage().contains("未知的编码格式"));
+        byte[] longVarint = new byte[13];
+        Arrays.fill(longVarint, (byte) 0x80);
+        longVarint[0] = IdBatchCodec.DELTA;
+        longVarint[1] = 1;
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> IdBatchCodec.cursor(ByteBuffer.wrap(longVarint)).nextLong());
+        Assert.assertTrue(exception.getMessage().contains("varint"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.johnqxu.crystalflake;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 校验ID唯一性的堆外位图，一个机器节点一个位图
+ * <p>
+ * 每个生产周期占用(MAX_SEQ + 1) * (MAX_CLOCK_BACK_TIMES + 1)位，按周期分页，页在第一次写入时分配堆外内存，
+ * 多线程通过原子或操作置位。周期内序号用满时每个ID约占4位，10^9个ID约需500MB堆外内存
+ */
+final class IdBitmap {
+
+    private final static VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /**
+     * 每页的位数
+     */
+    private final static int PAGE_BITS_SHIFT = 20;
+
+    private final static int PAGE_BYTES = 1 << (PAGE_BITS_SHIFT - 3);
+
+    private final BitLayout layout;
+    private final long minTimeSegment;
+    private final int bitsPerSegmentShift;
+    private final AtomicReferenceArray<ByteBuffer> pages;
+
+    /**
+     * @param layout         bit位分配
+     * @param minTimeSegment 可能出现的最小周期
+     * @param maxSegments    可能出现的周期数上限，决定页目录的长度
+     */
+    IdBitmap(BitLayout layout, long minTimeSegment, long maxSegments) {
+        this.layout = layout;
+        this.minTimeSegment = minTimeSegment;
+        this.bitsPerSegmentShift = layout.getTimeSegmentShift() - layout.getClockBackShift();
+        this.pages = new AtomicReferenceArray<>(Math.toIntExact((maxSegments << bitsPerSegmentShift >>> PAGE_BITS_SHIFT) + 1));
+    }
+
+    /**
+     * 置位ID对应的位
+     *
+     * @param id 全局ID
+     * @return ID第一次出现返回true，重复出现返回false
+     */
+    boolean add(long id) {
+        long offset = (id >>> layout.getTimeSegmentShift()) - minTimeSegment;
+        long bit = offset << bitsPerSegmentShift | (id >>> layout.getClockBackShift()) & ~(-1L << bitsPerSegmentShift);
+        long pageIndex = bit >>> PAGE_BITS_SHIFT;
+        if (offset < 0 || pageIndex >= pages.length()) {
+            throw new IllegalStateException(String.format("ID[%d]的周期超出位图范围", id));
+        }
+        ByteBuffer page = page((int) pageIndex);
+        int wordOffset = (int) (bit & ~(-1L << PAGE_BITS_SHIFT)) >>> 6 << 3;
+        long mask = 1L << bit;
+        return ((long) LONGS.getAndBitwiseOr(page, wordOffset, mask) & mask) == 0L;
+    }
+
+    /**
+     * @return 已分配的堆外内存字节数
+     */
+    long allocatedBytes() {
+        long bytes = 0L;
+        for (int i = 0; i < pages.length(); i++) {
+            if (pages.get(i) != null) {
+                bytes += PAGE_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    private ByteBuffer page(int index) {
+        ByteBuffer page = pages.get(index);
+        if (page == null) {
+            page = ByteBuffer.allocateDirect(PAGE_BYTES);
+            if (!pages.compareAndSet(index, null, page)) {
+                page = pages.get(index);
+            }
+        }
+        return page;
+    }
+}
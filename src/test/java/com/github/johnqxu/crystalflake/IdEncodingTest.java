@@ -0,0 +1,131 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class IdEncodingTest {
+
+    private static long[] randomIds(int n) {
+        SplittableRandom random = new SplittableRandom(42);
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = random.nextLong();
+        }
+        ids[0] = 0L;
+        ids[1] = -1L;
+        ids[2] = Long.MAX_VALUE;
+        ids[3] = Long.MIN_VALUE;
+        return ids;
+    }
+
+    @Test
+    @DisplayName("定长编码的边界值")
+    public void shouldEncodeBorderValues() {
+        Assert.assertEquals("0000000000000", IdEncoding.BASE32.encodeToString(0L));
+        Assert.assertEquals("7ZZZZZZZZZZZZ", IdEncoding.BASE32.encodeToString(Long.MAX_VALUE));
+        Assert.assertEquals("FZZZZZZZZZZZZ", IdEncoding.BASE32.encodeToString(-1L));
+        Assert.assertEquals("00000000000", IdEncoding.BASE62.encodeToString(0L));
+        Assert.assertEquals("00000000010", IdEncoding.BASE62.encodeToString(62L));
+        Assert.assertEquals("AzL8n0Y58m7", IdEncoding.BASE62.encodeToString(Long.MAX_VALUE));
+        Assert.assertEquals("LygHa16AHYF", IdEncoding.BASE62.encodeToString(-1L));
+        Assert.assertEquals(-1L, IdEncoding.BASE62.decode("LygHa16AHYF"));
+    }
+
+    @Test
+    @DisplayName("各种目标类型编码后解码得到原ID，字典序与无符号数值顺序一致")
+    public void shouldRoundTripAndKeepOrder() {
+        long[] ids = randomIds(10_000);
+        for (IdEncoding encoding : IdEncoding.values()) {
+            int width = encoding.width();
+            byte[] bytes = new byte[width + 1];
+            char[] chars = new char[width + 1];
+            ByteBuffer direct = ByteBuffer.allocateDirect(width);
+            String[] encoded = new String[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                long id = ids[i];
+                encoding.encode(id, bytes, 1);
+                encoding.encode(id, chars, 1);
+                direct.clear();
+                encoding.encode(id, direct);
+                Assert.assertEquals(width, direct.position());
+                direct.flip();
+                encoded[i] = encoding.encodeToString(id);
+                Assert.assertEquals(encoded[i], new String(bytes, 1, width, StandardCharsets.US_ASCII));
+                Assert.assertEquals(encoded[i], new String(chars, 1, width));
+                Assert.assertEquals(id, encoding.decode(bytes, 1));
+                Assert.assertEquals(id, encoding.decode(chars, 1));
+                Assert.assertEquals(id, encoding.decode(direct));
+                Assert.assertEquals(id, encoding.decode(encoded[i]));
+            }
+            for (int i = 1; i < ids.length; i++) {
+                Assert.assertEquals(Integer.signum(Long.compareUnsigned(ids[i - 1], ids[i])),
+                        Integer.signum(encoded[i - 1].compareTo(encoded[i])));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("批量编解码与逐个编解码结果一致")
+    public void shouldEncodeInBulk() {
+        long[] ids = randomIds(100);
+        for (IdEncoding encoding : IdEncoding.values()) {
+            int width = encoding.width();
+            byte[] bytes = new byte[ids.length * width];
+            char[] chars = new char[ids.length * width];
+            ByteBuffer heap = ByteBuffer.allocate(ids.length * width);
+            encoding.encode(ids, 0, ids.length, bytes, 0);
+            encoding.encode(ids, 0, ids.length, chars, 0);
+            encoding.encode(ids, 0, ids.length, heap);
+            Assert.assertArrayEquals(bytes, heap.array());
+            for (int i = 0; i < ids.length; i++) {
+                Assert.assertEquals(encoding.encodeToString(ids[i]), new String(chars, i * width, width));
+            }
+
+            long[] decoded = new long[ids.length];
+            encoding.decode(bytes, 0, decoded, 0, ids.length);
+            Assert.assertArrayEquals(ids, decoded);
+            Arrays.fill(decoded, 0L);
+            encoding.decode(chars, 0, decoded, 0, ids.length);
+            Assert.assertArrayEquals(ids, decoded);
+
+            ByteBuffer small = ByteBuffer.allocate(width * 2);
+            Assert.assertThrows(BufferOverflowException.class, () -> encoding.encode(ids, 0, 3, small));
+            Assert.assertEquals(0, small.position());
+        }
+    }
+
+    @Test
+    @DisplayName("Crockford Base32解码不区分大小写并接受易混淆字符")
+    public void shouldDecodeCrockfordAliases() {
+        long id = IdEncoding.BASE32.decode("01ABCDEFGHJKM");
+        Assert.assertEquals(id, IdEncoding.BASE32.decode("o1abcdefghjkm"));
+        Assert.assertEquals(id, IdEncoding.BASE32.decode("OLabcdefghjkm"));
+        Assert.assertEquals(id, IdEncoding.BASE32.decode("0iABCDEFGHJKM"));
+    }
+
+    @Test
+    @DisplayName("非法字符、长度或超出64位范围时，抛出异常")
+    public void shouldThrowExceptionWhenEncodedIllegal() {
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> IdEncoding.BASE32.decode("0000000000U00"));
+        Assert.assertTrue(exception.getMessage().contains("不是合法的BASE32字符"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> IdEncoding.BASE62.decode("0000000000-"));
+        Assert.assertTrue(exception.getMessage().contains("不是合法的BASE62字符"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> IdEncoding.BASE62.decode(new byte[]{'0', '0', '0', '0', '0', '0', '0', '0', '0', '0', (byte) 0xC3}, 0));
+        Assert.assertTrue(exception.getMessage().contains("不是合法的BASE62字符"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> IdEncoding.BASE62.decode("000"));
+        Assert.assertTrue(exception.getMessage().contains("长度必须为11"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> IdEncoding.BASE32.decode("G000000000000"));
+        Assert.assertTrue(exception.getMessage().contains("超出64位整数范围"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> IdEncoding.BASE62.decode("LygHa16AHYG"));
+        Assert.assertTrue(exception.getMessage().contains("超出64位整数范围"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> IdEncoding.BASE62.decode("zzzzzzzzzzz"));
+        Assert.assertTrue(exception.getMessage().contains("超出64位整数范围"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.johnqxu.crystalflake;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class JdbcRangeStoreTest {
+
+    private JdbcDataSource dataSource;
+    private Connection keepAlive;
+
+    @Before
+    public void beforeTest() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:range;DB_CLOSE_DELAY=-1");
+        // 保持一个连接，内存数据库在测试期间不被销毁
+        keepAlive = dataSource.getConnection();
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("CREATE TABLE crystal_flake_range (biz_tag VARCHAR(128) NOT NULL PRIMARY KEY, max_id BIGINT NOT NULL)");
+            statement.execute("INSERT INTO crystal_flake_range (biz_tag, max_id) VALUES ('order', 1)");
+        }
+    }
+
+    @After
+    public void afterTest() throws SQLException {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("DROP TABLE crystal_flake_range");
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    @DisplayName("依次分配相邻的号段")
+    public void shouldAllocateAdjacentRanges() {
+        JdbcRangeStore store = new JdbcRangeStore(dataSource);
+        Assert.assertEquals(IdRange.of(1, 101), store.next("order", 100));
+        Assert.assertEquals(IdRange.of(101, 111), store.next("order", 10));
+    }
+
+    @Test
+    @DisplayName("多个生成器共用号段表，ID不重复")
+    public void shouldIssueUniqueIdsAcrossGenerators() throws Exception {
+        int generators = 4;
+        int perGenerator = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(generators);
+        try {
+            Future<?>[] futures = new Future[generators];
+            long[] ids = new long[generators * perGenerator];
+            for (int g = 0; g < generators; g++) {
+                int base = g * perGenerator;
+                futures[g] = executor.submit(() -> {
+                    try (SegmentIdGenerator generator = new SegmentIdGenerator(new JdbcRangeStore(dataSource), "order", 50)) {
+                        for (int i = 0; i < perGenerator; i++) {
+                            ids[base + i] = generator.nextId();
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            Arrays.sort(ids);
+            Assert.assertTrue(ids[0] >= 1);
+            for (int i = 1; i < ids.length; i++) {
+                Assert.assertNotEquals(ids[i - 1], ids[i]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("业务标识不存在或表名非法时，抛出异常")
+    public void shouldThrowExceptionWhenKeyMissing() {
+        JdbcRangeStore store = new JdbcRangeStore(dataSource);
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> store.next("missing", 10));
+        Assert.assertTrue(exception.getMessage().contains("不存在业务标识"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> new JdbcRangeStore(dataSource, "range; DROP TABLE x"));
+        Assert.assertTrue(exception.getMessage().contains("号段表名"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> new JdbcRangeStore(dataSource, "missing_table").next("order", 10));
+        Assert.assertTrue(exception.getMessage().contains("分配号段"));
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class KeyedFlakeGeneratorTest {
+
+    private static final long SEGMENT_MILLIS = BitLayout.DEFAULT.getSegmentMillis();
+
+    private static final long MAX_SEQ_PER_CYCLE = FlakeGenerator.MAX_SEQ + 1;
+
+    private final MockTimeSource timeSource = new MockTimeSource();
+
+    private KeyedFlakeGenerator.Builder builder() {
+        return KeyedFlakeGenerator.builder().workerId(3).dataCenterId(2).concurrencyLevel(4).timeSource(timeSource);
+    }
+
+    @Test
+    @DisplayName("各业务标识的ID序列相互独立，序号从0开始严格递增")
+    public void shouldIssueIndependentSequencesPerKey() {
+        timeSource.set(FlakeGenerator.EPOCH + SEGMENT_MILLIS * 1000);
+        KeyedFlakeGenerator generator = builder().build();
+        long order = generator.nextId(1L);
+        long payment = generator.nextId(2L);
+        Assert.assertEquals(order, payment);
+        Assert.assertEquals(0, FlakeIdDecoder.sequence(order));
+        Assert.assertEquals(3, FlakeIdDecoder.workerId(order));
+        Assert.assertEquals(2, FlakeIdDecoder.dataCenterId(order));
+        Assert.assertEquals(1, FlakeIdDecoder.sequence(generator.nextId(1L)));
+        Assert.assertEquals(1, FlakeIdDecoder.sequence(generator.nextId(2L)));
+        Assert.assertEquals(2, generator.size());
+    }
+
+    @Test
+    @DisplayName("序号耗尽时借用下一周期，时钟回拨时从上一次使用的周期继续")
+    public void shouldStayMonotonicWhenSeqExhaustedOrClockBack() {
+        long start = FlakeGenerator.EPOCH + SEGMENT_MILLIS * 1000;
+        timeSource.set(start);
+        KeyedFlakeGenerator generator = builder().maxLeadSegments(2).build();
+        long last = -1L;
+        // 借满领先上限，最后一个周期留下一个序号
+        for (int i = 0; i < MAX_SEQ_PER_CYCLE * 3 - 1; i++) {
+            long id = generator.nextId(7L);
+            Assert.assertTrue(id > last);
+            Assert.assertEquals(1000 + i / MAX_SEQ_PER_CYCLE, FlakeIdDecoder.timeSegment(id));
+            last = id;
+        }
+        timeSource.set(start - SEGMENT_MILLIS * 100);
+        long id = generator.nextId(7L);
+        Assert.assertTrue(id > last);
+        Assert.assertEquals(1002, FlakeIdDecoder.timeSegment(id));
+        Assert.assertEquals(0, FlakeIdDecoder.clockBack(id));
+    }
+
+    @Test
+    @DisplayName("达到领先上限后等待墙上时钟，不阻塞同一分段的其他业务标识")
+    public void shouldWaitOutsideLockWhenLeadExhausted() throws Exception {
+        long start = FlakeGenerator.EPOCH + SEGMENT_MILLIS * 1000;
+        timeSource.set(start);
+        KeyedFlakeGenerator generator = builder().concurrencyLevel(1).maxLeadSegments(0).build();
+        for (int i = 0; i < MAX_SEQ_PER_CYCLE; i++) {
+            generator.nextId(1L);
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> waiting = executor.submit(() -> generator.nextId(1L));
+            // 唯一的分段上另一个业务标识照常生成
+            Assert.assertEquals(0, FlakeIdDecoder.sequence(generator.nextId(2L)));
+            Assert.assertFalse(waiting.isDone());
+            timeSource.set(start + SEGMENT_MILLIS);
+            long id = waiting.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(1001, FlakeIdDecoder.timeSegment(id));
+            Assert.assertEquals(0, FlakeIdDecoder.sequence(id));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("淘汰空闲业务标识后内存回落，重新使用的业务标识ID不与淘汰前重复")
+    public void shouldEvictIdleKeys() {
+        long start = FlakeGenerator.EPOCH + SEGMENT_MILLIS * 1000;
+        timeSource.set(start);
+        KeyedFlakeGenerator generator = builder().idleTimeout(SEGMENT_MILLIS * 10, TimeUnit.MILLISECONDS).build();
+        int keys = 20_000;
+        int roundCapacity = 0;
+        // 每轮使用一批新的业务标识，上一轮的业务标识已空闲，扩容前被淘汰，内存不随出现过的业务标识数量增长
+        for (int round = 0; round < 20; round++) {
+            timeSource.set(start + SEGMENT_MILLIS * 20 * round);
+            for (long key = (long) round * keys; key < (long) (round + 1) * keys; key++) {
+                generator.nextId(key);
+            }
+            if (round == 1) {
+                roundCapacity = generator.capacity();
+            } else if (round > 1) {
+                Assert.assertTrue(generator.size() <= keys * 2);
+                Assert.assertTrue(generator.capacity() <= roundCapacity);
+            }
+        }
+
+        long end = start + SEGMENT_MILLIS * 20 * 20;
+        timeSource.set(end);
+        long beforeEviction = generator.nextId(-1L);
+        timeSource.set(end + SEGMENT_MILLIS * 20);
+        Assert.assertEquals(generator.size(), generator.evictIdle());
+        Assert.assertEquals(0, generator.size());
+        Assert.assertTrue(generator.capacity() < roundCapacity / 100);
+
+        // 时钟回到淘汰前的周期，重新注册的业务标识从淘汰高水位之后开始
+        timeSource.set(end);
+        Assert.assertTrue(generator.nextId(-1L) > beforeEviction);
+    }
+
+    @Test
+    @DisplayName("多线程并发生成，同一业务标识的ID不重复且递增")
+    public void shouldIssueUniqueIdsConcurrently() throws Exception {
+        KeyedFlakeGenerator generator = KeyedFlakeGenerator.builder().workerId(1).dataCenterId(1).build();
+        int threads = 4;
+        int perThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] futures = new Future[threads];
+            for (int t = 0; t < threads; t++) {
+                futures[t] = executor.submit(() -> {
+                    long[] last = new long[16];
+                    for (int i = 0; i < perThread; i++) {
+                        int key = i & 15;
+                        long id = generator.nextId(key);
+                        Assert.assertTrue(id > last[key]);
+                        last[key] = id;
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            Assert.assertEquals(16, generator.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("参数非法时，抛出异常")
+    public void shouldThrowExceptionWhenArgumentsIllegal() {
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> KeyedFlakeGenerator.builder().workerId(1).dataCenterId(32).build());
+        Assert.assertTrue(exception.getMessage().contains("dataCenterId"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> builder().concurrencyLevel(0).build());
+        Assert.assertTrue(exception.getMessage().contains("concurrencyLevel"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> builder().idleTimeout(0, TimeUnit.SECONDS).build());
+        Assert.assertTrue(exception.getMessage().contains("空闲淘汰时长"));
+    }
+}
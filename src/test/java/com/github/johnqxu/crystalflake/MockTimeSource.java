@@ -0,0 +1,24 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 测试用时钟，可以指定固定时间戳或者每次读取时计算时间戳
+ */
+public class MockTimeSource implements TimeSource {
+
+    private volatile LongSupplier supplier = System::currentTimeMillis;
+
+    public void set(long millis) {
+        this.supplier = () -> millis;
+    }
+
+    public void answer(LongSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return supplier.getAsLong();
+    }
+}
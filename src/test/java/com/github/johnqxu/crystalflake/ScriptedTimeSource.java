@@ -0,0 +1,45 @@
+package com.github.johnqxu.crystalflake;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * 按读取次数推进的脚本时钟，模拟单个节点的墙上时钟
+ * <p>
+ * 每读取readsPerMilli次前进1ms，等待下一周期的线程持续读取时钟，因此总能等到下一周期，与真实时间无关。
+ * 每个回拨周期开始时时钟回拨指定时长，持续windowMillis后回正
+ */
+final class ScriptedTimeSource implements TimeSource {
+
+    private final AtomicLong reads = new AtomicLong();
+    private final long startMillis;
+    private final int readsPerMilli;
+    private final long periodMillis;
+    private final long windowMillis;
+    private final LongUnaryOperator regressionMillis;
+
+    /**
+     * @param startMillis      起始时间戳
+     * @param readsPerMilli    时钟前进1ms需要的读取次数
+     * @param periodMillis     回拨周期，单位毫秒
+     * @param windowMillis     每次回拨的持续时长，单位毫秒
+     * @param regressionMillis 按回拨周期序号计算回拨时长，返回0表示不回拨
+     */
+    ScriptedTimeSource(long startMillis, int readsPerMilli, long periodMillis, long windowMillis, LongUnaryOperator regressionMillis) {
+        this.startMillis = startMillis;
+        this.readsPerMilli = readsPerMilli;
+        this.periodMillis = periodMillis;
+        this.windowMillis = windowMillis;
+        this.regressionMillis = regressionMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        long elapsed = reads.getAndIncrement() / readsPerMilli;
+        long period = elapsed / periodMillis;
+        if (period > 0 && elapsed % periodMillis < windowMillis) {
+            return startMillis + elapsed - regressionMillis.applyAsLong(period);
+        }
+        return startMillis + elapsed;
+    }
+}
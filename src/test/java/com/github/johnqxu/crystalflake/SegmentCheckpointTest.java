@@ -0,0 +1,135 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SegmentCheckpointTest {
+
+    private static final long T = FlakeGeneratorTest.mockSeqStartTimestamp;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MockTimeSource timeSource = new MockTimeSource();
+
+    private FlakeGenerator newGenerator(SegmentCheckpoint checkpoint, SegmentCheckpoint.StartupPolicy startupPolicy) {
+        return FlakeGenerator.builder().workerId(1).dataCenterId(1).timeSource(timeSource)
+                .checkpoint(checkpoint, startupPolicy).build();
+    }
+
+    @Test
+    @DisplayName("租约覆盖已发出的ID，越过租约的一半时才续约")
+    public void shouldRenewLeaseAheadOfIssuedIds() {
+        Path file = folder.getRoot().toPath().resolve("flake.ckp");
+        try (SegmentCheckpoint checkpoint = SegmentCheckpoint.open(file, 1, TimeUnit.SECONDS)) {
+            Assert.assertEquals(0, checkpoint.getPersistedLeaseMillis());
+            timeSource.set(T);
+            FlakeGenerator flakeGenerator = newGenerator(checkpoint, SegmentCheckpoint.StartupPolicy.REFUSE);
+            flakeGenerator.nextId();
+            Assert.assertEquals(T + 32 + 1000, checkpoint.getLeaseUntilMillis());
+
+            timeSource.set(T + 480);
+            flakeGenerator.nextId();
+            Assert.assertEquals(T + 32 + 1000, checkpoint.getLeaseUntilMillis());
+
+            timeSource.set(T + 512);
+            flakeGenerator.nextId();
+            Assert.assertEquals(T + 544 + 1000, checkpoint.getLeaseUntilMillis());
+        }
+        // 正常关闭时租约收回到已发出ID所在周期的结束时间
+        try (SegmentCheckpoint checkpoint = SegmentCheckpoint.open(file, 1, TimeUnit.SECONDS)) {
+            Assert.assertEquals(T + 544, checkpoint.getPersistedLeaseMillis());
+        }
+    }
+
+    @Test
+    @DisplayName("重启后墙上时钟早于持久化的租约，拒绝生成ID或者等待")
+    public void shouldRefuseOrWaitUntilLeasePassed() {
+        Path file = folder.getRoot().toPath().resolve("flake.ckp");
+        long lastId;
+        try (SegmentCheckpoint checkpoint = SegmentCheckpoint.open(file, 200, TimeUnit.MILLISECONDS)) {
+            timeSource.set(T);
+            lastId = newGenerator(checkpoint, SegmentCheckpoint.StartupPolicy.REFUSE).nextId();
+        }
+        long lease = T + 32;
+
+        // 重启时时钟回拨，回拨幅度超出生成器的最大忍耐值
+        timeSource.set(T - 10_000);
+        try (SegmentCheckpoint checkpoint = SegmentCheckpoint.open(file, 200, TimeUnit.MILLISECONDS)) {
+            Exception exception = Assert.assertThrows(FlakeGeneratorException.class,
+                    () -> newGenerator(checkpoint, SegmentCheckpoint.StartupPolicy.REFUSE));
+            Assert.assertTrue(exception.getMessage().contains("早于检查点租约"));
+        }
+
+        AtomicLong now = new AtomicLong(T - 10_000);
+        timeSource.answer(() -> now.addAndGet(100));
+        try (SegmentCheckpoint checkpoint = SegmentCheckpoint.open(file, 200, TimeUnit.MILLISECONDS)) {
+            FlakeGenerator flakeGenerator = newGenerator(checkpoint, SegmentCheckpoint.StartupPolicy.WAIT);
+            Assert.assertTrue(now.get() >= lease);
+            long id = flakeGenerator.nextId();
+            Assert.assertTrue(FlakeIdDecoder.timestampMillis(id) >= lease);
+            Assert.assertTrue(id > lastId);
+        }
+    }
+
+    @Test
+    @DisplayName("正常关闭后在租约内重启无需等待，崩溃时保留领先的租约")
+    public void shouldRestartWithinLeaseAfterClose() {
+        Path file = folder.getRoot().toPath().resolve("flake.ckp");
+        timeSource.set(T);
+        SegmentCheckpoint running = SegmentCheckpoint.open(file, 1, TimeUnit.HOURS);
+        FlakeGenerator flakeGenerator = newGenerator(running, SegmentCheckpoint.StartupPolicy.REFUSE);
+        long lastId = flakeGenerator.nextId();
+        Assert.assertThrows(FlakeGeneratorException.class, () -> newGenerator(running, SegmentCheckpoint.StartupPolicy.REFUSE));
+
+        // 进程未关闭检查点，文件中保留领先一小时的租约
+        timeSource.set(T + 100);
+        try (SegmentCheckpoint crashed = SegmentCheckpoint.open(file, 1, TimeUnit.HOURS)) {
+            Assert.assertEquals(T + 32 + TimeUnit.HOURS.toMillis(1), crashed.getPersistedLeaseMillis());
+            Assert.assertThrows(FlakeGeneratorException.class, () -> newGenerator(crashed, SegmentCheckpoint.StartupPolicy.REFUSE));
+        }
+
+        running.close();
+        try (SegmentCheckpoint checkpoint = SegmentCheckpoint.open(file, 1, TimeUnit.HOURS)) {
+            Assert.assertEquals(T + 32, checkpoint.getPersistedLeaseMillis());
+            long id = newGenerator(checkpoint, SegmentCheckpoint.StartupPolicy.REFUSE).nextId();
+            Assert.assertTrue(id > lastId);
+        }
+
+        // 本次运行没有发出ID，关闭时保留上一次运行的上界
+        timeSource.set(T + 200);
+        try (SegmentCheckpoint checkpoint = SegmentCheckpoint.open(file, 1, TimeUnit.HOURS)) {
+            Assert.assertEquals(T + 128, checkpoint.getPersistedLeaseMillis());
+            newGenerator(checkpoint, SegmentCheckpoint.StartupPolicy.REFUSE);
+        }
+        try (SegmentCheckpoint checkpoint = SegmentCheckpoint.open(file, 1, TimeUnit.HOURS)) {
+            Assert.assertEquals(T + 128, checkpoint.getPersistedLeaseMillis());
+        }
+    }
+
+    @Test
+    @DisplayName("检查点参数或文件非法时，抛出异常")
+    public void shouldThrowExceptionWhenCheckpointIllegal() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("flake.ckp");
+        Assert.assertThrows(FlakeGeneratorException.class, () -> SegmentCheckpoint.open(file, 0, TimeUnit.SECONDS));
+
+        Files.write(file, new byte[16]);
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> SegmentCheckpoint.open(file, 1, TimeUnit.SECONDS));
+        Assert.assertTrue(exception.getMessage().contains("格式不正确"));
+
+        Files.write(file, new byte[3]);
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> SegmentCheckpoint.open(file, 1, TimeUnit.SECONDS));
+        Assert.assertTrue(exception.getMessage().contains("长度"));
+
+        Assert.assertThrows(FlakeGeneratorException.class,
+                () -> SegmentCheckpoint.open(folder.getRoot().toPath().resolve("missing/flake.ckp"), 1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SegmentIdGeneratorTest {
+
+    @Test
+    @DisplayName("内存号段存储，ID从1开始连续发放")
+    public void shouldIssueDenseIds() {
+        try (SegmentIdGenerator generator = new SegmentIdGenerator(RangeStore.inMemory(), "order", 10)) {
+            for (long expected = 1; expected <= 35; expected++) {
+                Assert.assertEquals(expected, generator.nextId());
+            }
+            Assert.assertEquals(5, generator.remaining());
+        }
+    }
+
+    @Test
+    @DisplayName("号段存储变慢时，预取在后台进行，当前号段用完前调用方不等待")
+    public void shouldPrefetchNextRangeInBackground() throws Exception {
+        CountDownLatch prefetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        RangeStore inMemory = RangeStore.inMemory();
+        RangeStore slowStore = (key, step) -> {
+            // 第一个号段同步分配，之后的号段等待放行
+            if (calls.incrementAndGet() > 1) {
+                prefetching.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return inMemory.next(key, step);
+        };
+        try (SegmentIdGenerator generator = new SegmentIdGenerator(slowStore, "order", 100, 0.5, null)) {
+            for (long expected = 1; expected <= 100; expected++) {
+                Assert.assertEquals(expected, generator.nextId());
+            }
+            // 用掉一半时已开始预取，预取仍在等待号段存储
+            Assert.assertTrue(prefetching.await(1, TimeUnit.SECONDS));
+            Assert.assertEquals(0, generator.remaining());
+
+            release.countDown();
+            Assert.assertEquals(101, generator.nextId());
+            Assert.assertEquals(2, calls.get());
+        }
+    }
+
+    @Test
+    @DisplayName("预取失败时切换号段同步重试")
+    public void shouldRetryWhenPrefetchFailed() {
+        AtomicInteger calls = new AtomicInteger();
+        RangeStore inMemory = RangeStore.inMemory();
+        RangeStore flakyStore = (key, step) -> {
+            if (calls.incrementAndGet() == 2) {
+                throw new FlakeGeneratorException("号段存储不可用");
+            }
+            return inMemory.next(key, step);
+        };
+        try (SegmentIdGenerator generator = new SegmentIdGenerator(flakyStore, "order", 4, 0.0, Runnable::run)) {
+            long[] ids = new long[8];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = generator.nextId();
+            }
+            Assert.assertArrayEquals(new long[]{1, 2, 3, 4, 5, 6, 7, 8}, ids);
+        }
+    }
+
+    @Test
+    @DisplayName("多线程并发生成，ID不重复")
+    public void shouldIssueUniqueIdsConcurrently() throws Exception {
+        int threads = 8;
+        int perThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (SegmentIdGenerator generator = new SegmentIdGenerator(RangeStore.inMemory(), "order", 64)) {
+            Future<?>[] futures = new Future[threads];
+            long[] ids = new long[threads * perThread];
+            for (int t = 0; t < threads; t++) {
+                int base = t * perThread;
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        ids[base + i] = generator.nextId();
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            Arrays.sort(ids);
+            for (int i = 1; i < ids.length; i++) {
+                Assert.assertNotEquals(ids[i - 1], ids[i]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("参数非法时，抛出异常")
+    public void shouldThrowExceptionWhenArgumentsIllegal() {
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> new SegmentIdGenerator(RangeStore.inMemory(), "order", 0));
+        Assert.assertTrue(exception.getMessage().contains("号段长度"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> new SegmentIdGenerator(RangeStore.inMemory(), "order", 10, 1.0, null));
+        Assert.assertTrue(exception.getMessage().contains("预取比例"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> IdRange.of(5, 5));
+        Assert.assertTrue(exception.getMessage().contains("不能为空"));
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class StripedFlakeGeneratorTest {
+
+    @Test
+    @DisplayName("当前段序号耗尽时，改用其他段继续生成，不等待下一周期")
+    public void shouldSwitchStripeWhenSeqExhausted() {
+        MockTimeSource timeSource = new MockTimeSource();
+        timeSource.set(FlakeGeneratorTest.mockSeqStartTimestamp);
+        StripedFlakeGenerator generator = new StripedFlakeGenerator(4, 7,
+                workerId -> FlakeGenerator.builder().workerId(workerId).dataCenterId(2).timeSource(timeSource).build());
+        Assert.assertEquals(4, generator.stripeCount());
+
+        int total = (int) (FlakeGenerator.MAX_SEQ + 1) * generator.stripeCount();
+        Set<Long> idSet = new HashSet<>();
+        Set<Long> workerSet = new HashSet<>();
+        for (int i = 0; i < total; i++) {
+            long id = generator.nextId();
+            idSet.add(id);
+            workerSet.add(FlakeGeneratorTest.getWorkerId(id));
+            Assert.assertEquals(2, FlakeGeneratorTest.getDataCenterId(id));
+        }
+        Assert.assertEquals(total, idSet.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(4L, 5L, 6L, 7L)), workerSet);
+    }
+
+    @Test
+    @DisplayName("多线程并发生成ID，不会产生重复，且分布到所有段")
+    public void shouldGenerateUniqueIdsAcrossThreads() throws Exception {
+        int threads = 16;
+        int idsPerThread = 2000;
+        StripedFlakeGenerator generator = new StripedFlakeGenerator(0, 7, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    long[] ids = new long[idsPerThread];
+                    startLatch.await();
+                    for (int j = 0; j < idsPerThread; j++) {
+                        ids[j] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+            startLatch.countDown();
+            long[] all = new long[threads * idsPerThread];
+            int pos = 0;
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get(60, TimeUnit.SECONDS);
+                System.arraycopy(ids, 0, all, pos, ids.length);
+                pos += ids.length;
+            }
+            Arrays.sort(all);
+            Set<Long> workerSet = new HashSet<>();
+            for (int i = 0; i < all.length; i++) {
+                if (i > 0) {
+                    Assert.assertNotEquals(all[i - 1], all[i]);
+                }
+                workerSet.add(FlakeGeneratorTest.getWorkerId(all[i]));
+            }
+            Assert.assertEquals(8, workerSet.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("workerId范围或生成器非法时，抛出异常")
+    public void shouldThrowExceptionWhenArgumentsIllegal() {
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> new StripedFlakeGenerator(8, 7, 1));
+        Assert.assertTrue(exception.getMessage().contains("workerId范围"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> new StripedFlakeGenerator(0, 1, workerId -> new FlakeGenerator(0, 1)));
+        Assert.assertTrue(exception.getMessage().contains("不一致"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> new StripedFlakeGenerator(0, 1, workerId -> new FlakeGenerator(workerId, workerId)));
+        Assert.assertTrue(exception.getMessage().contains("必须一致"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> new StripedFlakeGenerator(0, FlakeGenerator.MAX_WORKER_ID + 1, 1));
+        Assert.assertTrue(exception.getMessage().contains("当前的workerId"));
+    }
+}
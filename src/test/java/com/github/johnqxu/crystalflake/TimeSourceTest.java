@@ -0,0 +1,79 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.concurrent.TimeUnit;
+
+public class TimeSourceTest {
+
+    @Test
+    @DisplayName("单调时钟与系统时钟基本一致，且不会回退")
+    public void shouldKeepMonotonicTimeSourceCloseToSystemTime() {
+        TimeSource timeSource = TimeSource.monotonic();
+        long previous = timeSource.currentTimeMillis();
+        Assert.assertTrue(Math.abs(previous - System.currentTimeMillis()) < 50);
+        for (int i = 0; i < 100_000; i++) {
+            long now = timeSource.currentTimeMillis();
+            Assert.assertTrue(now >= previous);
+            previous = now;
+        }
+    }
+
+    @Test
+    @DisplayName("缓存时钟由后台线程刷新，关闭后不再变化")
+    public void shouldRefreshCachedTimeSource() throws InterruptedException {
+        MockTimeSource delegate = new MockTimeSource();
+        delegate.set(1000L);
+        try (CachedTimeSource timeSource = new CachedTimeSource(delegate, 1, TimeUnit.MILLISECONDS)) {
+            Assert.assertEquals(1000L, timeSource.currentTimeMillis());
+            delegate.set(2000L);
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (timeSource.currentTimeMillis() != 2000L && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            Assert.assertEquals(2000L, timeSource.currentTimeMillis());
+
+            timeSource.close();
+            Thread.sleep(10);
+            delegate.set(3000L);
+            Thread.sleep(10);
+            Assert.assertEquals(2000L, timeSource.currentTimeMillis());
+        }
+    }
+
+    @Test
+    @DisplayName("使用缓存时钟的生成器能够正常生成ID")
+    public void shouldGenerateIdsWithCachedTimeSource() {
+        try (CachedTimeSource timeSource = TimeSource.cached(1, TimeUnit.MILLISECONDS)) {
+            FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).timeSource(timeSource).build();
+            long[] ids = flakeGenerator.nextIds((int) (FlakeGenerator.MAX_SEQ + 1) * 2);
+            for (int i = 1; i < ids.length; i++) {
+                Assert.assertTrue(ids[i] > ids[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("缓存时钟刷新间隔超出范围时，抛出异常")
+    public void shouldThrowExceptionWhenTickIllegal() {
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> TimeSource.cached(0, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(exception.getMessage().contains("时钟刷新间隔"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> TimeSource.cached(32, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(exception.getMessage().contains("时钟刷新间隔"));
+
+        // 生产周期为1ms的bit位分配，1ms的刷新间隔不小于生产周期
+        BitLayout layout = BitLayout.of(41, 12, 2, 4, 4, 0);
+        try (CachedTimeSource timeSource = TimeSource.cached(1, TimeUnit.MILLISECONDS)) {
+            exception = Assert.assertThrows(FlakeGeneratorException.class,
+                    () -> FlakeGenerator.builder().workerId(1).dataCenterId(1).bitLayout(layout).timeSource(timeSource).build());
+            Assert.assertTrue(exception.getMessage().contains("时钟刷新间隔"));
+        }
+        Assert.assertThrows(FlakeGeneratorException.class, () -> new CachedTimeSource(TimeSource.system(), 1, TimeUnit.MILLISECONDS, layout));
+        try (CachedTimeSource timeSource = new CachedTimeSource(TimeSource.system(), 200, TimeUnit.MICROSECONDS, layout)) {
+            FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).bitLayout(layout).timeSource(timeSource).build();
+            Assert.assertTrue(flakeGenerator.nextId() > 0);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.johnqxu.crystalflake;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+public class WaitStrategyTest {
+
+    /**
+     * 每读取一次前进1ms的时钟
+     */
+    private static LongSupplier steppingClock(long start) {
+        long[] now = {start};
+        return () -> now[0]++;
+    }
+
+    @Test
+    @DisplayName("各等待策略都能等到目标时间戳")
+    public void shouldWaitUntilTarget() {
+        WaitStrategy[] strategies = {WaitStrategy.busySpin(), WaitStrategy.spinThenYield(2), WaitStrategy.parking(),
+                WaitStrategy.timeout(WaitStrategy.busySpin(), 1, TimeUnit.SECONDS)};
+        for (WaitStrategy strategy : strategies) {
+            long timestamp = strategy.await(10, Long.MAX_VALUE, steppingClock(0));
+            Assert.assertEquals(10, timestamp);
+        }
+    }
+
+    @Test
+    @DisplayName("到达放弃时间后，返回小于目标的时间戳")
+    public void shouldGiveUpAtDeadline() {
+        WaitStrategy[] strategies = {WaitStrategy.busySpin(), WaitStrategy.spinThenYield(2), WaitStrategy.parking()};
+        for (WaitStrategy strategy : strategies) {
+            Assert.assertEquals(5, strategy.await(100, 5, steppingClock(0)));
+        }
+        // 限时策略在第一次读取时钟的基础上计算放弃时间
+        Assert.assertEquals(6, WaitStrategy.timeout(WaitStrategy.busySpin(), 5, TimeUnit.MILLISECONDS).await(100, Long.MAX_VALUE, steppingClock(1)));
+        Assert.assertEquals(3, WaitStrategy.timeout(WaitStrategy.busySpin(), 5, TimeUnit.MILLISECONDS).await(100, 3, steppingClock(1)));
+    }
+
+    @Test
+    @DisplayName("挂起等待策略使用真实时钟时，挂起到目标时间戳")
+    public void shouldParkUntilTarget() {
+        long target = System.currentTimeMillis() + 20;
+        long timestamp = WaitStrategy.parking().await(target, Long.MAX_VALUE, System::currentTimeMillis);
+        Assert.assertTrue(timestamp >= target);
+        Assert.assertTrue(System.currentTimeMillis() >= target);
+    }
+
+    @Test
+    @DisplayName("等待策略参数非法时，抛出异常")
+    public void shouldThrowExceptionWhenArgumentsIllegal() {
+        Exception exception = Assert.assertThrows(FlakeGeneratorException.class, () -> WaitStrategy.spinThenYield(-1));
+        Assert.assertTrue(exception.getMessage().contains("忙等待次数"));
+        exception = Assert.assertThrows(FlakeGeneratorException.class, () -> WaitStrategy.timeout(WaitStrategy.parking(), -1, TimeUnit.SECONDS));
+        Assert.assertTrue(exception.getMessage().contains("等待时长"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.johnqxu.crystalflake;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class VirtualThreadFlakeGeneratorTest {
+
+    private static final int THREADS = 100_000;
+
+    private static final int PROBES = 20;
+
+    /**
+     * 1ms一个周期、每周期32个序号，10万个ID需要约3000个周期，绝大多数虚拟线程都要等待下一周期
+     */
+    private static final BitLayout LAYOUT = BitLayout.of(44, 5, 2, 8, 4, 0);
+
+    @Test
+    @DisplayName("识别虚拟线程")
+    public void shouldDetectVirtualThread() throws Exception {
+        Assert.assertFalse(VirtualThreads.isVirtual());
+        AtomicBoolean virtual = new AtomicBoolean();
+        Thread.ofVirtual().start(() -> virtual.set(VirtualThreads.isVirtual())).join();
+        Assert.assertTrue(virtual.get());
+    }
+
+    @Test
+    @DisplayName("10万个虚拟线程并发生成ID，等待期间不固定也不占满载体线程")
+    public void shouldNotPinOrStarveCarriersWithVirtualThreads() throws Exception {
+        FlakeGenerator flakeGenerator = FlakeGenerator.builder().workerId(1).dataCenterId(1).bitLayout(LAYOUT).build();
+        List<RecordedEvent> pinned = new CopyOnWriteArrayList<>();
+        try (RecordingStream stream = new RecordingStream()) {
+            stream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            stream.onEvent("jdk.VirtualThreadPinned", pinned::add);
+            stream.startAsync();
+
+            long[] ids = new long[THREADS];
+            long[] probeNanos = new long[PROBES];
+            CountDownLatch started = new CountDownLatch(THREADS);
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<Long>> futures = new ArrayList<>(THREADS);
+                for (int i = 0; i < THREADS; i++) {
+                    futures.add(executor.submit(() -> {
+                        started.countDown();
+                        return flakeGenerator.nextId();
+                    }));
+                }
+                // 全部虚拟线程都已进入等待后，无关的虚拟线程仍能及时得到载体线程
+                Assert.assertTrue(started.await(60, TimeUnit.SECONDS));
+                for (int i = 0; i < PROBES; i++) {
+                    long start = System.nanoTime();
+                    Thread.ofVirtual().start(() -> {
+                    }).join();
+                    probeNanos[i] = System.nanoTime() - start;
+                }
+                Assert.assertTrue(flakeGenerator.getMetrics().getIdsIssued() < THREADS);
+                for (int i = 0; i < THREADS; i++) {
+                    ids[i] = futures.get(i).get(60, TimeUnit.SECONDS);
+                }
+            }
+
+            Arrays.sort(ids);
+            for (int i = 1; i < ids.length; i++) {
+                Assert.assertNotEquals(ids[i - 1], ids[i]);
+            }
+            Assert.assertTrue(flakeGenerator.getMetrics().getSequenceExhaustedWaits() > 0);
+            // 取中位数，排除GC停顿等与载体线程无关的偶发延迟
+            Arrays.sort(probeNanos);
+            long medianProbeNanos = probeNanos[PROBES / 2];
+            Assert.assertTrue("虚拟线程调度延迟" + medianProbeNanos + "ns", medianProbeNanos < TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        Assert.assertTrue("载体线程被固定：" + pinned, pinned.isEmpty());
+    }
+}